@@ -15,6 +15,8 @@ import net.fabricmc.mappingio.tree.VisitableMappingTree;
 import cuchaz.enigma.Enigma;
 import cuchaz.enigma.EnigmaProject;
 import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.analysis.index.IndexLevel;
+import cuchaz.enigma.config.ConfigPaths;
 import cuchaz.enigma.translation.mapping.EntryMapping;
 import cuchaz.enigma.translation.mapping.serde.MappingIoConverter;
 import cuchaz.enigma.translation.mapping.serde.MappingParseException;
@@ -35,12 +37,18 @@ public abstract class Command {
 	public abstract void run(String... args) throws Exception;
 
 	protected static EnigmaProject openProject(Path fileJarIn, Path fileMappings, List<Path> libraries) throws Exception {
+		return openProject(fileJarIn, fileMappings, libraries, IndexLevel.FULL);
+	}
+
+	protected static EnigmaProject openProject(Path fileJarIn, Path fileMappings, List<Path> libraries, IndexLevel level) throws Exception {
 		ProgressListener progress = new ConsoleProgressListener();
 
-		Enigma enigma = Enigma.create();
+		Enigma enigma = Enigma.builder()
+				.setIndexCacheDirectory(ConfigPaths.getCacheDirectory("index"))
+				.build();
 
 		System.out.println("Reading jar...");
-		EnigmaProject project = enigma.openJar(fileJarIn, libraries, progress);
+		EnigmaProject project = enigma.openJars(List.of(fileJarIn), libraries, progress, true, level);
 
 		if (fileMappings != null) {
 			System.out.println("Reading mappings...");
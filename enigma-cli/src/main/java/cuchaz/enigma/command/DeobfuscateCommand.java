@@ -5,6 +5,7 @@ import java.util.List;
 
 import cuchaz.enigma.EnigmaProject;
 import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.analysis.index.IndexLevel;
 
 public class DeobfuscateCommand extends Command {
 	public DeobfuscateCommand() {
@@ -28,7 +29,8 @@ public class DeobfuscateCommand extends Command {
 		Path fileMappings = getReadablePath(getArg(args, 2, "mappings file", false));
 		List<Path> libraries = getReadablePaths(args, 3);
 
-		EnigmaProject project = openProject(fileJarIn, fileMappings, libraries);
+		// remapping needs the hierarchy and the bridge methods, but not the references
+		EnigmaProject project = openProject(fileJarIn, fileMappings, libraries, IndexLevel.HIERARCHY);
 
 		ProgressListener progress = new ConsoleProgressListener();
 
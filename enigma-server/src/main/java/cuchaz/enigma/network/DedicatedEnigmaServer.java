@@ -20,10 +20,10 @@ import cuchaz.enigma.Enigma;
 import cuchaz.enigma.EnigmaProfile;
 import cuchaz.enigma.EnigmaProject;
 import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.config.ConfigPaths;
 import cuchaz.enigma.translation.mapping.EntryRemapper;
 import cuchaz.enigma.translation.mapping.serde.MappingFormat;
 import cuchaz.enigma.translation.mapping.serde.MappingParseException;
-import cuchaz.enigma.utils.Utils;
 
 public class DedicatedEnigmaServer extends EnigmaServer {
 	private final EnigmaProfile profile;
@@ -86,12 +86,14 @@ public class DedicatedEnigmaServer extends EnigmaServer {
 		DedicatedEnigmaServer server;
 
 		try {
-			byte[] checksum = Utils.zipSha1(jars.toArray(new Path[0]));
-
 			EnigmaProfile profile = EnigmaProfile.read(profileFile);
-			Enigma enigma = Enigma.builder().setProfile(profile).build();
+			Enigma enigma = Enigma.builder()
+					.setProfile(profile)
+					.setIndexCacheDirectory(ConfigPaths.getCacheDirectory("index"))
+					.build();
 			System.out.println("Indexing Jar...");
 			EnigmaProject project = enigma.openJars(jars, parsedArgs.valuesOf(librariesOpt), ProgressListener.none());
+			byte[] checksum = project.getJarChecksum();
 
 			MappingFormat mappingFormat = MappingFormat.ENIGMA_DIRECTORY;
 			EntryRemapper mappings;
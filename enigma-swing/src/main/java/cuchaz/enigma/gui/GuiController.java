@@ -160,17 +160,34 @@ public class GuiController implements ClientPacketHandler, GuiView, DataInvalida
 
 		return ProgressDialog.runOffThread(gui.getFrame(), progress -> {
 			project = enigma.openJars(jarPaths, libraries, progress, false);
-			project.addDataInvalidationListener(this);
-			indexTreeBuilder = new IndexTreeBuilder(project.getJarIndex());
-			chp = new ClassHandleProvider(project, UiConfig.getDecompiler().service);
-			SwingUtilities.invokeLater(() -> {
-				for (ProjectService projectService : enigma.getServices().get(ProjectService.TYPE)) {
-					projectService.onProjectOpen(project);
-				}
+			onProjectOpened();
+		});
+	}
 
-				gui.onFinishOpenJar(getFileNames(jarPaths));
-				refreshClasses();
-			});
+	private void onProjectOpened() {
+		project.addDataInvalidationListener(this);
+		indexTreeBuilder = new IndexTreeBuilder(project.getJarIndex());
+		chp = new ClassHandleProvider(project, UiConfig.getDecompiler().service);
+		chp.setPrefetchLimit(UiConfig.getPrefetchLimit());
+		SwingUtilities.invokeLater(() -> {
+			for (ProjectService projectService : enigma.getServices().get(ProjectService.TYPE)) {
+				projectService.onProjectOpen(project);
+			}
+
+			gui.onFinishOpenJar(getFileNames(project.getJarPaths()));
+			refreshClasses();
+		});
+	}
+
+	/**
+	 * Like {@link #openJar}, but only re-indexes the classes of the previous project that changed on disk.
+	 */
+	private CompletableFuture<Void> reloadJar(EnigmaProject previousProject) {
+		this.gui.onStartOpenJar();
+
+		return ProgressDialog.runOffThread(gui.getFrame(), progress -> {
+			project = enigma.reloadJars(previousProject, progress, false);
+			onProjectOpened();
 		});
 	}
 
@@ -281,13 +298,12 @@ public class GuiController implements ClientPacketHandler, GuiView, DataInvalida
 	}
 
 	public void reloadAll() {
-		List<Path> jarPaths = this.project.getJarPaths();
-		List<Path> libraryPaths = this.project.getLibraryPaths();
+		EnigmaProject previousProject = this.project;
 		MappingFormat loadedMappingFormat = this.loadedMappingFormat;
 		Path loadedMappingPath = this.loadedMappingPath;
 
 		this.closeJar();
-		CompletableFuture<Void> f = this.openJar(jarPaths, libraryPaths);
+		CompletableFuture<Void> f = this.reloadJar(previousProject);
 
 		if (loadedMappingFormat != null && loadedMappingPath != null) {
 			f.whenComplete((v, t) -> this.openMappings(loadedMappingFormat, loadedMappingPath));
@@ -28,6 +28,7 @@ import joptsimple.ValueConverter;
 
 import cuchaz.enigma.Enigma;
 import cuchaz.enigma.EnigmaProfile;
+import cuchaz.enigma.config.ConfigPaths;
 import cuchaz.enigma.gui.config.Themes;
 import cuchaz.enigma.gui.config.UiConfig;
 import cuchaz.enigma.gui.dialog.CrashDialog;
@@ -102,7 +103,11 @@ public class Main {
 			}
 
 			EnigmaProfile parsedProfile = EnigmaProfile.read(options.valueOf(profile));
-			Enigma enigma = Enigma.builder().setProfile(parsedProfile).build();
+			Enigma enigma = Enigma.builder()
+					.setProfile(parsedProfile)
+					.setIndexCacheDirectory(ConfigPaths.getCacheDirectory("index"))
+					.setSourceCacheDirectory(ConfigPaths.getCacheDirectory("sources"))
+					.build();
 
 			I18n.setLanguage(UiConfig.getLanguage(), enigma.getServices());
 
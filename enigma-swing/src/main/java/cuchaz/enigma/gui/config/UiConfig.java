@@ -112,6 +112,14 @@ public final class UiConfig {
 		ui.data().section("Decompiler").setEnum("Current", d);
 	}
 
+	public static int getPrefetchLimit() {
+		return ui.data().section("Decompiler").setIfAbsentInt("Prefetch Limit", 0);
+	}
+
+	public static void setPrefetchLimit(int limit) {
+		ui.data().section("Decompiler").setInt("Prefetch Limit", limit);
+	}
+
 	private static Color fromComponents(int rgb, double alpha) {
 		int rgba = rgb & 0xFFFFFF | (int) (alpha * 255) << 24;
 		return new Color(rgba, true);
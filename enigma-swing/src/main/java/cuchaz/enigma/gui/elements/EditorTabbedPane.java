@@ -1,6 +1,9 @@
 package cuchaz.enigma.gui.elements;
 
 import java.awt.Component;
+import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
@@ -15,6 +18,7 @@ import org.jetbrains.annotations.Nullable;
 
 import cuchaz.enigma.analysis.EntryReference;
 import cuchaz.enigma.classhandle.ClassHandle;
+import cuchaz.enigma.classhandle.DecompilePriority;
 import cuchaz.enigma.gui.Gui;
 import cuchaz.enigma.gui.events.EditorActionListener;
 import cuchaz.enigma.gui.panels.ClosableTabTitlePane;
@@ -35,6 +39,14 @@ public class EditorTabbedPane {
 		this.editorTabPopupMenu = new EditorTabPopupMenu(this);
 
 		this.openFiles.addMouseListener(GuiUtil.onMousePress(this::onTabPressed));
+		// the tabs are only scrolled to the selected one once it is laid out again
+		this.openFiles.addChangeListener(e -> SwingUtilities.invokeLater(this::updatePriorities));
+		this.openFiles.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				EditorTabbedPane.this.updatePriorities();
+			}
+		});
 	}
 
 	public EditorPanel openClass(ClassEntry entry) {
@@ -66,6 +78,7 @@ public class EditorTabbedPane {
 				public void onClassHandleChanged(EditorPanel editor, ClassEntry old, ClassHandle ch) {
 					EditorTabbedPane.this.editors.remove(old);
 					EditorTabbedPane.this.editors.put(ch.getRef(), editor);
+					EditorTabbedPane.this.updatePriorities();
 				}
 
 				@Override
@@ -143,6 +156,33 @@ public class EditorTabbedPane {
 		return EditorPanel.byUi(this.openFiles.getSelectedComponent());
 	}
 
+	/**
+	 * Decompiles the class of the selected tab first, then the classes of the other tabs shown in the tab strip,
+	 * and those of the tabs scrolled out of it last.
+	 */
+	private void updatePriorities() {
+		EditorPanel activeEditor = this.getActiveEditor();
+		Rectangle tabArea = new Rectangle(0, 0, this.openFiles.getWidth(), this.openFiles.getHeight());
+
+		for (EditorPanel editor : this.editors.values()) {
+			ClassHandle handle = editor.getClassHandle();
+
+			if (handle != null) {
+				DecompilePriority priority;
+
+				if (editor == activeEditor) {
+					priority = DecompilePriority.FOCUSED;
+				} else {
+					int index = this.openFiles.indexOfComponent(editor.getUi());
+					Rectangle bounds = index == -1 ? null : this.openFiles.getBoundsAt(index);
+					priority = bounds != null && bounds.intersects(tabArea) ? DecompilePriority.VISIBLE : DecompilePriority.BACKGROUND;
+				}
+
+				handle.setPriority(priority);
+			}
+		}
+	}
+
 	private void onTabPressed(MouseEvent e) {
 		if (SwingUtilities.isRightMouseButton(e)) {
 			int i = this.openFiles.getUI().tabForCoordinate(this.openFiles, e.getX(), e.getY());
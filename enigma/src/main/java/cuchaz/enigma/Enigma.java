@@ -12,6 +12,7 @@
 package cuchaz.enigma;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -24,11 +25,21 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Opcodes;
 
+import cuchaz.enigma.analysis.index.ClassVisitorPass;
+import cuchaz.enigma.analysis.index.IndexLevel;
+import cuchaz.enigma.analysis.index.IndexSnapshot;
 import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.analysis.index.LibraryIndex;
 import cuchaz.enigma.api.EnigmaPlugin;
 import cuchaz.enigma.api.EnigmaPluginContext;
 import cuchaz.enigma.api.Ordering;
@@ -42,6 +53,8 @@ import cuchaz.enigma.classprovider.ClassProvider;
 import cuchaz.enigma.classprovider.ClasspathClassProvider;
 import cuchaz.enigma.classprovider.CombiningClassProvider;
 import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.classprovider.JrtClassProvider;
+import cuchaz.enigma.source.SourceCache;
 import cuchaz.enigma.utils.I18n;
 import cuchaz.enigma.utils.OrderingImpl;
 import cuchaz.enigma.utils.Utils;
@@ -54,10 +67,18 @@ public class Enigma {
 
 	private final EnigmaProfile profile;
 	private final EnigmaServices services;
+	private final List<String> plugins;
+	@Nullable
+	private final Path indexCacheDirectory;
+	@Nullable
+	private final Path sourceCacheDirectory;
 
-	private Enigma(EnigmaProfile profile, EnigmaServices services) {
+	private Enigma(EnigmaProfile profile, EnigmaServices services, List<String> plugins, @Nullable Path indexCacheDirectory, @Nullable Path sourceCacheDirectory) {
 		this.profile = profile;
 		this.services = services;
+		this.plugins = plugins;
+		this.indexCacheDirectory = indexCacheDirectory;
+		this.sourceCacheDirectory = sourceCacheDirectory;
 	}
 
 	public static Enigma create() {
@@ -77,37 +98,314 @@ public class Enigma {
 	}
 
 	public EnigmaProject openJars(List<Path> paths, List<Path> libraries, ProgressListener progress, boolean callServices) throws IOException {
-		ClassProvider jarClassProvider = getJarClassProvider(paths);
-		ClassProvider classProvider = new CachingClassProvider(new CombiningClassProvider(jarClassProvider, getJarClassProvider(libraries), new ClasspathClassProvider()));
-		Set<String> scope = Set.copyOf(jarClassProvider.getClassNames());
+		return openJars(paths, libraries, progress, callServices, IndexLevel.FULL);
+	}
+
+	/**
+	 * Opens the jars as a graph of stages running at the same time. The jars and libraries are opened and
+	 * checksummed while the libraries are indexed, the jars are indexed as soon as what they need is ready, and
+	 * the plugin indexers run in parallel with each other.
+	 *
+	 * @param level how much of the jars to index up front, the rest is indexed once it is asked for
+	 */
+	public EnigmaProject openJars(List<Path> paths, List<Path> libraries, ProgressListener progress, boolean callServices, IndexLevel level) throws IOException {
+		List<JarIndexerService> indexers = services.get(JarIndexerService.TYPE);
+		StagedProgressListener stages = new StagedProgressListener(progress, 7 + indexers.size(), I18n.translate("progress.jar.opening"));
+		StagedProgressListener.Stage openingStage = stages.stage(1);
+		StagedProgressListener.Stage checksumStage = stages.stage(1);
+		StagedProgressListener.Stage libraryStage = stages.stage(1);
+		StagedProgressListener.Stage indexingStage = stages.stage(4);
+		ExecutorService executor = Executors.newCachedThreadPool();
+
+		try {
+			Path[] jars = paths.toArray(new Path[0]);
+			CompletableFuture<List<JarClassProvider>> jarClassProviders = openJarsAsync(paths, executor);
+			CompletableFuture<ClassProvider> jarClassProvider = jarClassProviders.thenApply(Enigma::combine);
+			CompletableFuture<ClassProvider> libraryClassProvider = openJarsAsync(libraries, executor).thenApply(Enigma::combine);
+			// read from the central directories the providers already parsed
+			CompletableFuture<Map<String, Long>> classChecksums = jarClassProviders.thenApply(Enigma::collectClassChecksums);
+			// only needed by the project, so it is computed while the jars are indexed
+			CompletableFuture<byte[]> jarChecksum = supplyAsync(() -> Utils.zipSha1(jars), executor);
+			// the checksums of the libraries are only needed to find what was cached for them
+			CompletableFuture<List<byte[]>> libraryChecksums = indexCacheDirectory == null ? CompletableFuture.completedFuture(null) : checksumAsync(libraries, executor);
+			CompletableFuture<LibraryIndex> libraryIndex = supplyAsync(() -> indexLibraries(libraries, join(libraryChecksums)), executor);
+
+			CompletableFuture.allOf(jarClassProvider, libraryClassProvider, classChecksums).thenRun(() -> openingStage.finish(I18n.translate("progress.jar.opening.jars")));
+			CompletableFuture.allOf(jarChecksum, libraryChecksums).thenRun(() -> checksumStage.finish(I18n.translate("progress.jar.opening.checksums")));
+			libraryIndex.thenRun(() -> libraryStage.finish(I18n.translate("progress.jar.opening.libraries")));
+
+			ClassProvider jarClasses = join(jarClassProvider);
+			ClassProvider classProvider = new CachingClassProvider(new CombiningClassProvider(jarClasses, join(libraryClassProvider), JrtClassProvider.shared(), new ClasspathClassProvider()), profile.getClassCacheShare());
+			Set<String> scope = Set.copyOf(jarClasses.getClassNames());
+			byte[] key = indexCacheDirectory == null ? null : IndexSnapshot.computeKey(join(classChecksums), join(libraryChecksums), plugins);
+
+			ClassVisitorPass pluginPass = createPluginPass(indexers);
+			JarIndex index = indexJars(scope, join(classChecksums), classProvider, join(libraryIndex), key, level, pluginPass, indexingStage);
+			index.setFramesCacheSize(profile.getClassCacheShare());
+			runIndexers(indexers, pluginPass, scope, index.createClassProviderWithFrames(classProvider), index, stages, executor);
+
+			EnigmaProject project = new EnigmaProject(this, paths, libraries, classProvider, scope, index, join(jarChecksum));
+
+			if (callServices) {
+				for (ProjectService projectService : services.get(ProjectService.TYPE)) {
+					projectService.onProjectOpen(project);
+				}
+			}
+
+			return project;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Reopens the jars of the given project after they changed on disk. Only the classes that changed and
+	 * the classes depending on them are indexed again, the index of the given project is updated in place.
+	 */
+	public EnigmaProject reloadJars(EnigmaProject project, ProgressListener progress) throws IOException {
+		return reloadJars(project, progress, true);
+	}
+
+	public EnigmaProject reloadJars(EnigmaProject project, ProgressListener progress, boolean callServices) throws IOException {
+		List<Path> paths = project.getJarPaths();
+		List<Path> libraries = project.getLibraryPaths();
+		JarIndex index = project.getJarIndex();
+		boolean writeSnapshot = indexCacheDirectory != null && index.getIndexLevel() == IndexLevel.FULL;
+		List<JarIndexerService> indexers = services.get(JarIndexerService.TYPE);
+		StagedProgressListener stages = new StagedProgressListener(progress, 6 + indexers.size(), I18n.translate("progress.jar.opening"));
+		StagedProgressListener.Stage openingStage = stages.stage(1);
+		StagedProgressListener.Stage checksumStage = stages.stage(1);
+		StagedProgressListener.Stage indexingStage = stages.stage(4);
+		ExecutorService executor = Executors.newCachedThreadPool();
+
+		try {
+			Path[] jars = paths.toArray(new Path[0]);
+			CompletableFuture<List<JarClassProvider>> jarClassProviders = openJarsAsync(paths, executor);
+			CompletableFuture<ClassProvider> jarClassProvider = jarClassProviders.thenApply(Enigma::combine);
+			CompletableFuture<ClassProvider> libraryClassProvider = openJarsAsync(libraries, executor).thenApply(Enigma::combine);
+			// read from the central directories the providers already parsed
+			CompletableFuture<Map<String, Long>> classChecksums = jarClassProviders.thenApply(Enigma::collectClassChecksums);
+			// only needed by the project, so it is computed while the jars are indexed
+			CompletableFuture<byte[]> jarChecksum = supplyAsync(() -> Utils.zipSha1(jars), executor);
+			CompletableFuture<List<byte[]>> libraryChecksums = writeSnapshot ? checksumAsync(libraries, executor) : CompletableFuture.completedFuture(null);
+
+			CompletableFuture.allOf(jarClassProvider, libraryClassProvider, classChecksums).thenRun(() -> openingStage.finish(I18n.translate("progress.jar.opening.jars")));
+			CompletableFuture.allOf(jarChecksum, libraryChecksums).thenRun(() -> checksumStage.finish(I18n.translate("progress.jar.opening.checksums")));
+
+			ClassProvider jarClasses = join(jarClassProvider);
+			ClassProvider classProvider = new CachingClassProvider(new CombiningClassProvider(jarClasses, join(libraryClassProvider), JrtClassProvider.shared(), new ClasspathClassProvider()), profile.getClassCacheShare());
+			Set<String> scope = Set.copyOf(jarClasses.getClassNames());
+
+			index.updateJar(join(classChecksums), classProvider, indexingStage);
+			indexingStage.finish(I18n.translate("progress.jar.indexing.process"));
+
+			if (writeSnapshot) {
+				byte[] key = IndexSnapshot.computeKey(join(classChecksums), join(libraryChecksums), plugins);
+				Path snapshotPath = IndexSnapshot.getPath(indexCacheDirectory, key);
+
+				try {
+					index.writeSnapshot(snapshotPath, key);
+				} catch (IOException e) {
+					System.err.println("Failed to write index snapshot " + snapshotPath);
+					e.printStackTrace();
+				}
+			}
+
+			// only the changed classes were read again, so the plugins visit the whole jar on their own
+			runIndexers(indexers, createPluginPass(indexers), scope, index.createClassProviderWithFrames(classProvider), index, stages, executor);
+
+			EnigmaProject reloaded = new EnigmaProject(this, paths, libraries, classProvider, scope, index, join(jarChecksum));
+
+			if (callServices) {
+				for (ProjectService projectService : services.get(ProjectService.TYPE)) {
+					projectService.onProjectOpen(reloaded);
+				}
+			}
+
+			return reloaded;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * @param key the key of the index snapshot to load or write, or {@code null} to always index the jars
+	 * @param pluginPass the plugin indexers to run while the jars are read, if they are
+	 */
+	private JarIndex indexJars(Set<String> scope, Map<String, Long> classChecksums, ClassProvider classProvider, LibraryIndex libraryIndex, @Nullable byte[] key, IndexLevel level, ClassVisitorPass pluginPass, ProgressListener progress) {
+		if (key == null) {
+			JarIndex index = JarIndex.empty(libraryIndex, level);
+			index.indexJar(classChecksums, classProvider, pluginPass, progress);
+			return index;
+		}
+
+		Path snapshotPath = IndexSnapshot.getPath(indexCacheDirectory, key);
+
+		try {
+			progress.init(1, I18n.translate("progress.jar.indexing"));
+			// the snapshot is still being loaded, and may turn out to be missing
+			progress.step(0, I18n.translate("progress.jar.indexing.snapshot"));
+			// a snapshot holds a complete index, which is loaded whatever the level
+			JarIndex index = JarIndex.empty(libraryIndex, level);
+
+			if (index.readSnapshot(scope, snapshotPath, key)) {
+				return index;
+			}
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Failed to read index snapshot " + snapshotPath + ", re-indexing");
+			e.printStackTrace();
+		}
+
+		JarIndex index = JarIndex.empty(libraryIndex, level);
+		index.indexJar(classChecksums, classProvider, pluginPass, progress);
+
+		if (level != IndexLevel.FULL) {
+			return index;
+		}
+
+		try {
+			index.writeSnapshot(snapshotPath, key);
+		} catch (IOException e) {
+			System.err.println("Failed to write index snapshot " + snapshotPath);
+			e.printStackTrace();
+		}
+
+		return index;
+	}
+
+	private LibraryIndex indexLibraries(List<Path> libraries, @Nullable List<byte[]> libraryChecksums) throws IOException {
+		LibraryIndex libraryIndex = new LibraryIndex();
+
+		// the libraries are indexed in order, so that the classes of the first library providing them are kept
+		for (int i = 0; i < libraries.size(); i++) {
+			libraryIndex.indexLibrary(libraries.get(i), libraryChecksums == null ? null : libraryChecksums.get(i), indexCacheDirectory);
+		}
+
+		return libraryIndex;
+	}
 
-		JarIndex index = JarIndex.empty();
-		ClassProvider classProviderWithFrames = index.indexJar(scope, classProvider, progress);
-		services.get(JarIndexerService.TYPE).forEach(indexer -> indexer.acceptJar(scope, classProviderWithFrames, index));
+	private static ClassVisitorPass createPluginPass(List<JarIndexerService> indexers) {
+		List<JarIndexerService.ClassVisitorIndexer<?>> visitorIndexers = new ArrayList<>();
 
-		EnigmaProject project = new EnigmaProject(this, paths, libraries, classProvider, scope, index, Utils.zipSha1(paths.toArray(new Path[0])));
+		for (JarIndexerService indexer : indexers) {
+			if (indexer instanceof JarIndexerService.ClassVisitorIndexer<?> visitorIndexer) {
+				visitorIndexers.add(visitorIndexer);
+			}
+		}
+
+		return new ClassVisitorPass(visitorIndexers);
+	}
 
-		if (callServices) {
-			for (ProjectService projectService : services.get(ProjectService.TYPE)) {
-				projectService.onProjectOpen(project);
+	/**
+	 * Runs the plugin indexers in parallel, each one reporting its progress as it finishes. The indexers made of
+	 * class visitors are combined from the given pass, which visits the classes itself if it did not while the
+	 * jar was indexed.
+	 */
+	private static void runIndexers(List<JarIndexerService> indexers, ClassVisitorPass pluginPass, Set<String> scope, ClassProvider classProvider, JarIndex index, StagedProgressListener stages, Executor executor) throws IOException {
+		List<CompletableFuture<?>> futures = new ArrayList<>(indexers.size());
+		List<StagedProgressListener.Stage> passStages = new ArrayList<>();
+
+		for (JarIndexerService indexer : indexers) {
+			StagedProgressListener.Stage stage = stages.stage(1);
+
+			if (indexer instanceof JarIndexerService.ClassVisitorIndexer<?>) {
+				passStages.add(stage);
+				continue;
 			}
+
+			futures.add(CompletableFuture.runAsync(() -> {
+				indexer.acceptJar(scope, classProvider, index);
+				stage.finish(I18n.translate("progress.jar.indexing.plugins"));
+			}, executor));
 		}
 
-		return project;
+		if (!pluginPass.isEmpty()) {
+			futures.add(CompletableFuture.runAsync(() -> {
+				if (!pluginPass.isVisited()) {
+					pluginPass.visitClasses(scope, classProvider);
+				}
+
+				pluginPass.combine();
+				passStages.forEach(stage -> stage.finish(I18n.translate("progress.jar.indexing.plugins")));
+			}, executor));
+		}
+
+		join(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])));
 	}
 
-	private ClassProvider getJarClassProvider(List<Path> jars) throws IOException {
-		if (jars.size() == 1) {
-			return new JarClassProvider(jars.get(0));
+	private static CompletableFuture<List<JarClassProvider>> openJarsAsync(List<Path> jars, Executor executor) {
+		List<CompletableFuture<JarClassProvider>> futures = new ArrayList<>(jars.size());
+
+		for (Path jar : jars) {
+			futures.add(supplyAsync(() -> new JarClassProvider(jar), executor));
 		}
 
-		var classProviders = new ClassProvider[jars.size()];
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> futures.stream().map(CompletableFuture::join).toList());
+	}
 
-		for (int i = 0; i < jars.size(); i++) {
-			classProviders[i] = new JarClassProvider(jars.get(i));
+	private static ClassProvider combine(List<JarClassProvider> providers) {
+		if (providers.size() == 1) {
+			return providers.get(0);
 		}
 
-		return new CombiningClassProvider(classProviders);
+		return new CombiningClassProvider(providers.toArray(ClassProvider[]::new));
+	}
+
+	/**
+	 * Collects the checksums of the classes of the jars, of the first jar providing a class like the combined
+	 * class provider.
+	 */
+	private static Map<String, Long> collectClassChecksums(List<JarClassProvider> providers) {
+		Map<String, Long> checksums = new HashMap<>();
+
+		for (JarClassProvider provider : providers) {
+			provider.getClassChecksums().forEach(checksums::putIfAbsent);
+		}
+
+		return checksums;
+	}
+
+	private static CompletableFuture<List<byte[]>> checksumAsync(List<Path> jars, Executor executor) {
+		List<CompletableFuture<byte[]>> futures = new ArrayList<>(jars.size());
+
+		for (Path jar : jars) {
+			futures.add(supplyAsync(() -> Utils.zipCentralDirectorySha1(jar), executor));
+		}
+
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> futures.stream().map(CompletableFuture::join).toList());
+	}
+
+	private static <T> CompletableFuture<T> supplyAsync(IoSupplier<T> supplier, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return supplier.get();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Waits for a stage, rethrowing what made it fail.
+	 */
+	private static <T> T join(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException ioException) {
+				throw ioException.getCause();
+			} else if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			} else if (e.getCause() instanceof Error error) {
+				throw error;
+			}
+
+			throw e;
+		}
+	}
+
+	private interface IoSupplier<T> {
+		T get() throws IOException;
 	}
 
 	public EnigmaProfile getProfile() {
@@ -118,8 +416,20 @@ public class Enigma {
 		return services;
 	}
 
+	/**
+	 * @return the directory in which decompiled sources are cached, or {@code null} if they are not
+	 */
+	@Nullable
+	public Path getSourceCacheDirectory() {
+		return sourceCacheDirectory;
+	}
+
 	public static class Builder {
 		private EnigmaProfile profile = EnigmaProfile.EMPTY;
+		@Nullable
+		private Path indexCacheDirectory;
+		@Nullable
+		private Path sourceCacheDirectory;
 
 		private Builder() {
 		}
@@ -129,18 +439,59 @@ public class Enigma {
 			return this;
 		}
 
+		/**
+		 * Sets the directory in which jar index snapshots are stored, so that reopening an unchanged jar
+		 * skips indexing. Snapshots are not used if this is {@code null}, which is the default.
+		 * The directory is pruned to {@link IndexSnapshot#DEFAULT_MAX_CACHE_SIZE} in the background when Enigma
+		 * is built.
+		 */
+		public Builder setIndexCacheDirectory(@Nullable Path indexCacheDirectory) {
+			this.indexCacheDirectory = indexCacheDirectory;
+			return this;
+		}
+
+		/**
+		 * Sets the directory in which decompiled sources are stored, so that reopening a class which did not
+		 * change skips decompiling it. Sources are not cached if this is {@code null}, which is the default.
+		 * The directory is pruned to {@link SourceCache#DEFAULT_MAX_SIZE} in the background when Enigma is built.
+		 */
+		public Builder setSourceCacheDirectory(@Nullable Path sourceCacheDirectory) {
+			this.sourceCacheDirectory = sourceCacheDirectory;
+			return this;
+		}
+
 		public Enigma build() {
 			PluginContext pluginContext = new PluginContext();
+			List<String> plugins = new ArrayList<>();
 
 			ServiceLoader.load(EnigmaPlugin.class).stream()
 					.filter(plugin -> !profile.getDisabledPlugins().contains(plugin.type().getName()))
-					.forEach(plugin -> plugin.get().init(pluginContext));
+					.forEach(plugin -> {
+						plugins.add(plugin.type().getName());
+						plugin.get().init(pluginContext);
+					});
 
 			EnigmaServices services = pluginContext.buildServices();
 
 			I18n.initialize(services);
 
-			return new Enigma(profile, services);
+			if (indexCacheDirectory != null || sourceCacheDirectory != null) {
+				Path indexDirectory = indexCacheDirectory;
+				Path sourceDirectory = sourceCacheDirectory;
+				Thread thread = new Thread(() -> {
+					if (indexDirectory != null) {
+						Utils.pruneCacheDirectory(indexDirectory, IndexSnapshot.DEFAULT_MAX_CACHE_SIZE);
+					}
+
+					if (sourceDirectory != null) {
+						SourceCache.prune(sourceDirectory, SourceCache.DEFAULT_MAX_SIZE);
+					}
+				}, "Cache pruning thread");
+				thread.setDaemon(true);
+				thread.start();
+			}
+
+			return new Enigma(profile, services, List.copyOf(plugins), indexCacheDirectory, sourceCacheDirectory);
 		}
 	}
 
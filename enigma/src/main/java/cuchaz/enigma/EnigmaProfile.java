@@ -11,6 +11,7 @@ import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
 import org.jetbrains.annotations.Nullable;
 
+import cuchaz.enigma.classprovider.CachingClassProvider;
 import cuchaz.enigma.translation.mapping.serde.MappingFileNameFormat;
 import cuchaz.enigma.translation.mapping.serde.MappingSaveParameters;
 
@@ -19,6 +20,8 @@ public final class EnigmaProfile {
 
 	private static final MappingSaveParameters DEFAULT_MAPPING_SAVE_PARAMETERS = new MappingSaveParameters(MappingFileNameFormat.BY_DEOBF);
 	private static final Gson GSON = new Gson();
+	// the caches of an opened jar which the class cache size is split between
+	private static final int CLASS_CACHE_COUNT = 5;
 
 	@SerializedName("disabled_plugins")
 	private final Set<String> disabledPlugins = Set.of();
@@ -26,6 +29,9 @@ public final class EnigmaProfile {
 	@SerializedName("mapping_save_parameters")
 	private final MappingSaveParameters mappingSaveParameters = DEFAULT_MAPPING_SAVE_PARAMETERS;
 
+	@SerializedName("class_cache_size")
+	private final Long classCacheSize = null;
+
 	private EnigmaProfile() {
 	}
 
@@ -54,4 +60,24 @@ public final class EnigmaProfile {
 			return mappingSaveParameters;
 		}
 	}
+
+	/**
+	 * @return the number of bytes the parsed classes of an opened jar may take up in all of its caches together
+	 */
+	public long getClassCacheSize() {
+		if (classCacheSize == null) {
+			return CachingClassProvider.DEFAULT_MAX_WEIGHT;
+		} else {
+			return classCacheSize;
+		}
+	}
+
+	/**
+	 * @return the number of bytes the classes may take up in each cache of an opened jar, which are the classes
+	 * read from the jars, the classes given frames, the fixed classes and the classes given to the decompiler
+	 * before and after they are fixed
+	 */
+	public long getClassCacheShare() {
+		return getClassCacheSize() / CLASS_CACHE_COUNT;
+	}
 }
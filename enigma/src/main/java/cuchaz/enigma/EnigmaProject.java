@@ -8,6 +8,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -34,9 +35,11 @@ import cuchaz.enigma.api.view.ProjectView;
 import cuchaz.enigma.api.view.entry.EntryView;
 import cuchaz.enigma.bytecode.translators.TranslationClassVisitor;
 import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.classprovider.DecompilerInputTransformingClassProvider;
 import cuchaz.enigma.classprovider.ObfuscationFixClassProvider;
 import cuchaz.enigma.source.Decompiler;
 import cuchaz.enigma.source.DecompilerService;
+import cuchaz.enigma.source.Source;
 import cuchaz.enigma.source.SourceSettings;
 import cuchaz.enigma.translation.ObfuscatingTranslator;
 import cuchaz.enigma.translation.ProposingTranslator;
@@ -54,6 +57,7 @@ import cuchaz.enigma.translation.representation.entry.Entry;
 import cuchaz.enigma.translation.representation.entry.LocalVariableEntry;
 import cuchaz.enigma.translation.representation.entry.MethodEntry;
 import cuchaz.enigma.utils.I18n;
+import cuchaz.enigma.utils.Result;
 
 public class EnigmaProject implements ProjectView {
 	private final Enigma enigma;
@@ -64,6 +68,9 @@ public class EnigmaProject implements ProjectView {
 	private final JarIndex jarIndex;
 	private final byte[] jarChecksum;
 	private final Set<String> projectClasses;
+	// the fixed classes are cached until the index changes
+	private final ObfuscationFixClassProvider fixingClassProvider;
+	private final ObfuscationFixClassProvider decompilerClassProvider;
 
 	private EntryRemapper mapper;
 	private Translator proposingTranslator;
@@ -85,6 +92,10 @@ public class EnigmaProject implements ProjectView {
 		this.jarChecksum = jarChecksum;
 		this.projectClasses = projectClasses;
 
+		long cacheSize = enigma.getProfile().getClassCacheShare();
+		this.fixingClassProvider = new ObfuscationFixClassProvider(classProvider, jarIndex, cacheSize);
+		this.decompilerClassProvider = new ObfuscationFixClassProvider(new DecompilerInputTransformingClassProvider(classProvider, enigma.getServices(), cacheSize), jarIndex, cacheSize);
+
 		setMappings(null);
 	}
 
@@ -119,6 +130,13 @@ public class EnigmaProject implements ProjectView {
 		return classProvider;
 	}
 
+	/**
+	 * @return the classes of the project as they are given to the decompilers, fixed and transformed
+	 */
+	public ClassProvider getDecompilerClassProvider() {
+		return decompilerClassProvider;
+	}
+
 	@Override
 	public JarIndex getJarIndex() {
 		return jarIndex;
@@ -245,7 +263,6 @@ public class EnigmaProject implements ProjectView {
 
 	public JarExport exportRemappedJar(ProgressListener progress) {
 		Collection<ClassEntry> classEntries = jarIndex.getEntryIndex().getClasses();
-		ClassProvider fixingClassProvider = new ObfuscationFixClassProvider(classProvider, jarIndex);
 
 		AtomicInteger count = new AtomicInteger();
 		progress.init(classEntries.size(), I18n.translate("progress.classes.deobfuscating"));
@@ -269,6 +286,8 @@ public class EnigmaProject implements ProjectView {
 	}
 
 	public static final class JarExport {
+		private static final int MAX_DECOMPILE_BATCH_SIZE = 512;
+
 		private final EntryRemapper mapper;
 		private final Map<String, ClassNode> compiled;
 
@@ -304,18 +323,20 @@ public class EnigmaProject implements ProjectView {
 		}
 
 		public Stream<ClassSource> decompileStream(EnigmaProject project, ProgressListener progress, DecompilerService decompilerService, DecompileErrorStrategy errorStrategy) {
-			Collection<ClassNode> classes = this.compiled.values().stream()
+			List<String> classNames = this.compiled.values().stream()
 					.filter(classNode -> classNode.name.indexOf('$') == -1)
 					.map(classNode -> {
 						for (DecompilerInputTransformerService transformer : project.enigma.getServices().get(DecompilerInputTransformerService.TYPE)) {
 							classNode = transformer.transform(classNode);
 						}
 
-						return classNode;
+						return classNode.name;
 					})
+					// the classes of a package are decompiled together, as they tend to use the same classes
+					.sorted()
 					.toList();
 
-			progress.init(classes.size(), I18n.translate("progress.classes.decompiling"));
+			progress.init(classNames.size(), I18n.translate("progress.classes.decompiling"));
 
 			//create a common instance outside the loop as mappings shouldn't be changing while this is happening
 			Decompiler decompiler = decompilerService.create(new ClassProvider() {
@@ -330,40 +351,66 @@ public class EnigmaProject implements ProjectView {
 				}
 			}, new SourceSettings(false, false));
 
+			// enough batches to keep every thread busy, while keeping them large enough for the decompilers to share
+			// the loading and analysis of the classes used by the classes of a batch
+			int threads = Runtime.getRuntime().availableProcessors();
+			int batchSize = Math.max(1, Math.min(MAX_DECOMPILE_BATCH_SIZE, (classNames.size() + threads * 4 - 1) / (threads * 4)));
+			List<List<String>> batches = new ArrayList<>();
+
+			for (int i = 0; i < classNames.size(); i += batchSize) {
+				batches.add(classNames.subList(i, Math.min(i + batchSize, classNames.size())));
+			}
+
 			AtomicInteger count = new AtomicInteger();
 
-			return classes.parallelStream().map(translatedNode -> {
-				progress.step(count.getAndIncrement(), translatedNode.name);
-
-				String source = null;
-
-				try {
-					source = decompileClass(translatedNode, decompiler);
-				} catch (Throwable throwable) {
-					switch (errorStrategy) {
-					case PROPAGATE:
-						throw throwable;
-					case IGNORE:
-						break;
-					case TRACE_AS_SOURCE: {
-						StringWriter writer = new StringWriter();
-						throwable.printStackTrace(new PrintWriter(writer));
-						source = writer.toString();
-						break;
-					}
+			return batches.parallelStream().flatMap(batch -> {
+				List<ClassSource> sources = Collections.synchronizedList(new ArrayList<>());
+
+				decompiler.decompileAll(batch, mapper, (className, result) -> {
+					progress.step(count.getAndIncrement(), className);
+
+					String source = decompileClass(result, errorStrategy);
+
+					if (source != null) {
+						sources.add(new ClassSource(className, source));
 					}
+				});
+
+				return sources.stream();
+			});
+		}
+
+		@Nullable
+		private static String decompileClass(Result<Source, Throwable> result, DecompileErrorStrategy errorStrategy) {
+			Throwable throwable;
+
+			try {
+				if (result.isOk()) {
+					return result.unwrap().asString();
 				}
 
-				if (source == null) {
-					return null;
+				throwable = result.unwrapErr();
+			} catch (Throwable t) {
+				throwable = t;
+			}
+
+			switch (errorStrategy) {
+			case PROPAGATE:
+				if (throwable instanceof Error error) {
+					throw error;
 				}
 
-				return new ClassSource(translatedNode.name, source);
-			}).filter(Objects::nonNull);
-		}
+				throw throwable instanceof RuntimeException e ? e : new RuntimeException(throwable);
+			case TRACE_AS_SOURCE: {
+				StringWriter writer = new StringWriter();
+				throwable.printStackTrace(new PrintWriter(writer));
+				return writer.toString();
+			}
+			case IGNORE:
+				break;
+			}
 
-		private String decompileClass(ClassNode translatedNode, Decompiler decompiler) {
-			return decompiler.getSource(translatedNode.name, mapper).asString();
+			return null;
 		}
 	}
 
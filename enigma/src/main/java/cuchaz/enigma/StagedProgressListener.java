@@ -0,0 +1,66 @@
+package cuchaz.enigma;
+
+/**
+ * Reports the progress of stages which may run at the same time to a single listener. Each stage takes up a fixed
+ * share of the total work, which its own progress is scaled to.
+ */
+final class StagedProgressListener {
+	private final ProgressListener progress;
+	private int workDone;
+
+	StagedProgressListener(ProgressListener progress, int totalWork, String title) {
+		this.progress = progress;
+		progress.init(totalWork, title);
+	}
+
+	/**
+	 * @param work the share of the total work taken up by the stage
+	 */
+	Stage stage(int work) {
+		return new Stage(work);
+	}
+
+	private synchronized void advance(int work, String message) {
+		workDone += work;
+		progress.step(workDone, message);
+	}
+
+	final class Stage implements ProgressListener {
+		private final int work;
+		private int stageTotalWork = 1;
+		private int reportedWork;
+
+		private Stage(int work) {
+			this.work = work;
+		}
+
+		/**
+		 * The title of the stage is dropped, only the title of the whole progress is shown.
+		 */
+		@Override
+		public void init(int totalWork, String title) {
+			synchronized (StagedProgressListener.this) {
+				stageTotalWork = Math.max(totalWork, 1);
+			}
+		}
+
+		@Override
+		public void step(int numDone, String message) {
+			synchronized (StagedProgressListener.this) {
+				int scaled = (int) Math.min(work, (long) numDone * work / stageTotalWork);
+				// a stage may start over, like when loading a snapshot fails, but its progress never goes back
+				int advanced = Math.max(scaled - reportedWork, 0);
+				reportedWork += advanced;
+				advance(advanced, message);
+			}
+		}
+
+		void finish(String message) {
+			synchronized (StagedProgressListener.this) {
+				int remaining = work - reportedWork;
+				reportedWork = work;
+				advance(remaining, message);
+			}
+		}
+	}
+}
@@ -1,7 +1,7 @@
 package cuchaz.enigma.analysis;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 import org.jetbrains.annotations.Nullable;
@@ -12,6 +12,9 @@ import org.objectweb.asm.commons.AnalyzerAdapter;
 
 /**
  * An {@link AnalyzerAdapter} that works even if the class wasn't read with {@link ClassReader#EXPAND_FRAMES}.
+ *
+ * <p>Only the first {@code numLocal} and {@code numStack} elements of the frame arrays are read, as a
+ * {@link ClassReader} passes its own buffers, which are longer and reused from frame to frame.
  */
 public class BetterAnalyzerAdapter extends AnalyzerAdapter {
 	private final List<Object> lastFrameLocals = new ArrayList<>();
@@ -42,7 +45,7 @@ public class BetterAnalyzerAdapter extends AnalyzerAdapter {
 			lastFrameStack.add(stack[0]);
 		}
 		case Opcodes.F_APPEND -> {
-			Collections.addAll(lastFrameLocals, local);
+			lastFrameLocals.addAll(Arrays.asList(local).subList(0, numLocal));
 			lastFrameStack.clear();
 		}
 		case Opcodes.F_CHOP -> {
@@ -51,9 +54,9 @@ public class BetterAnalyzerAdapter extends AnalyzerAdapter {
 		}
 		case Opcodes.F_FULL -> {
 			lastFrameLocals.clear();
-			Collections.addAll(lastFrameLocals, local);
+			lastFrameLocals.addAll(Arrays.asList(local).subList(0, numLocal));
 			lastFrameStack.clear();
-			Collections.addAll(lastFrameStack, stack);
+			lastFrameStack.addAll(Arrays.asList(stack).subList(0, numStack));
 		}
 		default -> {
 			throw new AssertionError("Illegal frame type: " + type);
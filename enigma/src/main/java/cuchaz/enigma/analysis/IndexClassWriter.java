@@ -5,15 +5,27 @@ import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Type;
 
 import cuchaz.enigma.analysis.index.EntryIndex;
+import cuchaz.enigma.analysis.index.LibraryIndex;
 import cuchaz.enigma.translation.representation.entry.ClassDefEntry;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 
 public class IndexClassWriter extends ClassWriter {
 	private final EntryIndex entryIndex;
+	@Nullable
+	private final LibraryIndex libraryIndex;
 
 	public IndexClassWriter(EntryIndex entryIndex, int flags) {
+		this(entryIndex, null, flags);
+	}
+
+	/**
+	 * @param libraryIndex the stubs of the library classes, which are resolved from them rather than falling back
+	 *                     to the classes loaded by Enigma itself
+	 */
+	public IndexClassWriter(EntryIndex entryIndex, @Nullable LibraryIndex libraryIndex, int flags) {
 		super(flags);
 		this.entryIndex = entryIndex;
+		this.libraryIndex = libraryIndex;
 	}
 
 	@Override
@@ -62,6 +74,14 @@ public class IndexClassWriter extends ClassWriter {
 			return new ClassDefEntryInfo(defEntry);
 		}
 
+		if (libraryIndex != null) {
+			LibraryIndex.ClassStub stub = libraryIndex.getStub(internalName);
+
+			if (stub != null) {
+				return new ClassStubInfo(stub);
+			}
+		}
+
 		Class<?> clazz;
 
 		try {
@@ -112,6 +132,30 @@ public class IndexClassWriter extends ClassWriter {
 		}
 	}
 
+	private class ClassStubInfo implements ClassInfo {
+		private final LibraryIndex.ClassStub stub;
+
+		private ClassStubInfo(LibraryIndex.ClassStub stub) {
+			this.stub = stub;
+		}
+
+		@Override
+		public String getName() {
+			return stub.name();
+		}
+
+		@Override
+		@Nullable
+		public ClassInfo getSuperClass() {
+			return stub.superName() == null ? null : getClassInfo(stub.superName());
+		}
+
+		@Override
+		public boolean isInterface() {
+			return stub.isInterface();
+		}
+	}
+
 	private record ReflectionClassInfo(Class<?> clazz) implements ClassInfo {
 		@Override
 		public String getName() {
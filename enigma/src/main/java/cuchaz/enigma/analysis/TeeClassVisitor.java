@@ -0,0 +1,599 @@
+package cuchaz.enigma.analysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.ModuleVisitor;
+import org.objectweb.asm.RecordComponentVisitor;
+import org.objectweb.asm.TypePath;
+
+/**
+ * Passes a class on to several visitors, so that it is only read once for all of them.
+ *
+ * <p>Each visitor after the first gets its own labels for the code of a method, since visitors like
+ * {@link org.objectweb.asm.tree.MethodNode} keep their own data in the labels they are given.
+ */
+public class TeeClassVisitor extends ClassVisitor {
+	private final List<ClassVisitor> visitors;
+
+	private TeeClassVisitor(int api, List<ClassVisitor> visitors) {
+		super(api);
+		this.visitors = visitors;
+	}
+
+	/**
+	 * @return a visitor passing everything on to the given visitors, or the only one of them
+	 */
+	public static ClassVisitor of(int api, List<? extends ClassVisitor> visitors) {
+		if (visitors.size() == 1) {
+			return visitors.get(0);
+		}
+
+		return new TeeClassVisitor(api, List.copyOf(visitors));
+	}
+
+	/**
+	 * Collects what each visitor returned for a part of the class, which is only passed on to those which asked
+	 * for it.
+	 */
+	@Nullable
+	private static <V, T> T tee(List<V> visitors, Function<V, T> visit, Function<List<T>, T> combiner) {
+		List<T> results = new ArrayList<>(visitors.size());
+
+		for (V visitor : visitors) {
+			T result = visit.apply(visitor);
+
+			if (result != null) {
+				results.add(result);
+			}
+		}
+
+		if (results.isEmpty()) {
+			return null;
+		}
+
+		return results.size() == 1 ? results.get(0) : combiner.apply(results);
+	}
+
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+		for (ClassVisitor visitor : visitors) {
+			visitor.visit(version, access, name, signature, superName, interfaces);
+		}
+	}
+
+	@Override
+	public void visitSource(String source, String debug) {
+		for (ClassVisitor visitor : visitors) {
+			visitor.visitSource(source, debug);
+		}
+	}
+
+	@Override
+	public ModuleVisitor visitModule(String name, int access, String version) {
+		return tee(visitors, visitor -> visitor.visitModule(name, access, version), results -> new TeeModuleVisitor(api, results));
+	}
+
+	@Override
+	public void visitNestHost(String nestHost) {
+		for (ClassVisitor visitor : visitors) {
+			visitor.visitNestHost(nestHost);
+		}
+	}
+
+	@Override
+	public void visitOuterClass(String owner, String name, String descriptor) {
+		for (ClassVisitor visitor : visitors) {
+			visitor.visitOuterClass(owner, name, descriptor);
+		}
+	}
+
+	@Override
+	public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+		return tee(visitors, visitor -> visitor.visitAnnotation(descriptor, visible), results -> new TeeAnnotationVisitor(api, results));
+	}
+
+	@Override
+	public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+		return tee(visitors, visitor -> visitor.visitTypeAnnotation(typeRef, typePath, descriptor, visible), results -> new TeeAnnotationVisitor(api, results));
+	}
+
+	@Override
+	public void visitAttribute(Attribute attribute) {
+		for (ClassVisitor visitor : visitors) {
+			visitor.visitAttribute(attribute);
+		}
+	}
+
+	@Override
+	public void visitNestMember(String nestMember) {
+		for (ClassVisitor visitor : visitors) {
+			visitor.visitNestMember(nestMember);
+		}
+	}
+
+	@Override
+	public void visitPermittedSubclass(String permittedSubclass) {
+		for (ClassVisitor visitor : visitors) {
+			visitor.visitPermittedSubclass(permittedSubclass);
+		}
+	}
+
+	@Override
+	public void visitInnerClass(String name, String outerName, String innerName, int access) {
+		for (ClassVisitor visitor : visitors) {
+			visitor.visitInnerClass(name, outerName, innerName, access);
+		}
+	}
+
+	@Override
+	public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
+		return tee(visitors, visitor -> visitor.visitRecordComponent(name, descriptor, signature), results -> new TeeRecordComponentVisitor(api, results));
+	}
+
+	@Override
+	public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+		return tee(visitors, visitor -> visitor.visitField(access, name, descriptor, signature, value), results -> new TeeFieldVisitor(api, results));
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+		return tee(visitors, visitor -> visitor.visitMethod(access, name, descriptor, signature, exceptions), results -> new TeeMethodVisitor(api, results));
+	}
+
+	@Override
+	public void visitEnd() {
+		for (ClassVisitor visitor : visitors) {
+			visitor.visitEnd();
+		}
+	}
+
+	private static final class TeeAnnotationVisitor extends AnnotationVisitor {
+		private final List<AnnotationVisitor> visitors;
+
+		private TeeAnnotationVisitor(int api, List<AnnotationVisitor> visitors) {
+			super(api);
+			this.visitors = visitors;
+		}
+
+		@Override
+		public void visit(String name, Object value) {
+			for (AnnotationVisitor visitor : visitors) {
+				visitor.visit(name, value);
+			}
+		}
+
+		@Override
+		public void visitEnum(String name, String descriptor, String value) {
+			for (AnnotationVisitor visitor : visitors) {
+				visitor.visitEnum(name, descriptor, value);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+			return tee(visitors, visitor -> visitor.visitAnnotation(name, descriptor), results -> new TeeAnnotationVisitor(api, results));
+		}
+
+		@Override
+		public AnnotationVisitor visitArray(String name) {
+			return tee(visitors, visitor -> visitor.visitArray(name), results -> new TeeAnnotationVisitor(api, results));
+		}
+
+		@Override
+		public void visitEnd() {
+			for (AnnotationVisitor visitor : visitors) {
+				visitor.visitEnd();
+			}
+		}
+	}
+
+	private static final class TeeFieldVisitor extends FieldVisitor {
+		private final List<FieldVisitor> visitors;
+
+		private TeeFieldVisitor(int api, List<FieldVisitor> visitors) {
+			super(api);
+			this.visitors = visitors;
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			return tee(visitors, visitor -> visitor.visitAnnotation(descriptor, visible), results -> new TeeAnnotationVisitor(api, results));
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			return tee(visitors, visitor -> visitor.visitTypeAnnotation(typeRef, typePath, descriptor, visible), results -> new TeeAnnotationVisitor(api, results));
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			for (FieldVisitor visitor : visitors) {
+				visitor.visitAttribute(attribute);
+			}
+		}
+
+		@Override
+		public void visitEnd() {
+			for (FieldVisitor visitor : visitors) {
+				visitor.visitEnd();
+			}
+		}
+	}
+
+	private static final class TeeRecordComponentVisitor extends RecordComponentVisitor {
+		private final List<RecordComponentVisitor> visitors;
+
+		private TeeRecordComponentVisitor(int api, List<RecordComponentVisitor> visitors) {
+			super(api);
+			this.visitors = visitors;
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			return tee(visitors, visitor -> visitor.visitAnnotation(descriptor, visible), results -> new TeeAnnotationVisitor(api, results));
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			return tee(visitors, visitor -> visitor.visitTypeAnnotation(typeRef, typePath, descriptor, visible), results -> new TeeAnnotationVisitor(api, results));
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			for (RecordComponentVisitor visitor : visitors) {
+				visitor.visitAttribute(attribute);
+			}
+		}
+
+		@Override
+		public void visitEnd() {
+			for (RecordComponentVisitor visitor : visitors) {
+				visitor.visitEnd();
+			}
+		}
+	}
+
+	private static final class TeeModuleVisitor extends ModuleVisitor {
+		private final List<ModuleVisitor> visitors;
+
+		private TeeModuleVisitor(int api, List<ModuleVisitor> visitors) {
+			super(api);
+			this.visitors = visitors;
+		}
+
+		@Override
+		public void visitMainClass(String mainClass) {
+			for (ModuleVisitor visitor : visitors) {
+				visitor.visitMainClass(mainClass);
+			}
+		}
+
+		@Override
+		public void visitPackage(String packaze) {
+			for (ModuleVisitor visitor : visitors) {
+				visitor.visitPackage(packaze);
+			}
+		}
+
+		@Override
+		public void visitRequire(String module, int access, String version) {
+			for (ModuleVisitor visitor : visitors) {
+				visitor.visitRequire(module, access, version);
+			}
+		}
+
+		@Override
+		public void visitExport(String packaze, int access, String... modules) {
+			for (ModuleVisitor visitor : visitors) {
+				visitor.visitExport(packaze, access, modules);
+			}
+		}
+
+		@Override
+		public void visitOpen(String packaze, int access, String... modules) {
+			for (ModuleVisitor visitor : visitors) {
+				visitor.visitOpen(packaze, access, modules);
+			}
+		}
+
+		@Override
+		public void visitUse(String service) {
+			for (ModuleVisitor visitor : visitors) {
+				visitor.visitUse(service);
+			}
+		}
+
+		@Override
+		public void visitProvide(String service, String... providers) {
+			for (ModuleVisitor visitor : visitors) {
+				visitor.visitProvide(service, providers);
+			}
+		}
+
+		@Override
+		public void visitEnd() {
+			for (ModuleVisitor visitor : visitors) {
+				visitor.visitEnd();
+			}
+		}
+	}
+
+	private static final class TeeMethodVisitor extends MethodVisitor {
+		private final List<MethodVisitor> visitors;
+		// the labels of each visitor, keyed by the labels of the class reader, with none for the first visitor
+		private final List<Map<Label, Label>> labels;
+
+		private TeeMethodVisitor(int api, List<MethodVisitor> visitors) {
+			super(api);
+			this.visitors = visitors;
+			this.labels = new ArrayList<>(visitors.size());
+
+			for (int i = 0; i < visitors.size(); i++) {
+				labels.add(i == 0 ? null : new HashMap<>());
+			}
+		}
+
+		private Label label(int visitor, Label label) {
+			Map<Label, Label> visitorLabels = labels.get(visitor);
+			return visitorLabels == null || label == null ? label : visitorLabels.computeIfAbsent(label, k -> new Label());
+		}
+
+		private Label[] labels(int visitor, Label[] labels) {
+			if (this.labels.get(visitor) == null || labels == null) {
+				return labels;
+			}
+
+			Label[] mapped = new Label[labels.length];
+
+			for (int i = 0; i < labels.length; i++) {
+				mapped[i] = label(visitor, labels[i]);
+			}
+
+			return mapped;
+		}
+
+		private Object[] frameTypes(int visitor, int count, Object[] types) {
+			if (labels.get(visitor) == null || types == null) {
+				return types;
+			}
+
+			// the uninitialized types of a frame are the labels of the instructions creating them
+			Object[] mapped = new Object[count];
+
+			for (int i = 0; i < count; i++) {
+				mapped[i] = types[i] instanceof Label label ? label(visitor, label) : types[i];
+			}
+
+			return mapped;
+		}
+
+		@Override
+		public void visitParameter(String name, int access) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitParameter(name, access);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotationDefault() {
+			return tee(visitors, MethodVisitor::visitAnnotationDefault, results -> new TeeAnnotationVisitor(api, results));
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			return tee(visitors, visitor -> visitor.visitAnnotation(descriptor, visible), results -> new TeeAnnotationVisitor(api, results));
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			return tee(visitors, visitor -> visitor.visitTypeAnnotation(typeRef, typePath, descriptor, visible), results -> new TeeAnnotationVisitor(api, results));
+		}
+
+		@Override
+		public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitAnnotableParameterCount(parameterCount, visible);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+			return tee(visitors, visitor -> visitor.visitParameterAnnotation(parameter, descriptor, visible), results -> new TeeAnnotationVisitor(api, results));
+		}
+
+		@Override
+		public void visitAttribute(Attribute attribute) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitAttribute(attribute);
+			}
+		}
+
+		@Override
+		public void visitCode() {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitCode();
+			}
+		}
+
+		@Override
+		public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+			for (int i = 0; i < visitors.size(); i++) {
+				visitors.get(i).visitFrame(type, numLocal, frameTypes(i, numLocal, local), numStack, frameTypes(i, numStack, stack));
+			}
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitInsn(opcode);
+			}
+		}
+
+		@Override
+		public void visitIntInsn(int opcode, int operand) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitIntInsn(opcode, operand);
+			}
+		}
+
+		@Override
+		public void visitVarInsn(int opcode, int varIndex) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitVarInsn(opcode, varIndex);
+			}
+		}
+
+		@Override
+		public void visitTypeInsn(int opcode, String type) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitTypeInsn(opcode, type);
+			}
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitFieldInsn(opcode, owner, name, descriptor);
+			}
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+			}
+		}
+
+		@Override
+		public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+			}
+		}
+
+		@Override
+		public void visitJumpInsn(int opcode, Label label) {
+			for (int i = 0; i < visitors.size(); i++) {
+				visitors.get(i).visitJumpInsn(opcode, label(i, label));
+			}
+		}
+
+		@Override
+		public void visitLabel(Label label) {
+			for (int i = 0; i < visitors.size(); i++) {
+				visitors.get(i).visitLabel(label(i, label));
+			}
+		}
+
+		@Override
+		public void visitLdcInsn(Object value) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitLdcInsn(value);
+			}
+		}
+
+		@Override
+		public void visitIincInsn(int varIndex, int increment) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitIincInsn(varIndex, increment);
+			}
+		}
+
+		@Override
+		public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+			for (int i = 0; i < visitors.size(); i++) {
+				visitors.get(i).visitTableSwitchInsn(min, max, label(i, dflt), labels(i, labels));
+			}
+		}
+
+		@Override
+		public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+			for (int i = 0; i < visitors.size(); i++) {
+				visitors.get(i).visitLookupSwitchInsn(label(i, dflt), keys, labels(i, labels));
+			}
+		}
+
+		@Override
+		public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitMultiANewArrayInsn(descriptor, numDimensions);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			return tee(visitors, visitor -> visitor.visitInsnAnnotation(typeRef, typePath, descriptor, visible), results -> new TeeAnnotationVisitor(api, results));
+		}
+
+		@Override
+		public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+			for (int i = 0; i < visitors.size(); i++) {
+				visitors.get(i).visitTryCatchBlock(label(i, start), label(i, end), label(i, handler), type);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+			return tee(visitors, visitor -> visitor.visitTryCatchAnnotation(typeRef, typePath, descriptor, visible), results -> new TeeAnnotationVisitor(api, results));
+		}
+
+		@Override
+		public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+			for (int i = 0; i < visitors.size(); i++) {
+				visitors.get(i).visitLocalVariable(name, descriptor, signature, label(i, start), label(i, end), index);
+			}
+		}
+
+		@Override
+		public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end, int[] index, String descriptor, boolean visible) {
+			List<AnnotationVisitor> results = new ArrayList<>(visitors.size());
+
+			for (int i = 0; i < visitors.size(); i++) {
+				AnnotationVisitor result = visitors.get(i).visitLocalVariableAnnotation(typeRef, typePath, labels(i, start), labels(i, end), index, descriptor, visible);
+
+				if (result != null) {
+					results.add(result);
+				}
+			}
+
+			if (results.isEmpty()) {
+				return null;
+			}
+
+			return results.size() == 1 ? results.get(0) : new TeeAnnotationVisitor(api, results);
+		}
+
+		@Override
+		public void visitLineNumber(int line, Label start) {
+			for (int i = 0; i < visitors.size(); i++) {
+				visitors.get(i).visitLineNumber(line, label(i, start));
+			}
+		}
+
+		@Override
+		public void visitMaxs(int maxStack, int maxLocals) {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitMaxs(maxStack, maxLocals);
+			}
+		}
+
+		@Override
+		public void visitEnd() {
+			for (MethodVisitor visitor : visitors) {
+				visitor.visitEnd();
+			}
+		}
+	}
+}
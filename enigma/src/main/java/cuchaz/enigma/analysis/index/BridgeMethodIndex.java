@@ -1,10 +1,13 @@
 package cuchaz.enigma.analysis.index;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -34,24 +37,60 @@ public class BridgeMethodIndex implements JarIndexer, BridgeMethodIndexView {
 	}
 
 	public void findBridgeMethods() {
-		// look for access and bridged methods
-		for (MethodEntry methodEntry : entryIndex.getMethods()) {
-			MethodDefEntry methodDefEntry = (MethodDefEntry) methodEntry;
-
-			AccessFlags access = methodDefEntry.getAccess();
+		findBridgeMethods(entryIndex.getMethods());
+	}
 
-			if (access == null || !access.isSynthetic()) {
-				continue;
-			}
+	/**
+	 * Looks for bridge methods only in the given classes, after they were re-indexed.
+	 */
+	public void findBridgeMethods(Set<ClassEntry> classEntries) {
+		findBridgeMethods(classEntries.stream().<MethodEntry>flatMap(classEntry -> entryIndex.getMethods(classEntry).stream()).toList());
+	}
 
-			indexSyntheticMethod(methodDefEntry, access);
+	private void findBridgeMethods(Collection<MethodEntry> methods) {
+		// look for access and bridged methods, in parallel as they only read the other indexes, but add them in
+		// order so that the last bridge wins when several call the same specialized method, as it does sequentially
+		List<Map.Entry<MethodDefEntry, MethodEntry>> bridges = methods.parallelStream()
+				.map(MethodDefEntry.class::cast)
+				.filter(methodDefEntry -> methodDefEntry.getAccess() != null && methodDefEntry.getAccess().isSynthetic())
+				.<Map.Entry<MethodDefEntry, MethodEntry>>map(syntheticMethod -> {
+					MethodEntry specializedMethod = findBridgedMethod(syntheticMethod);
+					return specializedMethod == null ? null : Map.entry(syntheticMethod, specializedMethod);
+				})
+				.filter(Objects::nonNull)
+				.toList();
+
+		for (Map.Entry<MethodDefEntry, MethodEntry> bridge : bridges) {
+			bridgeToSpecialized.put(bridge.getKey(), bridge.getValue());
+			specializedToBridge.put(bridge.getValue(), bridge.getKey());
 		}
 	}
 
 	@Override
 	public void processIndex(JarIndex index) {
-		Map<MethodEntry, MethodEntry> copiedAccessToBridge = new HashMap<>(specializedToBridge);
+		addRenamedSpecializedMethods(new HashMap<>(specializedToBridge));
+	}
+
+	@Override
+	public void removeClasses(Set<ClassEntry> classEntries) {
+		bridgeToSpecialized.keySet().removeIf(bridge -> classEntries.contains(bridge.getParent()));
+		specializedToBridge.values().removeIf(bridge -> classEntries.contains(bridge.getParent()));
+	}
+
+	@Override
+	public void processClasses(JarIndex index, Set<ClassEntry> classEntries) {
+		Map<MethodEntry, MethodEntry> addedAccessToBridge = new HashMap<>();
+
+		specializedToBridge.forEach((specialized, bridge) -> {
+			if (classEntries.contains(bridge.getParent())) {
+				addedAccessToBridge.put(specialized, bridge);
+			}
+		});
+
+		addRenamedSpecializedMethods(addedAccessToBridge);
+	}
 
+	private void addRenamedSpecializedMethods(Map<MethodEntry, MethodEntry> copiedAccessToBridge) {
 		copiedAccessToBridge.entrySet().parallelStream().forEach(entry -> {
 			MethodEntry specializedEntry = entry.getKey();
 			MethodEntry bridgeEntry = entry.getValue();
@@ -65,17 +104,32 @@ public class BridgeMethodIndex implements JarIndexer, BridgeMethodIndexView {
 		});
 	}
 
-	private void indexSyntheticMethod(MethodDefEntry syntheticMethod, AccessFlags access) {
+	void writeSnapshot(IndexSnapshot.Output out) throws IOException {
+		out.writeEntryMap(bridgeToSpecialized);
+		out.writeEntryMap(specializedToBridge);
+	}
+
+	void readSnapshot(IndexSnapshot.Input in) throws IOException {
+		in.readEntryMap(bridgeToSpecialized);
+		in.readEntryMap(specializedToBridge);
+	}
+
+	/**
+	 * @return the method specialized by the given synthetic method if it is a bridge, or {@code null}
+	 */
+	@Nullable
+	private MethodEntry findBridgedMethod(MethodDefEntry syntheticMethod) {
 		MethodEntry specializedMethod = findSpecializedMethod(syntheticMethod);
 
 		if (specializedMethod == null) {
-			return;
+			return null;
 		}
 
-		if (access.isBridge() || isPotentialBridge(syntheticMethod, specializedMethod)) {
-			bridgeToSpecialized.put(syntheticMethod, specializedMethod);
-			specializedToBridge.put(specializedMethod, syntheticMethod);
+		if (syntheticMethod.getAccess().isBridge() || isPotentialBridge(syntheticMethod, specializedMethod)) {
+			return specializedMethod;
 		}
+
+		return null;
 	}
 
 	private MethodEntry findSpecializedMethod(MethodEntry method) {
@@ -0,0 +1,119 @@
+package cuchaz.enigma.analysis.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+import cuchaz.enigma.Enigma;
+import cuchaz.enigma.analysis.TeeClassVisitor;
+import cuchaz.enigma.api.service.JarIndexerService;
+import cuchaz.enigma.classprovider.ClassProvider;
+
+/**
+ * A pass of {@link JarIndexerService.ClassVisitorIndexer plugin indexers} over the classes of a jar, which reads
+ * each class once for all of them. Each thread gets its own visitor of each indexer, which are combined once the
+ * pass is done.
+ *
+ * <p>The pass runs while the jar is indexed, or on its own with {@link #visitClasses} if the jar was not read,
+ * like when its index was loaded from a snapshot.
+ */
+public final class ClassVisitorPass {
+	private final List<IndexerVisitors<?>> indexers = new ArrayList<>();
+	private final ThreadLocal<List<ClassVisitor>> localVisitors;
+	private volatile boolean visited;
+
+	public ClassVisitorPass(Collection<? extends JarIndexerService.ClassVisitorIndexer<?>> indexers) {
+		for (JarIndexerService.ClassVisitorIndexer<?> indexer : indexers) {
+			this.indexers.add(new IndexerVisitors<>(indexer));
+		}
+
+		localVisitors = ThreadLocal.withInitial(() -> {
+			List<ClassVisitor> visitors = new ArrayList<>(this.indexers.size());
+
+			for (IndexerVisitors<?> indexer : this.indexers) {
+				visitors.add(indexer.createVisitor());
+			}
+
+			return visitors;
+		});
+	}
+
+	public boolean isEmpty() {
+		return indexers.isEmpty();
+	}
+
+	/**
+	 * @return whether the classes were visited, either while the jar was indexed or on their own
+	 */
+	public boolean isVisited() {
+		return visited;
+	}
+
+	void markVisited() {
+		visited = true;
+	}
+
+	/**
+	 * @return the visitors of the current thread, one for each indexer
+	 */
+	public List<ClassVisitor> getVisitors() {
+		return localVisitors.get();
+	}
+
+	/**
+	 * Visits the given classes in a pass of their own.
+	 *
+	 * @param classProvider a class provider adding the frames of classes which predate them
+	 */
+	public void visitClasses(Set<String> classNames, ClassProvider classProvider) {
+		if (isEmpty()) {
+			return;
+		}
+
+		classNames.parallelStream().forEach(className -> {
+			try {
+				new ClassReader(classProvider.getBytes(className)).accept(TeeClassVisitor.of(Enigma.ASM_VERSION, getVisitors()), 0);
+			} catch (Exception e) {
+				throw new RuntimeException("Exception while indexing class: " + className, e);
+			}
+		});
+
+		markVisited();
+	}
+
+	/**
+	 * Hands the visitors of each indexer over to it, once the classes were visited.
+	 */
+	public void combine() {
+		if (!visited && !isEmpty()) {
+			throw new IllegalStateException("The classes were not visited");
+		}
+
+		indexers.forEach(IndexerVisitors::combine);
+	}
+
+	private static final class IndexerVisitors<V extends ClassVisitor> {
+		private final JarIndexerService.ClassVisitorIndexer<V> indexer;
+		private final Queue<V> visitors = new ConcurrentLinkedQueue<>();
+
+		private IndexerVisitors(JarIndexerService.ClassVisitorIndexer<V> indexer) {
+			this.indexer = indexer;
+		}
+
+		private V createVisitor() {
+			V visitor = indexer.createVisitor();
+			visitors.add(visitor);
+			return visitor;
+		}
+
+		private void combine() {
+			indexer.combine(List.copyOf(visitors));
+		}
+	}
+}
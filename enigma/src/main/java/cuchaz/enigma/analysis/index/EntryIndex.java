@@ -1,6 +1,17 @@
 package cuchaz.enigma.analysis.index;
 
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -11,6 +22,7 @@ import cuchaz.enigma.api.view.entry.ClassEntryView;
 import cuchaz.enigma.api.view.entry.EntryView;
 import cuchaz.enigma.api.view.index.EntryIndexView;
 import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
 import cuchaz.enigma.translation.representation.entry.ClassDefEntry;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 import cuchaz.enigma.translation.representation.entry.Entry;
@@ -21,37 +33,108 @@ import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
 import cuchaz.enigma.translation.representation.entry.MethodEntry;
 
 public class EntryIndex implements JarIndexer, EntryIndexView {
-	private final ConcurrentMap<ClassEntry, AccessFlags> classes = new ConcurrentHashMap<>();
-	private final ConcurrentMap<FieldEntry, AccessFlags> fields = new ConcurrentHashMap<>();
-	private final ConcurrentMap<MethodEntry, AccessFlags> methods = new ConcurrentHashMap<>();
-	private final ConcurrentMap<ClassEntry, ClassDefEntry> definitions = new ConcurrentHashMap<>();
+	// the definitions are held by the slots of the pool, these are the ids of those which are indexed
+	private final EntryPool entryPool = new EntryPool();
+	private final IdSet classIds = new IdSet();
+	private final IdSet fieldIds = new IdSet();
+	private final IdSet methodIds = new IdSet();
+	// the field and method definitions of each class, so that lookups within one class don't scan the whole jar
+	private final ConcurrentMap<ClassEntry, ClassMembers> members = new ConcurrentHashMap<>();
+
+	private final Collection<ClassEntry> classes = new DefinitionCollection<>(ClassDefEntry.class, classIds);
+	private final Collection<FieldEntry> fields = new DefinitionCollection<>(FieldDefEntry.class, fieldIds);
+	private final Collection<MethodEntry> methods = new DefinitionCollection<>(MethodDefEntry.class, methodIds);
 
 	@Override
 	public void indexClass(ClassDefEntry classEntry) {
-		definitions.put(classEntry, classEntry);
-		classes.put(classEntry, classEntry.getAccess());
+		putDefinition(classEntry, classIds);
 	}
 
 	@Override
 	public void indexMethod(MethodDefEntry methodEntry) {
-		methods.put(methodEntry, methodEntry.getAccess());
+		putDefinition(methodEntry, methodIds);
+		members.computeIfAbsent(methodEntry.getParent(), parent -> new ClassMembers()).addMethod(methodEntry);
 	}
 
 	@Override
 	public void indexField(FieldDefEntry fieldEntry) {
-		fields.put(fieldEntry, fieldEntry.getAccess());
+		putDefinition(fieldEntry, fieldIds);
+		members.computeIfAbsent(fieldEntry.getParent(), parent -> new ClassMembers()).addField(fieldEntry);
+	}
+
+	private void putDefinition(Entry<?> definition, IdSet ids) {
+		EntryPool.Slot slot = entryPool.internSlot(definition);
+
+		if (slot.setDefinition(definition) == null) {
+			ids.add(slot.id);
+		}
+	}
+
+	@Nullable
+	private Entry<?> getIndexedDefinition(Entry<?> entry) {
+		EntryPool.Slot slot = entryPool.getSlot(entry);
+		return slot == null ? null : slot.getDefinition();
+	}
+
+	@Override
+	public void removeClasses(Set<ClassEntry> classEntries) {
+		for (ClassEntry classEntry : classEntries) {
+			removeDefinition(classEntry, classIds);
+			ClassMembers classMembers = members.remove(classEntry);
+
+			if (classMembers != null) {
+				classMembers.getFields().forEach(field -> removeDefinition(field, fieldIds));
+				classMembers.getMethods().forEach(method -> removeDefinition(method, methodIds));
+			}
+		}
+	}
+
+	private void removeDefinition(Entry<?> entry, IdSet ids) {
+		EntryPool.Slot slot = entryPool.getSlot(entry);
+
+		if (slot != null && slot.setDefinition(null) != null) {
+			ids.remove(slot.id);
+		}
+	}
+
+	/**
+	 * @return the pool interning the entries of this index, which is shared by the whole {@link JarIndex}
+	 */
+	public EntryPool getEntryPool() {
+		return entryPool;
+	}
+
+	void writeSnapshot(IndexSnapshot.Output out) throws IOException {
+		// the access flags are written along with the definitions
+		out.writeEntries(classes);
+		out.writeEntries(fields);
+		out.writeEntries(methods);
+	}
+
+	void readSnapshot(IndexSnapshot.Input in) throws IOException {
+		for (int i = 0; i < 3; i++) {
+			for (Entry<?> definition : in.<Entry<?>>readEntries()) {
+				if (definition instanceof ClassDefEntry classDef) {
+					indexClass(classDef);
+				} else if (definition instanceof FieldDefEntry fieldDef) {
+					indexField(fieldDef);
+				} else {
+					indexMethod((MethodDefEntry) definition);
+				}
+			}
+		}
 	}
 
 	public boolean hasClass(ClassEntry entry) {
-		return classes.containsKey(entry);
+		return getIndexedDefinition(entry) instanceof ClassDefEntry;
 	}
 
 	public boolean hasMethod(MethodEntry entry) {
-		return methods.containsKey(entry);
+		return getIndexedDefinition(entry) instanceof MethodDefEntry;
 	}
 
 	public boolean hasField(FieldEntry entry) {
-		return fields.containsKey(entry);
+		return getIndexedDefinition(entry) instanceof FieldDefEntry;
 	}
 
 	public boolean hasEntry(Entry<?> entry) {
@@ -70,17 +153,17 @@ public class EntryIndex implements JarIndexer, EntryIndexView {
 
 	@Nullable
 	public AccessFlags getMethodAccess(MethodEntry entry) {
-		return methods.get(entry);
+		return getIndexedDefinition(entry) instanceof MethodDefEntry definition ? definition.getAccess() : null;
 	}
 
 	@Nullable
 	public AccessFlags getFieldAccess(FieldEntry entry) {
-		return fields.get(entry);
+		return getIndexedDefinition(entry) instanceof FieldDefEntry definition ? definition.getAccess() : null;
 	}
 
 	@Nullable
 	public AccessFlags getClassAccess(ClassEntry entry) {
-		return classes.get(entry);
+		return getIndexedDefinition(entry) instanceof ClassDefEntry definition ? definition.getAccess() : null;
 	}
 
 	@Nullable
@@ -97,30 +180,88 @@ public class EntryIndex implements JarIndexer, EntryIndexView {
 	}
 
 	public ClassDefEntry getDefinition(ClassEntry entry) {
-		return definitions.get(entry);
+		return getIndexedDefinition(entry) instanceof ClassDefEntry definition ? definition : null;
 	}
 
 	@Override
 	public Collection<ClassEntry> getClasses() {
-		return classes.keySet();
+		return classes;
 	}
 
 	public Collection<MethodEntry> getMethods() {
-		return methods.keySet();
+		return methods;
 	}
 
 	public Collection<FieldEntry> getFields() {
-		return fields.keySet();
+		return fields;
+	}
+
+	/**
+	 * @return the fields defined in the given class, in the order they were indexed
+	 */
+	public List<FieldDefEntry> getFields(ClassEntry classEntry) {
+		ClassMembers classMembers = members.get(classEntry);
+		return classMembers == null ? List.of() : classMembers.getFields();
+	}
+
+	/**
+	 * @return the fields with the given name defined in the given class, which can be more than one in
+	 * obfuscated bytecode as fields are told apart by their descriptors as well
+	 */
+	public List<FieldDefEntry> getFields(ClassEntry classEntry, String name) {
+		ClassMembers classMembers = members.get(classEntry);
+		return classMembers == null ? List.of() : classMembers.getFields(name);
+	}
+
+	/**
+	 * @return the methods defined in the given class, in the order they were indexed
+	 */
+	public List<MethodDefEntry> getMethods(ClassEntry classEntry) {
+		ClassMembers classMembers = members.get(classEntry);
+		return classMembers == null ? List.of() : classMembers.getMethods();
+	}
+
+	/**
+	 * @return the overloads of the method with the given name defined in the given class
+	 */
+	public List<MethodDefEntry> getMethods(ClassEntry classEntry, String name) {
+		ClassMembers classMembers = members.get(classEntry);
+		return classMembers == null ? List.of() : classMembers.getMethods(name);
+	}
+
+	@Nullable
+	public MethodDefEntry getMethod(ClassEntry classEntry, String name, MethodDescriptor desc) {
+		for (MethodDefEntry method : getMethods(classEntry, name)) {
+			if (method.getDesc().equals(desc)) {
+				return method;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return the instance fields of the given class if it is a record, which are its components in declaration
+	 * order, or an empty list otherwise
+	 */
+	public List<FieldDefEntry> getRecordComponents(ClassEntry classEntry) {
+		ClassDefEntry definition = getDefinition(classEntry);
+
+		if (definition == null || !definition.isRecord()) {
+			return List.of();
+		}
+
+		return getFields(classEntry).stream().filter(field -> !field.getAccess().isStatic()).toList();
 	}
 
 	@Override
 	public boolean hasEntry(EntryView entry) {
-		if (entry instanceof ClassEntry) {
-			return classes.containsKey(entry);
-		} else if (entry instanceof FieldEntry) {
-			return fields.containsKey(entry);
-		} else if (entry instanceof MethodEntry) {
-			return methods.containsKey(entry);
+		if (entry instanceof ClassEntry classEntry) {
+			return hasClass(classEntry);
+		} else if (entry instanceof FieldEntry fieldEntry) {
+			return hasField(fieldEntry);
+		} else if (entry instanceof MethodEntry methodEntry) {
+			return hasMethod(methodEntry);
 		} else {
 			return false;
 		}
@@ -147,4 +288,149 @@ public class EntryIndex implements JarIndexer, EntryIndexView {
 	public ClassDefEntryView getDefinition(ClassEntryView entry) {
 		return getDefinition((ClassEntry) entry);
 	}
+
+	/**
+	 * The members of one class. They are collected as the class is indexed, which happens on a single thread,
+	 * and the lists handed out are built from them once, when first asked for after a change.
+	 */
+	private static final class ClassMembers {
+		private final Map<FieldDefEntry, FieldDefEntry> fieldDefinitions = new LinkedHashMap<>();
+		private final Map<MethodDefEntry, MethodDefEntry> methodDefinitions = new LinkedHashMap<>();
+		private volatile Members<FieldDefEntry> fields;
+		private volatile Members<MethodDefEntry> methods;
+
+		private synchronized void addField(FieldDefEntry field) {
+			// replaces the equal definition, if the field is indexed again
+			fieldDefinitions.put(field, field);
+			fields = null;
+		}
+
+		private synchronized void addMethod(MethodDefEntry method) {
+			methodDefinitions.put(method, method);
+			methods = null;
+		}
+
+		private List<FieldDefEntry> getFields() {
+			return getFieldMembers().all();
+		}
+
+		private List<FieldDefEntry> getFields(String name) {
+			return getFieldMembers().byName().getOrDefault(name, List.of());
+		}
+
+		private List<MethodDefEntry> getMethods() {
+			return getMethodMembers().all();
+		}
+
+		private List<MethodDefEntry> getMethods(String name) {
+			return getMethodMembers().byName().getOrDefault(name, List.of());
+		}
+
+		private Members<FieldDefEntry> getFieldMembers() {
+			Members<FieldDefEntry> fields = this.fields;
+
+			if (fields == null) {
+				synchronized (this) {
+					fields = this.fields;
+
+					if (fields == null) {
+						this.fields = fields = Members.of(fieldDefinitions.values());
+					}
+				}
+			}
+
+			return fields;
+		}
+
+		private Members<MethodDefEntry> getMethodMembers() {
+			Members<MethodDefEntry> methods = this.methods;
+
+			if (methods == null) {
+				synchronized (this) {
+					methods = this.methods;
+
+					if (methods == null) {
+						this.methods = methods = Members.of(methodDefinitions.values());
+					}
+				}
+			}
+
+			return methods;
+		}
+	}
+
+	private record Members<E extends Entry<?>>(List<E> all, Map<String, List<E>> byName) {
+		private static <E extends Entry<?>> Members<E> of(Collection<E> definitions) {
+			Map<String, List<E>> byName = new HashMap<>();
+
+			for (E definition : definitions) {
+				byName.computeIfAbsent(definition.getName(), name -> new ArrayList<>(1)).add(definition);
+			}
+
+			byName.replaceAll((name, overloads) -> List.copyOf(overloads));
+			return new Members<>(List.copyOf(definitions), byName);
+		}
+	}
+
+	/**
+	 * A live view of the definitions of one kind of entry, in pool order.
+	 */
+	private final class DefinitionCollection<E extends Entry<?>> extends AbstractCollection<E> {
+		private final Class<? extends E> type;
+		private final IdSet ids;
+
+		private DefinitionCollection(Class<? extends E> type, IdSet ids) {
+			this.type = type;
+			this.ids = ids;
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			PrimitiveIterator.OfInt ids = this.ids.iterator();
+
+			return new Iterator<>() {
+				private E next = findNext();
+
+				@Override
+				public boolean hasNext() {
+					return next != null;
+				}
+
+				@Override
+				public E next() {
+					if (next == null) {
+						throw new NoSuchElementException();
+					}
+
+					E definition = next;
+					next = findNext();
+					return definition;
+				}
+
+				@Nullable
+				private E findNext() {
+					while (ids.hasNext()) {
+						// a definition removed while iterating is skipped
+						Entry<?> definition = entryPool.getSlot(ids.nextInt()).getDefinition();
+
+						if (type.isInstance(definition)) {
+							return type.cast(definition);
+						}
+					}
+
+					return null;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return ids.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Entry<?> entry && type.isInstance(getIndexedDefinition(entry));
+		}
+	}
 }
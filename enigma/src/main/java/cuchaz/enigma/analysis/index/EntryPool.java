@@ -0,0 +1,150 @@
+package cuchaz.enigma.analysis.index;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.jetbrains.annotations.Nullable;
+
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+
+/**
+ * Interns the class, field and method entries of an index, giving each of them a dense int id which stays
+ * stable for the lifetime of the pool.
+ *
+ * <p>The pool keeps one canonical instance of each entry, always a plain {@link ClassEntry}, {@link FieldEntry}
+ * or {@link MethodEntry} whose parents are canonical as well, so that entries parsed again and again from
+ * bytecode share a single copy of their names and descriptors. The slot of each entry also holds its definition,
+ * once it is indexed, so that a single lookup finds both.
+ */
+public final class EntryPool {
+	private final ConcurrentMap<Entry<?>, Slot> slots = new ConcurrentHashMap<>();
+	private volatile Slot[] slotsById = new Slot[1024];
+	private volatile int size;
+
+	/**
+	 * @return the id of the given entry, which is added to the pool if it is not in there yet
+	 */
+	public int intern(Entry<?> entry) {
+		return internSlot(entry).id;
+	}
+
+	/**
+	 * @return the id of the given entry, or {@code -1} if it is not in the pool
+	 */
+	public int getId(Entry<?> entry) {
+		Slot slot = slots.get(entry);
+		return slot == null ? -1 : slot.id;
+	}
+
+	public Entry<?> get(int id) {
+		return slotsById[id].entry;
+	}
+
+	/**
+	 * @return the canonical instance of the given entry, unless it is a more specific type of entry, such as a
+	 * definition, in which case it is returned as is
+	 */
+	@SuppressWarnings("unchecked")
+	public <E extends Entry<?>> E canonicalize(E entry) {
+		Entry<?> canonical = internSlot(entry).entry;
+		return canonical.getClass() == entry.getClass() ? (E) canonical : entry;
+	}
+
+	/**
+	 * @return the number of ids handed out, which are all lower than this
+	 */
+	public int size() {
+		return size;
+	}
+
+	Slot internSlot(Entry<?> entry) {
+		Slot slot = slots.get(entry);
+
+		if (slot != null) {
+			return slot;
+		}
+
+		return slots.computeIfAbsent(toCanonical(entry), this::add);
+	}
+
+	@Nullable
+	Slot getSlot(Entry<?> entry) {
+		return slots.get(entry);
+	}
+
+	Slot getSlot(int id) {
+		return slotsById[id];
+	}
+
+	private synchronized Slot add(Entry<?> entry) {
+		Slot[] slotsById = this.slotsById;
+
+		if (size == slotsById.length) {
+			slotsById = Arrays.copyOf(slotsById, slotsById.length * 2);
+		}
+
+		Slot slot = new Slot(size, entry);
+		slotsById[size] = slot;
+		// publishes the new slot to the threads reading the array without locking
+		this.slotsById = slotsById;
+		size++;
+		return slot;
+	}
+
+	private Entry<?> toCanonical(Entry<?> entry) {
+		@Nullable ClassEntry parent = (ClassEntry) entry.getParent();
+		@Nullable ClassEntry canonicalParent = parent == null ? null : (ClassEntry) internSlot(parent).entry;
+
+		if (entry.getClass() == ClassEntry.class || entry.getClass() == FieldEntry.class || entry.getClass() == MethodEntry.class) {
+			if (entry.getParent() == canonicalParent) {
+				return entry;
+			}
+		}
+
+		if (entry instanceof ClassEntry classEntry) {
+			return new ClassEntry(canonicalParent, classEntry.getName());
+		} else if (entry instanceof FieldEntry fieldEntry) {
+			return new FieldEntry(canonicalParent, fieldEntry.getName(), fieldEntry.getDesc());
+		} else if (entry instanceof MethodEntry methodEntry) {
+			return new MethodEntry(canonicalParent, methodEntry.getName(), methodEntry.getDesc());
+		}
+
+		throw new IllegalArgumentException("Cannot intern " + entry);
+	}
+
+	/**
+	 * The id and the canonical instance of an entry, along with its definition if it is indexed.
+	 */
+	static final class Slot {
+		@SuppressWarnings("rawtypes")
+		private static final AtomicReferenceFieldUpdater<Slot, Entry> DEFINITION = AtomicReferenceFieldUpdater.newUpdater(Slot.class, Entry.class, "definition");
+
+		final int id;
+		final Entry<?> entry;
+		@Nullable
+		private volatile Entry<?> definition;
+
+		private Slot(int id, Entry<?> entry) {
+			this.id = id;
+			this.entry = entry;
+		}
+
+		@Nullable
+		Entry<?> getDefinition() {
+			return definition;
+		}
+
+		/**
+		 * @return the definition which was replaced
+		 */
+		@Nullable
+		Entry<?> setDefinition(@Nullable Entry<?> definition) {
+			return DEFINITION.getAndSet(this, definition);
+		}
+	}
+}
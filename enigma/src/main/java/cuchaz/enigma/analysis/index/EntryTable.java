@@ -0,0 +1,113 @@
+package cuchaz.enigma.analysis.index;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cuchaz.enigma.translation.representation.entry.Entry;
+
+/**
+ * A read-only multimap between entries, stored as compressed sparse rows indexed by {@link EntryPool} id
+ * like {@link ReferenceTable}.
+ */
+final class EntryTable<K extends Entry<?>, V extends Entry<?>> {
+	private final EntryPool entryPool;
+	private final int[] offsets;
+	private final int[] values;
+
+	private EntryTable(EntryPool entryPool, int[] offsets, int[] values) {
+		this.entryPool = entryPool;
+		this.offsets = offsets;
+		this.values = values;
+	}
+
+	static <K extends Entry<?>, V extends Entry<?>> EntryTable<K, V> freeze(EntryPool entryPool, Map<K, List<V>> multimap) {
+		int valueCount = 0;
+
+		for (Map.Entry<K, List<V>> row : multimap.entrySet()) {
+			entryPool.intern(row.getKey());
+			valueCount += row.getValue().size();
+
+			for (V value : row.getValue()) {
+				entryPool.intern(value);
+			}
+		}
+
+		int[] offsets = new int[entryPool.size() + 1];
+
+		for (Map.Entry<K, List<V>> row : multimap.entrySet()) {
+			offsets[entryPool.getId(row.getKey()) + 1] += row.getValue().size();
+		}
+
+		for (int i = 1; i < offsets.length; i++) {
+			offsets[i] += offsets[i - 1];
+		}
+
+		int[] cursors = offsets.clone();
+		int[] values = new int[valueCount];
+
+		for (Map.Entry<K, List<V>> row : multimap.entrySet()) {
+			int id = entryPool.getId(row.getKey());
+
+			for (V value : row.getValue()) {
+				values[cursors[id]++] = entryPool.getId(value);
+			}
+		}
+
+		return new EntryTable<>(entryPool, offsets, values);
+	}
+
+	List<V> get(Entry<?> entry) {
+		int id = entryPool.getId(entry);
+
+		if (id < 0 || id >= offsets.length - 1 || offsets[id] == offsets[id + 1]) {
+			return Collections.emptyList();
+		}
+
+		return new Row(offsets[id], offsets[id + 1]);
+	}
+
+	/**
+	 * @return every non-empty row keyed by its entry, to write or rebuild the whole table
+	 */
+	@SuppressWarnings("unchecked")
+	Map<K, Collection<V>> asMap() {
+		Map<K, Collection<V>> map = new LinkedHashMap<>();
+
+		for (int id = 0; id < offsets.length - 1; id++) {
+			if (offsets[id] != offsets[id + 1]) {
+				map.put((K) entryPool.get(id), new Row(offsets[id], offsets[id + 1]));
+			}
+		}
+
+		return map;
+	}
+
+	private final class Row extends AbstractList<V> {
+		private final int start;
+		private final int end;
+
+		private Row(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V get(int index) {
+			if (index < 0 || index >= end - start) {
+				throw new IndexOutOfBoundsException(index);
+			}
+
+			return (V) entryPool.get(values[start + index]);
+		}
+
+		@Override
+		public int size() {
+			return end - start;
+		}
+	}
+}
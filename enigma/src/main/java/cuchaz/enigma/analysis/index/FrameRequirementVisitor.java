@@ -0,0 +1,50 @@
+package cuchaz.enigma.analysis.index;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * Detects whether a class without stack map frames needs them computed before its references can be
+ * indexed. Straight-line code is followed by the analyzer without any frames, only branch targets need them.
+ */
+class FrameRequirementVisitor extends ClassVisitor {
+	private boolean framesRequired;
+
+	FrameRequirementVisitor(int api) {
+		super(api);
+	}
+
+	boolean isFramesRequired() {
+		return framesRequired;
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+		if (framesRequired) {
+			return null;
+		}
+
+		return new MethodVisitor(api) {
+			@Override
+			public void visitJumpInsn(int opcode, Label label) {
+				framesRequired = true;
+			}
+
+			@Override
+			public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+				framesRequired = true;
+			}
+
+			@Override
+			public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+				framesRequired = true;
+			}
+
+			@Override
+			public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+				framesRequired = true;
+			}
+		};
+	}
+}
@@ -0,0 +1,149 @@
+package cuchaz.enigma.analysis.index;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of {@link EntryPool} ids, stored as a bitmap in chunks which are never copied, so that ids can be added and
+ * removed from any thread without locking. Iterating it only visits the words of the ids in the set, in id order.
+ */
+final class IdSet {
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_WORDS = CHUNK_SIZE / Long.SIZE;
+
+	private volatile AtomicLongArray[] chunks = new AtomicLongArray[4];
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * @return whether the id was not in the set yet
+	 */
+	boolean add(int id) {
+		AtomicLongArray chunk = getChunk(id >>> CHUNK_BITS, true);
+		int word = (id & (CHUNK_SIZE - 1)) >>> 6;
+		long bit = 1L << id;
+		long bits;
+
+		do {
+			bits = chunk.get(word);
+
+			if ((bits & bit) != 0) {
+				return false;
+			}
+		} while (!chunk.compareAndSet(word, bits, bits | bit));
+
+		size.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @return whether the id was in the set
+	 */
+	boolean remove(int id) {
+		AtomicLongArray chunk = getChunk(id >>> CHUNK_BITS, false);
+
+		if (chunk == null) {
+			return false;
+		}
+
+		int word = (id & (CHUNK_SIZE - 1)) >>> 6;
+		long bit = 1L << id;
+		long bits;
+
+		do {
+			bits = chunk.get(word);
+
+			if ((bits & bit) == 0) {
+				return false;
+			}
+		} while (!chunk.compareAndSet(word, bits, bits & ~bit));
+
+		size.decrementAndGet();
+		return true;
+	}
+
+	int size() {
+		return size.get();
+	}
+
+	/**
+	 * @return the ids in the set, in id order, which sees the ids added and removed while iterating or not
+	 */
+	PrimitiveIterator.OfInt iterator() {
+		AtomicLongArray[] chunks = this.chunks;
+
+		return new PrimitiveIterator.OfInt() {
+			private int next = nextId(chunks, 0);
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			@Override
+			public int nextInt() {
+				if (next < 0) {
+					throw new NoSuchElementException();
+				}
+
+				int id = next;
+				next = id == Integer.MAX_VALUE ? -1 : nextId(chunks, id + 1);
+				return id;
+			}
+		};
+	}
+
+	private static int nextId(AtomicLongArray[] chunks, int from) {
+		int word = (from & (CHUNK_SIZE - 1)) >>> 6;
+		long mask = -1L << from;
+
+		for (int chunkIndex = from >>> CHUNK_BITS; chunkIndex < chunks.length; chunkIndex++) {
+			AtomicLongArray chunk = chunks[chunkIndex];
+
+			if (chunk != null) {
+				for (; word < CHUNK_WORDS; word++) {
+					long bits = chunk.get(word) & mask;
+					mask = -1L;
+
+					if (bits != 0) {
+						return (chunkIndex << CHUNK_BITS) | (word << 6) | Long.numberOfTrailingZeros(bits);
+					}
+				}
+			}
+
+			word = 0;
+			mask = -1L;
+		}
+
+		return -1;
+	}
+
+	private AtomicLongArray getChunk(int index, boolean create) {
+		AtomicLongArray[] chunks = this.chunks;
+
+		if (index < chunks.length && chunks[index] != null) {
+			return chunks[index];
+		}
+
+		return create ? addChunk(index) : null;
+	}
+
+	private synchronized AtomicLongArray addChunk(int index) {
+		AtomicLongArray[] chunks = this.chunks;
+
+		if (index >= chunks.length) {
+			chunks = Arrays.copyOf(chunks, Math.max(index + 1, chunks.length * 2));
+		}
+
+		if (chunks[index] == null) {
+			chunks[index] = new AtomicLongArray(CHUNK_WORDS);
+			// publishes the new chunk to the threads reading the chunks without locking
+			this.chunks = chunks;
+		}
+
+		return chunks[index];
+	}
+}
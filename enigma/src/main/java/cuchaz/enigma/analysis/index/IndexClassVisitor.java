@@ -13,7 +13,15 @@ public class IndexClassVisitor extends ClassVisitor {
 	private ClassDefEntry classEntry;
 
 	public IndexClassVisitor(JarIndex indexer, int api) {
-		super(api);
+		this(indexer, api, null);
+	}
+
+	/**
+	 * @param classVisitor a visitor the class is passed on to after indexing its entries, so that it can be
+	 *                     processed in the same pass
+	 */
+	public IndexClassVisitor(JarIndex indexer, int api, ClassVisitor classVisitor) {
+		super(api, classVisitor);
 		this.indexer = indexer;
 	}
 
@@ -0,0 +1,24 @@
+package cuchaz.enigma.analysis.index;
+
+/**
+ * How much of a jar a {@link JarIndex} indexes. The parts of the index that are left out are filled in the first
+ * time they are asked for, see {@link JarIndex#complete}.
+ */
+public enum IndexLevel {
+	/**
+	 * The classes, their members and the hierarchy between them.
+	 */
+	ENTRIES,
+	/**
+	 * Also the bridge methods, found from the references of the synthetic methods only.
+	 */
+	HIERARCHY,
+	/**
+	 * Also the references of all methods and the package visibility partitions.
+	 */
+	FULL;
+
+	public boolean includes(IndexLevel level) {
+		return compareTo(level) >= 0;
+	}
+}
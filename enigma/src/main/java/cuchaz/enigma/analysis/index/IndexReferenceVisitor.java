@@ -1,6 +1,7 @@
 package cuchaz.enigma.analysis.index;
 
 import java.util.List;
+import java.util.function.IntPredicate;
 
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Handle;
@@ -25,10 +26,26 @@ public class IndexReferenceVisitor extends ClassVisitor {
 	private final JarIndexer indexer;
 	private ClassEntry classEntry;
 	private String className;
+	private final IntPredicate methodFilter;
 
 	public IndexReferenceVisitor(JarIndexer indexer, int api) {
+		this(indexer, api, false);
+	}
+
+	/**
+	 * @param syntheticMethodsOnly whether to only index the references made by synthetic methods, like bridge methods
+	 */
+	public IndexReferenceVisitor(JarIndexer indexer, int api, boolean syntheticMethodsOnly) {
+		this(indexer, api, syntheticMethodsOnly ? access -> (access & Opcodes.ACC_SYNTHETIC) != 0 : access -> true);
+	}
+
+	/**
+	 * @param methodFilter tests the access flags of each method, the references of the methods it rejects are left out
+	 */
+	public IndexReferenceVisitor(JarIndexer indexer, int api, IntPredicate methodFilter) {
 		super(api);
 		this.indexer = indexer;
+		this.methodFilter = methodFilter;
 	}
 
 	@Override
@@ -39,6 +56,10 @@ public class IndexReferenceVisitor extends ClassVisitor {
 
 	@Override
 	public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+		if (!methodFilter.test(access)) {
+			return null;
+		}
+
 		MethodDefEntry entry = new MethodDefEntry(classEntry, name, new MethodDescriptor(desc), Signature.createSignature(signature), new AccessFlags(access));
 		return new IndexReferenceMethodVisitor(api, className, access, name, desc, entry, indexer);
 	}
@@ -0,0 +1,509 @@
+package cuchaz.enigma.analysis.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.jetbrains.annotations.Nullable;
+
+import cuchaz.enigma.Enigma;
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.ReferenceTargetType;
+import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.Signature;
+import cuchaz.enigma.translation.representation.TypeDescriptor;
+import cuchaz.enigma.translation.representation.entry.ClassDefEntry;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldDefEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import cuchaz.enigma.utils.Utils;
+
+/**
+ * A binary snapshot of a fully processed {@link JarIndex}, stored in a cache directory and keyed by the
+ * checksums of the indexed jars, their libraries and the set of loaded plugins.
+ *
+ * <p>Strings and entries are written to a table the first time they are encountered and referenced by
+ * their table index afterwards, which keeps snapshots small and lets a loaded index share entry instances.
+ */
+public final class IndexSnapshot {
+	/**
+	 * The size the cache directory of the snapshots and the library stubs is pruned to by default, in bytes.
+	 */
+	public static final long DEFAULT_MAX_CACHE_SIZE = 1024L * 1024 * 1024;
+
+	private static final int MAGIC = 0x454E4958; // "ENIX"
+	private static final int FORMAT_VERSION = 3;
+
+	private static final int TAG_NULL = 0;
+	private static final int TAG_CLASS = 1;
+	private static final int TAG_CLASS_DEF = 2;
+	private static final int TAG_FIELD = 3;
+	private static final int TAG_FIELD_DEF = 4;
+	private static final int TAG_METHOD = 5;
+	private static final int TAG_METHOD_DEF = 6;
+
+	private IndexSnapshot() {
+	}
+
+	/**
+	 * Computes the key of a snapshot from the checksums of the classes of the jars, which are read from their
+	 * central directories without reading the classes.
+	 */
+	public static byte[] computeKey(Map<String, Long> classChecksums, List<byte[]> libraryChecksums, Collection<String> plugins) {
+		MessageDigest digest = createDigest();
+		ByteBuffer checksum = ByteBuffer.allocate(Long.BYTES);
+
+		for (String className : new TreeSet<>(classChecksums.keySet())) {
+			digest.update(className.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(checksum.clear().putLong(classChecksums.get(className)).flip());
+		}
+
+		return computeKey(digest.digest(), libraryChecksums, plugins);
+	}
+
+	public static byte[] computeKey(byte[] jarChecksum, List<byte[]> libraryChecksums, Collection<String> plugins) {
+		MessageDigest digest = createDigest();
+		digest.update(Enigma.VERSION.getBytes(StandardCharsets.UTF_8));
+		digest.update(jarChecksum);
+
+		for (byte[] libraryChecksum : libraryChecksums) {
+			digest.update(libraryChecksum);
+		}
+
+		// plugin load order is not significant
+		for (String plugin : new TreeSet<>(plugins)) {
+			digest.update(plugin.getBytes(StandardCharsets.UTF_8));
+		}
+
+		return digest.digest();
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// Algorithm guaranteed to be supported
+			throw new RuntimeException(e);
+		}
+	}
+
+	public static Path getPath(Path cacheDirectory, byte[] key) {
+		return cacheDirectory.resolve(HexFormat.of().formatHex(key) + ".idx");
+	}
+
+	/**
+	 * Loads the snapshot at the given path into an empty index.
+	 *
+	 * @return whether a matching snapshot existed and was loaded
+	 */
+	public static boolean read(JarIndex index, Path path, byte[] key) throws IOException {
+		if (!Files.isRegularFile(path)) {
+			return false;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				return false;
+			}
+
+			byte[] storedKey = new byte[key.length];
+			in.readFully(storedKey);
+
+			if (!Arrays.equals(storedKey, key)) {
+				return false;
+			}
+
+			index.readSnapshot(new Input(in));
+		}
+
+		// the snapshots used the longest time ago are pruned first
+		Utils.touch(path);
+		return true;
+	}
+
+	public static void write(JarIndex index, Path path, byte[] key) throws IOException {
+		Files.createDirectories(path.getParent());
+		Path tempPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.write(key);
+				index.writeSnapshot(new Output(out));
+			}
+
+			// never expose a partially written snapshot to concurrent readers
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+	private record TableKey(int tag, Entry<?> entry) {
+	}
+
+	static final class Output {
+		private final DataOutputStream out;
+		private final Map<String, Integer> strings = new HashMap<>();
+		private final Map<TableKey, Integer> entries = new HashMap<>();
+
+		Output(DataOutputStream out) {
+			this.out = out;
+		}
+
+		void writeInt(int value) throws IOException {
+			out.writeInt(value);
+		}
+
+		void writeLong(long value) throws IOException {
+			out.writeLong(value);
+		}
+
+		void writeString(@Nullable String value) throws IOException {
+			if (value == null) {
+				out.writeInt(-1);
+				return;
+			}
+
+			Integer id = strings.get(value);
+
+			if (id != null) {
+				out.writeInt(id);
+			} else {
+				strings.put(value, strings.size());
+				out.writeInt(-2);
+				out.writeUTF(value);
+			}
+		}
+
+		void writeEntry(@Nullable Entry<?> entry) throws IOException {
+			int tag = getTag(entry);
+
+			if (tag == TAG_NULL) {
+				out.writeInt(-1);
+				return;
+			}
+
+			TableKey key = new TableKey(tag, entry);
+			Integer id = entries.get(key);
+
+			if (id != null) {
+				out.writeInt(id);
+				return;
+			}
+
+			out.writeInt(-2);
+			out.writeByte(tag);
+
+			switch (tag) {
+			case TAG_CLASS, TAG_CLASS_DEF -> {
+				ClassEntry classEntry = (ClassEntry) entry;
+				writeEntry(classEntry.getParent());
+				writeString(classEntry.getName());
+
+				if (classEntry instanceof ClassDefEntry classDef) {
+					writeString(classDef.getSignature().getSignature());
+					out.writeInt(classDef.getAccess().getFlags());
+					writeEntry(classDef.getSuperClass());
+					out.writeInt(classDef.getInterfaces().length);
+
+					for (ClassEntry interfaceEntry : classDef.getInterfaces()) {
+						writeEntry(interfaceEntry);
+					}
+				}
+			}
+			case TAG_FIELD, TAG_FIELD_DEF -> {
+				FieldEntry fieldEntry = (FieldEntry) entry;
+				writeEntry(fieldEntry.getParent());
+				writeString(fieldEntry.getName());
+				writeString(fieldEntry.getDesc().toString());
+
+				if (fieldEntry instanceof FieldDefEntry fieldDef) {
+					writeString(fieldDef.getSignature().getSignature());
+					out.writeInt(fieldDef.getAccess().getFlags());
+				}
+			}
+			case TAG_METHOD, TAG_METHOD_DEF -> {
+				MethodEntry methodEntry = (MethodEntry) entry;
+				writeEntry(methodEntry.getParent());
+				writeString(methodEntry.getName());
+				writeString(methodEntry.getDesc().toString());
+
+				if (methodEntry instanceof MethodDefEntry methodDef) {
+					writeString(methodDef.getSignature().getSignature());
+					out.writeInt(methodDef.getAccess().getFlags());
+				}
+			}
+			default -> throw new IllegalStateException("Unexpected tag " + tag);
+			}
+
+			// register after writing the parents so that ids are assigned in the same order the reader sees them
+			entries.put(key, entries.size());
+		}
+
+		void writeAccess(@Nullable AccessFlags access) throws IOException {
+			out.writeBoolean(access != null);
+
+			if (access != null) {
+				out.writeInt(access.getFlags());
+			}
+		}
+
+		void writeReference(EntryReference<?, ?> reference) throws IOException {
+			writeEntry(reference.entry);
+			writeEntry(reference.context);
+			out.writeBoolean(reference.isNamed());
+
+			ReferenceTargetType targetType = reference.targetType;
+			out.writeByte(targetType.getKind().ordinal());
+
+			if (targetType instanceof ReferenceTargetType.ClassType classType) {
+				writeEntry(classType.getEntry());
+			}
+		}
+
+		void writeEntries(Collection<? extends Entry<?>> entries) throws IOException {
+			out.writeInt(entries.size());
+
+			for (Entry<?> entry : entries) {
+				writeEntry(entry);
+			}
+		}
+
+		<K extends Entry<?>, V extends Entry<?>> void writeEntryMap(Map<K, V> map) throws IOException {
+			out.writeInt(map.size());
+
+			for (Map.Entry<K, V> mapEntry : map.entrySet()) {
+				writeEntry(mapEntry.getKey());
+				writeEntry(mapEntry.getValue());
+			}
+		}
+
+		<K extends Entry<?>, V extends Entry<?>> void writeEntryMultimap(Map<K, ? extends Collection<V>> map) throws IOException {
+			out.writeInt(map.size());
+
+			for (Map.Entry<K, ? extends Collection<V>> mapEntry : map.entrySet()) {
+				writeEntry(mapEntry.getKey());
+				writeEntries(mapEntry.getValue());
+			}
+		}
+
+		<K extends Entry<?>, R extends EntryReference<?, ?>> void writeReferenceMultimap(Map<K, ? extends Collection<R>> map) throws IOException {
+			out.writeInt(map.size());
+
+			for (Map.Entry<K, ? extends Collection<R>> mapEntry : map.entrySet()) {
+				writeEntry(mapEntry.getKey());
+				out.writeInt(mapEntry.getValue().size());
+
+				for (R reference : mapEntry.getValue()) {
+					writeReference(reference);
+				}
+			}
+		}
+
+		private static int getTag(@Nullable Entry<?> entry) {
+			if (entry == null) {
+				return TAG_NULL;
+			} else if (entry instanceof ClassDefEntry) {
+				return TAG_CLASS_DEF;
+			} else if (entry instanceof ClassEntry) {
+				return TAG_CLASS;
+			} else if (entry instanceof FieldDefEntry) {
+				return TAG_FIELD_DEF;
+			} else if (entry instanceof FieldEntry) {
+				return TAG_FIELD;
+			} else if (entry instanceof MethodDefEntry) {
+				return TAG_METHOD_DEF;
+			} else if (entry instanceof MethodEntry) {
+				return TAG_METHOD;
+			}
+
+			throw new IllegalArgumentException("Cannot write entry of type " + entry.getClass().getName() + " to an index snapshot: " + entry);
+		}
+	}
+
+	static final class Input {
+		private final DataInputStream in;
+		private final List<String> strings = new ArrayList<>();
+		private final List<Entry<?>> entries = new ArrayList<>();
+
+		Input(DataInputStream in) {
+			this.in = in;
+		}
+
+		int readInt() throws IOException {
+			return in.readInt();
+		}
+
+		long readLong() throws IOException {
+			return in.readLong();
+		}
+
+		@Nullable
+		String readString() throws IOException {
+			int id = in.readInt();
+
+			if (id == -1) {
+				return null;
+			} else if (id == -2) {
+				String value = in.readUTF();
+				strings.add(value);
+				return value;
+			}
+
+			return strings.get(id);
+		}
+
+		@Nullable
+		@SuppressWarnings("unchecked")
+		<E extends Entry<?>> E readEntry() throws IOException {
+			int id = in.readInt();
+
+			if (id == -1) {
+				return null;
+			} else if (id != -2) {
+				return (E) entries.get(id);
+			}
+
+			int tag = in.readByte();
+
+			Entry<?> entry = switch (tag) {
+			case TAG_CLASS, TAG_CLASS_DEF -> {
+				ClassEntry parent = readEntry();
+				String name = readString();
+
+				if (tag == TAG_CLASS) {
+					yield new ClassEntry(parent, name);
+				}
+
+				Signature signature = Signature.createSignature(readString());
+				AccessFlags access = new AccessFlags(in.readInt());
+				ClassEntry superClass = readEntry();
+				ClassEntry[] interfaces = new ClassEntry[in.readInt()];
+
+				for (int i = 0; i < interfaces.length; i++) {
+					interfaces[i] = readEntry();
+				}
+
+				yield new ClassDefEntry(parent, name, signature, access, superClass, interfaces);
+			}
+			case TAG_FIELD, TAG_FIELD_DEF -> {
+				ClassEntry parent = readEntry();
+				String name = readString();
+				TypeDescriptor desc = new TypeDescriptor(readString());
+
+				if (tag == TAG_FIELD) {
+					yield new FieldEntry(parent, name, desc);
+				}
+
+				Signature signature = Signature.createTypedSignature(readString());
+				yield new FieldDefEntry(parent, name, desc, signature, new AccessFlags(in.readInt()));
+			}
+			case TAG_METHOD, TAG_METHOD_DEF -> {
+				ClassEntry parent = readEntry();
+				String name = readString();
+				MethodDescriptor desc = new MethodDescriptor(readString());
+
+				if (tag == TAG_METHOD) {
+					yield new MethodEntry(parent, name, desc);
+				}
+
+				Signature signature = Signature.createSignature(readString());
+				yield new MethodDefEntry(parent, name, desc, signature, new AccessFlags(in.readInt()));
+			}
+			default -> throw new IOException("Corrupt index snapshot, unknown entry tag " + tag);
+			};
+
+			entries.add(entry);
+			return (E) entry;
+		}
+
+		@Nullable
+		AccessFlags readAccess() throws IOException {
+			return in.readBoolean() ? new AccessFlags(in.readInt()) : null;
+		}
+
+		<E extends Entry<?>, C extends Entry<?>> EntryReference<E, C> readReference() throws IOException {
+			E entry = readEntry();
+			C context = readEntry();
+			boolean named = in.readBoolean();
+
+			ReferenceTargetType targetType = switch (ReferenceTargetType.Kind.values()[in.readByte()]) {
+			case NONE -> ReferenceTargetType.none();
+			case UNINITIALIZED -> ReferenceTargetType.uninitialized();
+			case CLASS_TYPE -> ReferenceTargetType.classType(readEntry());
+			};
+
+			return new EntryReference<>(entry, named ? entry.getName() : null, context, targetType);
+		}
+
+		<E extends Entry<?>> List<E> readEntries() throws IOException {
+			int size = in.readInt();
+			List<E> list = new ArrayList<>(size);
+
+			for (int i = 0; i < size; i++) {
+				list.add(readEntry());
+			}
+
+			return list;
+		}
+
+		<K extends Entry<?>, V extends Entry<?>> void readEntryMap(Map<K, V> map) throws IOException {
+			int size = in.readInt();
+
+			for (int i = 0; i < size; i++) {
+				K key = readEntry();
+				V value = readEntry();
+				map.put(key, value);
+			}
+		}
+
+		<K extends Entry<?>, V extends Entry<?>> void readEntryMultimap(Map<K, List<V>> map) throws IOException {
+			int size = in.readInt();
+
+			for (int i = 0; i < size; i++) {
+				K key = readEntry();
+				map.put(key, readEntries());
+			}
+		}
+
+		<K extends Entry<?>, E extends Entry<?>, C extends Entry<?>> void readReferenceMultimap(Map<K, List<EntryReference<E, C>>> map) throws IOException {
+			int size = in.readInt();
+
+			for (int i = 0; i < size; i++) {
+				K key = readEntry();
+				int referenceCount = in.readInt();
+				List<EntryReference<E, C>> references = new ArrayList<>(referenceCount);
+
+				for (int j = 0; j < referenceCount; j++) {
+					references.add(readReference());
+				}
+
+				map.put(key, references);
+			}
+		}
+	}
+}
@@ -11,16 +11,24 @@
 
 package cuchaz.enigma.analysis.index;
 
+import java.io.IOException;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import org.jetbrains.annotations.Nullable;
+
 import cuchaz.enigma.api.view.entry.ClassEntryView;
 import cuchaz.enigma.api.view.index.InheritanceIndexView;
 import cuchaz.enigma.translation.representation.entry.ClassDefEntry;
@@ -28,12 +36,25 @@ import cuchaz.enigma.translation.representation.entry.ClassEntry;
 
 public class InheritanceIndex implements JarIndexer, InheritanceIndexView {
 	private final EntryIndex entryIndex;
+	@Nullable
+	private final LibraryIndex libraryIndex;
 
 	private final ConcurrentMap<ClassEntry, List<ClassEntry>> classParents = new ConcurrentHashMap<>();
 	private final ConcurrentMap<ClassEntry, List<ClassEntry>> classChildren = new ConcurrentHashMap<>();
 
+	// computed once the classes of the jar were indexed, and replaced as a whole once they are indexed again
+	private volatile Closure closure = new Closure();
+
 	public InheritanceIndex(EntryIndex entryIndex) {
+		this(entryIndex, null);
+	}
+
+	/**
+	 * @param libraryIndex the stubs of the library classes, used to relate classes whose ancestry leaves the jar
+	 */
+	public InheritanceIndex(EntryIndex entryIndex, @Nullable LibraryIndex libraryIndex) {
 		this.entryIndex = entryIndex;
+		this.libraryIndex = libraryIndex;
 	}
 
 	@Override
@@ -60,6 +81,48 @@ public class InheritanceIndex implements JarIndexer, InheritanceIndexView {
 		JarIndex.synchronizedAdd(classChildren, parentEntry, childEntry);
 	}
 
+	/**
+	 * Computes the transitive closure of the hierarchy, once the classes of the jar were indexed. Until then,
+	 * the closure of the hierarchy as it was before is kept.
+	 */
+	void computeClosure() {
+		closure = new Closure(this);
+	}
+
+	@Override
+	public void removeClasses(Set<ClassEntry> classEntries) {
+		for (ClassEntry classEntry : classEntries) {
+			List<ClassEntry> parents = classParents.remove(classEntry);
+
+			if (parents == null) {
+				continue;
+			}
+
+			for (ClassEntry parent : parents) {
+				List<ClassEntry> siblings = classChildren.get(parent);
+
+				if (siblings != null) {
+					siblings.remove(classEntry);
+
+					if (siblings.isEmpty()) {
+						classChildren.remove(parent);
+					}
+				}
+			}
+		}
+	}
+
+	void writeSnapshot(IndexSnapshot.Output out) throws IOException {
+		out.writeEntryMultimap(classParents);
+		out.writeEntryMultimap(classChildren);
+	}
+
+	void readSnapshot(IndexSnapshot.Input in) throws IOException {
+		in.readEntryMultimap(classParents);
+		in.readEntryMultimap(classChildren);
+		computeClosure();
+	}
+
 	public Collection<ClassEntry> getParents(ClassEntry classEntry) {
 		return classParents.getOrDefault(classEntry, Collections.emptyList());
 	}
@@ -78,58 +141,57 @@ public class InheritanceIndex implements JarIndexer, InheritanceIndexView {
 		return getChildren((ClassEntry) entry);
 	}
 
+	/**
+	 * @return the transitive children of the class, with the nearest first
+	 */
 	public Collection<ClassEntry> getDescendants(ClassEntry classEntry) {
-		Collection<ClassEntry> descendants = new HashSet<>();
-
-		LinkedList<ClassEntry> descendantQueue = new LinkedList<>();
-		descendantQueue.push(classEntry);
-
-		while (!descendantQueue.isEmpty()) {
-			ClassEntry descendant = descendantQueue.pop();
-			Collection<ClassEntry> children = getChildren(descendant);
-
-			children.forEach(descendantQueue::push);
-			descendants.addAll(children);
-		}
-
-		return descendants;
+		return closure.getDescendants(classEntry);
 	}
 
+	/**
+	 * @return the transitive parents of the class with the nearest first, an unmodifiable set shared between calls
+	 */
 	public Set<ClassEntry> getAncestors(ClassEntry classEntry) {
-		Set<ClassEntry> ancestors = new HashSet<>();
+		return closure.ancestors.getOrDefault(classEntry, Collections.emptySet());
+	}
 
-		LinkedList<ClassEntry> ancestorQueue = new LinkedList<>();
-		ancestorQueue.push(classEntry);
+	public Relation computeClassRelation(ClassEntry classEntry, ClassEntry potentialAncestor) {
+		if (potentialAncestor.getName().equals("java/lang/Object")) {
+			return Relation.RELATED;
+		}
 
-		while (!ancestorQueue.isEmpty()) {
-			ClassEntry ancestor = ancestorQueue.pop();
-			Collection<ClassEntry> parents = getParents(ancestor);
+		Closure closure = this.closure;
 
-			parents.forEach(ancestorQueue::push);
-			ancestors.addAll(parents);
+		if (!entryIndex.hasClass(classEntry)) {
+			return closure.getLibraryAncestry(classEntry.getFullName(), libraryIndex).getRelation(potentialAncestor.getFullName());
 		}
 
-		return ancestors;
-	}
+		Set<ClassEntry> ancestors = closure.ancestors.getOrDefault(classEntry, Collections.emptySet());
 
-	public Relation computeClassRelation(ClassEntry classEntry, ClassEntry potentialAncestor) {
-		if (potentialAncestor.getName().equals("java/lang/Object")) {
+		if (ancestors.contains(potentialAncestor)) {
 			return Relation.RELATED;
 		}
 
-		if (!entryIndex.hasClass(classEntry)) {
-			return Relation.UNKNOWN;
+		if (!closure.incompleteAncestry.contains(classEntry)) {
+			return Relation.UNRELATED;
 		}
 
-		for (ClassEntry ancestor : getAncestors(classEntry)) {
-			if (potentialAncestor.equals(ancestor)) {
-				return Relation.RELATED;
-			} else if (!entryIndex.hasClass(ancestor)) {
-				return Relation.UNKNOWN;
+		// the ancestors outside of the jar may still be related through the libraries
+		Relation relation = Relation.UNRELATED;
+
+		for (ClassEntry ancestor : ancestors) {
+			if (!entryIndex.hasClass(ancestor)) {
+				Relation ancestorRelation = closure.getLibraryAncestry(ancestor.getFullName(), libraryIndex).getRelation(potentialAncestor.getFullName());
+
+				if (ancestorRelation == Relation.RELATED) {
+					return Relation.RELATED;
+				} else if (ancestorRelation == Relation.UNKNOWN) {
+					relation = Relation.UNKNOWN;
+				}
 			}
 		}
 
-		return Relation.UNRELATED;
+		return relation;
 	}
 
 	public boolean isParent(ClassEntry classEntry) {
@@ -146,4 +208,194 @@ public class InheritanceIndex implements JarIndexer, InheritanceIndexView {
 		UNRELATED,
 		UNKNOWN
 	}
+
+	/**
+	 * The transitive closure of the hierarchy. The ancestors of each class are computed once by reusing those of
+	 * its parents, while the descendants, which add up to far more, are walked from a copy of the children the first
+	 * time they are asked for and kept from then on, like the ancestors of the library classes.
+	 */
+	private static final class Closure {
+		private static final ClassEntry[] NO_CLASSES = new ClassEntry[0];
+
+		private final Map<ClassEntry, Set<ClassEntry>> ancestors = new HashMap<>();
+		private final Map<ClassEntry, ClassEntry[]> children = new HashMap<>();
+		// classes with an ancestor that is not in the index, whose relation to other classes can't be fully known
+		private final Set<ClassEntry> incompleteAncestry = new HashSet<>();
+		private final ConcurrentMap<ClassEntry, Set<ClassEntry>> descendants = new ConcurrentHashMap<>();
+		private final ConcurrentMap<String, LibraryAncestry> libraryAncestries = new ConcurrentHashMap<>();
+
+		private Closure() {
+		}
+
+		private Closure(InheritanceIndex index) {
+			index.classChildren.forEach((parent, classChildren) -> {
+				synchronized (classChildren) {
+					children.put(parent, classChildren.toArray(ClassEntry[]::new));
+				}
+			});
+
+			for (ClassEntry classEntry : index.classParents.keySet()) {
+				computeAncestors(classEntry, index.classParents, new HashSet<>());
+			}
+
+			ancestors.forEach((classEntry, classAncestors) -> {
+				for (ClassEntry ancestor : classAncestors) {
+					if (!index.entryIndex.hasClass(ancestor)) {
+						incompleteAncestry.add(classEntry);
+						break;
+					}
+				}
+			});
+		}
+
+		private Set<ClassEntry> computeAncestors(ClassEntry classEntry, Map<ClassEntry, List<ClassEntry>> parents, Set<ClassEntry> visiting) {
+			Set<ClassEntry> closure = ancestors.get(classEntry);
+
+			if (closure != null) {
+				return closure;
+			}
+
+			List<ClassEntry> classParents = parents.get(classEntry);
+
+			// a broken jar could contain a cycle, which is cut where it is found
+			if (classParents == null || !visiting.add(classEntry)) {
+				return Collections.emptySet();
+			}
+
+			Set<ClassEntry> result = new LinkedHashSet<>(classParents);
+
+			for (ClassEntry parent : classParents) {
+				result.addAll(computeAncestors(parent, parents, visiting));
+			}
+
+			visiting.remove(classEntry);
+			closure = new ClassSet(result.toArray(ClassEntry[]::new));
+			ancestors.put(classEntry, closure);
+			return closure;
+		}
+
+		private Set<ClassEntry> getDescendants(ClassEntry classEntry) {
+			if (!children.containsKey(classEntry)) {
+				return Collections.emptySet();
+			}
+
+			return descendants.computeIfAbsent(classEntry, this::computeDescendants);
+		}
+
+		private Set<ClassEntry> computeDescendants(ClassEntry classEntry) {
+			Set<ClassEntry> result = new LinkedHashSet<>();
+			List<ClassEntry> queue = new ArrayList<>(List.of(classEntry));
+
+			for (int i = 0; i < queue.size(); i++) {
+				for (ClassEntry child : children.getOrDefault(queue.get(i), NO_CLASSES)) {
+					if (result.add(child)) {
+						queue.add(child);
+					}
+				}
+			}
+
+			return new ClassSet(result.toArray(ClassEntry[]::new));
+		}
+
+		private LibraryAncestry getLibraryAncestry(String className, @Nullable LibraryIndex libraryIndex) {
+			LibraryAncestry ancestry = libraryAncestries.get(className);
+			return ancestry != null ? ancestry : computeLibraryAncestry(className, libraryIndex, new HashSet<>());
+		}
+
+		private LibraryAncestry computeLibraryAncestry(String className, @Nullable LibraryIndex libraryIndex, Set<String> visiting) {
+			LibraryAncestry ancestry = libraryAncestries.get(className);
+
+			if (ancestry != null) {
+				return ancestry;
+			}
+
+			// like in the jar, a cycle is cut where it is found
+			if (!visiting.add(className)) {
+				return new LibraryAncestry(Set.of(className), true);
+			}
+
+			LibraryIndex.ClassStub stub = libraryIndex == null ? null : libraryIndex.getStub(className);
+
+			if (stub == null) {
+				ancestry = new LibraryAncestry(Set.of(className), false);
+			} else {
+				Set<String> classNames = new LinkedHashSet<>();
+				classNames.add(className);
+				boolean complete = true;
+
+				List<String> parents = new ArrayList<>(stub.interfaces());
+
+				if (stub.superName() != null && !stub.superName().equals("java/lang/Object")) {
+					parents.add(0, stub.superName());
+				}
+
+				for (String parent : parents) {
+					LibraryAncestry parentAncestry = computeLibraryAncestry(parent, libraryIndex, visiting);
+					classNames.addAll(parentAncestry.classNames());
+					complete &= parentAncestry.complete();
+				}
+
+				ancestry = new LibraryAncestry(Set.copyOf(classNames), complete);
+			}
+
+			visiting.remove(className);
+			LibraryAncestry previous = libraryAncestries.putIfAbsent(className, ancestry);
+			return previous != null ? previous : ancestry;
+		}
+	}
+
+	/**
+	 * The library class itself and its transitive parents, and whether they were all found in the libraries.
+	 */
+	private record LibraryAncestry(Set<String> classNames, boolean complete) {
+		private Relation getRelation(String potentialAncestor) {
+			if (classNames.contains(potentialAncestor)) {
+				return Relation.RELATED;
+			}
+
+			return complete ? Relation.UNRELATED : Relation.UNKNOWN;
+		}
+	}
+
+	/**
+	 * An ordered set of classes backed by an array, which takes far less memory than a linked hash set. Most
+	 * classes only have a few ancestors, which are searched in order, and only larger sets are hashed.
+	 */
+	private static final class ClassSet extends AbstractSet<ClassEntry> {
+		private static final int HASHED_SIZE = 8;
+
+		private final ClassEntry[] classes;
+		@Nullable
+		private final Set<ClassEntry> hashed;
+
+		private ClassSet(ClassEntry[] classes) {
+			this.classes = classes;
+			this.hashed = classes.length > HASHED_SIZE ? Set.of(classes) : null;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (hashed != null) {
+				return hashed.contains(o);
+			}
+
+			for (ClassEntry classEntry : classes) {
+				if (classEntry.equals(o)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		@Override
+		public Iterator<ClassEntry> iterator() {
+			return Arrays.asList(classes).iterator();
+		}
+
+		@Override
+		public int size() {
+			return classes.length;
+		}
+	}
 }
@@ -11,18 +11,32 @@
 
 package cuchaz.enigma.analysis.index;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntPredicate;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
 
 import cuchaz.enigma.Enigma;
 import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.analysis.IndexClassWriter;
 import cuchaz.enigma.analysis.ReferenceTargetType;
+import cuchaz.enigma.analysis.TeeClassVisitor;
 import cuchaz.enigma.api.view.index.JarIndexView;
 import cuchaz.enigma.classprovider.AddFramesIfNecessaryClassProvider;
 import cuchaz.enigma.classprovider.CachingClassProvider;
@@ -40,72 +54,592 @@ import cuchaz.enigma.translation.representation.entry.ParentedEntry;
 import cuchaz.enigma.utils.I18n;
 
 public class JarIndex implements JarIndexer, JarIndexView {
-	private final Set<String> indexedClasses = new HashSet<>();
+	// replaced rather than modified when the jar is updated, as it is read by the decompiler threads
+	private volatile Set<String> indexedClasses = ConcurrentHashMap.newKeySet();
 	private final EntryIndex entryIndex;
 	private final InheritanceIndex inheritanceIndex;
 	private final ReferenceIndex referenceIndex;
 	private final BridgeMethodIndex bridgeMethodIndex;
 	private final PackageVisibilityIndex packageVisibilityIndex;
-	private final EntryResolver entryResolver;
+	private final IndexEntryResolver entryResolver;
+	@Nullable
+	private final LibraryIndex libraryIndex;
 
 	private final Collection<JarIndexer> indexers;
+	// the indexers of the current level, which the indexed classes are passed to
+	private volatile Collection<JarIndexer> activeIndexers;
+	private volatile IndexLevel level;
+	// set while the passes left out by the level run, guarded by this index
+	private boolean completing;
+	// the class provider of the indexed jar, which the parts left out by the level are indexed from
+	@Nullable
+	private ClassProvider indexedClassProvider;
 
 	private final ConcurrentMap<ClassEntry, List<ParentedEntry<?>>> childrenByClass;
 
+	private final Map<String, Long> classChecksums = new HashMap<>();
+	private final ConcurrentMap<ClassEntry, Set<ClassEntry>> classDependents = new ConcurrentHashMap<>();
+
+	@Nullable
+	private ClassProvider framesSource;
+	@Nullable
+	private CachingClassProvider classProviderWithFrames;
+	private long framesCacheSize = CachingClassProvider.DEFAULT_MAX_WEIGHT;
+	// counts the changes to the indexed classes, so that what was derived from them can be dropped
+	private volatile int version;
+
 	public JarIndex(EntryIndex entryIndex, InheritanceIndex inheritanceIndex, ReferenceIndex referenceIndex, BridgeMethodIndex bridgeMethodIndex, PackageVisibilityIndex packageVisibilityIndex) {
+		this(entryIndex, inheritanceIndex, referenceIndex, bridgeMethodIndex, packageVisibilityIndex, null);
+	}
+
+	public JarIndex(EntryIndex entryIndex, InheritanceIndex inheritanceIndex, ReferenceIndex referenceIndex, BridgeMethodIndex bridgeMethodIndex, PackageVisibilityIndex packageVisibilityIndex, @Nullable LibraryIndex libraryIndex) {
+		this(entryIndex, inheritanceIndex, referenceIndex, bridgeMethodIndex, packageVisibilityIndex, libraryIndex, IndexLevel.FULL);
+	}
+
+	public JarIndex(EntryIndex entryIndex, InheritanceIndex inheritanceIndex, ReferenceIndex referenceIndex, BridgeMethodIndex bridgeMethodIndex, PackageVisibilityIndex packageVisibilityIndex, @Nullable LibraryIndex libraryIndex, IndexLevel level) {
+		this.libraryIndex = libraryIndex;
 		this.entryIndex = entryIndex;
 		this.inheritanceIndex = inheritanceIndex;
 		this.referenceIndex = referenceIndex;
 		this.bridgeMethodIndex = bridgeMethodIndex;
 		this.packageVisibilityIndex = packageVisibilityIndex;
 		this.indexers = List.of(entryIndex, inheritanceIndex, referenceIndex, bridgeMethodIndex, packageVisibilityIndex);
+		setLevel(level);
 		this.entryResolver = new IndexEntryResolver(this);
 		this.childrenByClass = new ConcurrentHashMap<>();
 	}
 
 	public static JarIndex empty() {
+		return empty(null, IndexLevel.FULL);
+	}
+
+	public static JarIndex empty(IndexLevel level) {
+		return empty(null, level);
+	}
+
+	public static JarIndex empty(@Nullable LibraryIndex libraryIndex) {
+		return empty(libraryIndex, IndexLevel.FULL);
+	}
+
+	/**
+	 * @param libraryIndex the stubs of the libraries of the jar, which frames are computed against and which
+	 *                     relate the classes whose ancestry leaves the jar
+	 * @param level how much of the jar to index up front
+	 */
+	public static JarIndex empty(@Nullable LibraryIndex libraryIndex, IndexLevel level) {
 		EntryIndex entryIndex = new EntryIndex();
-		InheritanceIndex inheritanceIndex = new InheritanceIndex(entryIndex);
+		InheritanceIndex inheritanceIndex = new InheritanceIndex(entryIndex, libraryIndex);
 		ReferenceIndex referenceIndex = new ReferenceIndex();
 		BridgeMethodIndex bridgeMethodIndex = new BridgeMethodIndex(entryIndex, inheritanceIndex, referenceIndex);
 		PackageVisibilityIndex packageVisibilityIndex = new PackageVisibilityIndex();
-		return new JarIndex(entryIndex, inheritanceIndex, referenceIndex, bridgeMethodIndex, packageVisibilityIndex);
+		return new JarIndex(entryIndex, inheritanceIndex, referenceIndex, bridgeMethodIndex, packageVisibilityIndex, libraryIndex, level);
+	}
+
+	private void setLevel(IndexLevel level) {
+		this.activeIndexers = switch (level) {
+		case ENTRIES -> List.of(entryIndex, inheritanceIndex);
+		case HIERARCHY -> List.of(entryIndex, inheritanceIndex, referenceIndex, bridgeMethodIndex);
+		case FULL -> indexers;
+		};
+		this.level = level;
+	}
+
+	public IndexLevel getIndexLevel() {
+		return level;
+	}
+
+	/**
+	 * Indexes the parts of the jar left out by the level of this index, if the given level needs them. This
+	 * happens by itself when they are first asked for, through the getters of the indexes.
+	 */
+	public void complete(IndexLevel level, ProgressListener progress) {
+		// checked without locking, as the indexes are also asked for by the threads indexing the jar
+		if (this.level.includes(level)) {
+			return;
+		}
+
+		synchronized (this) {
+			// the passes completing the index ask for the indexes they fill in as well
+			if (this.level.includes(level) || completing) {
+				return;
+			}
+
+			if (indexedClassProvider == null) {
+				// nothing was indexed yet, or the index was loaded from a snapshot, which is complete
+				return;
+			}
+
+			completing = true;
+
+			try {
+				completeIndexes(this.level, level, indexedClassProvider, progress);
+			} finally {
+				completing = false;
+			}
+
+			// only published once the indexes are filled in, as they are read without locking from then on
+			setLevel(level);
+			version++;
+		}
+	}
+
+	/**
+	 * Runs the passes left out below the given level into the indexes, without indexing the entries and the
+	 * hierarchy again.
+	 */
+	private void completeIndexes(IndexLevel from, IndexLevel to, ClassProvider classProvider, ProgressListener progress) {
+		progress.init(3, I18n.translate("progress.jar.indexing"));
+		progress.step(1, I18n.translate("progress.jar.indexing.references"));
+
+		// the references of the synthetic methods are there from the hierarchy level on
+		IntPredicate methodFilter;
+
+		if (from.includes(IndexLevel.HIERARCHY)) {
+			methodFilter = access -> (access & Opcodes.ACC_SYNTHETIC) == 0;
+		} else if (to.includes(IndexLevel.FULL)) {
+			methodFilter = access -> true;
+		} else {
+			methodFilter = access -> (access & Opcodes.ACC_SYNTHETIC) != 0;
+		}
+
+		JarIndexer referenceIndexer = createReferenceIndexer(List.of(referenceIndex));
+		referenceIndex.startIndexing();
+
+		try {
+			if (!from.includes(IndexLevel.HIERARCHY)) {
+				// the types of the members are indexed along with the entries, which are already there
+				entryIndex.getClasses().parallelStream().forEach(classEntry -> {
+					entryIndex.getFields(classEntry).forEach(referenceIndex::indexField);
+					entryIndex.getMethods(classEntry).forEach(referenceIndex::indexMethod);
+				});
+			}
+
+			indexedClasses.parallelStream().forEach(className -> {
+				try {
+					ClassReader reader = new ClassReader(classProvider.getBytes(className));
+					IndexReferenceVisitor visitor = new IndexReferenceVisitor(referenceIndexer, Enigma.ASM_VERSION, methodFilter);
+
+					if (reader.readUnsignedShort(6) >= Opcodes.V1_7) {
+						reader.accept(visitor, 0);
+					} else {
+						IndexClassWriter writer = new IndexClassWriter(entryIndex, libraryIndex, ClassWriter.COMPUTE_FRAMES);
+						reader.accept(writer, 0);
+						new ClassReader(writer.toByteArray()).accept(visitor, 0);
+					}
+				} catch (Exception e) {
+					throw new RuntimeException("Exception while indexing class: " + className, e);
+				}
+			});
+		} finally {
+			referenceIndex.finishIndexing();
+		}
+
+		progress.step(2, I18n.translate("progress.jar.indexing.methods"));
+
+		if (!from.includes(IndexLevel.HIERARCHY)) {
+			bridgeMethodIndex.findBridgeMethods();
+		}
+
+		progress.step(3, I18n.translate("progress.jar.indexing.process"));
+
+		if (from.includes(IndexLevel.HIERARCHY)) {
+			// the references added to the processed ones are resolved by class
+			Set<ClassEntry> classEntries = new HashSet<>();
+
+			for (String className : indexedClasses) {
+				classEntries.add(new ClassEntry(className));
+			}
+
+			referenceIndex.processClasses(this, classEntries);
+		} else {
+			referenceIndex.processIndex(this);
+			bridgeMethodIndex.processIndex(this);
+		}
+
+		if (to.includes(IndexLevel.FULL)) {
+			packageVisibilityIndex.processIndex(this);
+		}
+
+		entryResolver.invalidate();
+	}
+
+	private void complete(IndexLevel level) {
+		complete(level, ProgressListener.none());
+	}
+
+	/**
+	 * Indexes the given classes and records their checksums, so that the index can later be brought up to
+	 * date with {@link #updateJar}.
+	 *
+	 * @param classChecksums the checksum of each class to index, keyed by internal name
+	 */
+	public ClassProvider indexJar(Map<String, Long> classChecksums, ClassProvider classProvider, ProgressListener progress) {
+		return indexJar(classChecksums, classProvider, null, progress);
+	}
+
+	/**
+	 * @param pluginPass the plugin indexers to run while the classes are read, which are left out below
+	 * {@link IndexLevel#HIERARCHY}, as the code of the classes is not read then
+	 */
+	public ClassProvider indexJar(Map<String, Long> classChecksums, ClassProvider classProvider, @Nullable ClassVisitorPass pluginPass, ProgressListener progress) {
+		this.classChecksums.putAll(classChecksums);
+		return indexJar(classChecksums.keySet(), classProvider, pluginPass, progress);
 	}
 
 	public ClassProvider indexJar(Set<String> classNames, ClassProvider classProvider, ProgressListener progress) {
+		return indexJar(classNames, classProvider, null, progress);
+	}
+
+	private ClassProvider indexJar(Set<String> classNames, ClassProvider classProvider, @Nullable ClassVisitorPass pluginPass, ProgressListener progress) {
 		indexedClasses.addAll(classNames);
+		indexedClassProvider = classProvider;
 		progress.init(4, I18n.translate("progress.jar.indexing"));
 
+		if (pluginPass != null && (pluginPass.isEmpty() || !level.includes(IndexLevel.HIERARCHY))) {
+			pluginPass = null;
+		}
+
+		progress.step(1, I18n.translate("progress.jar.indexing.entries"));
+		referenceIndex.startIndexing();
+
+		try {
+			Set<String> classesWithoutFrames = indexClasses(classNames, classProvider, pluginPass);
+
+			progress.step(2, I18n.translate("progress.jar.indexing.references"));
+			indexReferencesWithoutFrames(classesWithoutFrames, classProvider, pluginPass);
+		} finally {
+			referenceIndex.finishIndexing();
+		}
+
+		inheritanceIndex.computeClosure();
+
+		if (pluginPass != null) {
+			pluginPass.markVisited();
+		}
+
+		progress.step(3, I18n.translate("progress.jar.indexing.methods"));
+
+		if (level.includes(IndexLevel.HIERARCHY)) {
+			bridgeMethodIndex.findBridgeMethods();
+		}
+
+		progress.step(4, I18n.translate("progress.jar.indexing.process"));
+		processIndex(this);
+
+		return createClassProviderWithFrames(classProvider);
+	}
+
+	/**
+	 * Brings this index up to date with a new version of the indexed jar, re-indexing only the classes that
+	 * were added, removed or changed, together with the classes whose index data depends on them: their
+	 * descendants, whose members resolve through them, their inner classes, and the classes that reference any
+	 * of those.
+	 *
+	 * <p>Classes whose checksums were not recorded are considered changed.
+	 *
+	 * @param classChecksums the checksum of each class in the new version of the jar, keyed by internal name
+	 * @return the internal names of all classes that were re-indexed or removed
+	 */
+	public Set<String> updateJar(Map<String, Long> classChecksums, ClassProvider classProvider, ProgressListener progress) {
+		Set<ClassEntry> changedClasses = new HashSet<>();
+
+		for (String className : indexedClasses) {
+			if (!Objects.equals(this.classChecksums.get(className), classChecksums.get(className))) {
+				changedClasses.add(new ClassEntry(className));
+			}
+		}
+
+		for (String className : classChecksums.keySet()) {
+			if (!indexedClasses.contains(className)) {
+				changedClasses.add(new ClassEntry(className));
+			}
+		}
+
+		if (changedClasses.isEmpty()) {
+			return Set.of();
+		}
+
+		// The change reaches everything that inherits from a changed class or is nested in one, and everything
+		// that references either
+		Set<ClassEntry> reachedClasses = new HashSet<>(changedClasses);
+
+		for (ClassEntry changedClass : changedClasses) {
+			reachedClasses.addAll(inheritanceIndex.getDescendants(changedClass));
+		}
+
+		for (String className : classChecksums.keySet()) {
+			if (className.indexOf('$') >= 0) {
+				ClassEntry classEntry = new ClassEntry(className);
+
+				for (ClassEntry outerClass = classEntry.getOuterClass(); outerClass != null; outerClass = outerClass.getOuterClass()) {
+					if (changedClasses.contains(outerClass)) {
+						reachedClasses.add(classEntry);
+						break;
+					}
+				}
+			}
+		}
+
+		Set<ClassEntry> staleClasses = new HashSet<>(reachedClasses);
+
+		for (ClassEntry reachedClass : reachedClasses) {
+			staleClasses.addAll(classDependents.getOrDefault(reachedClass, Set.of()));
+		}
+
+		this.classChecksums.clear();
+		this.classChecksums.putAll(classChecksums);
+		Set<String> indexedClasses = ConcurrentHashMap.newKeySet();
+		indexedClasses.addAll(classChecksums.keySet());
+		this.indexedClasses = indexedClasses;
+		indexedClassProvider = classProvider;
+
+		reindexClasses(staleClasses, classProvider, progress);
+
+		Set<String> updatedClasses = new HashSet<>();
+
+		for (ClassEntry staleClass : staleClasses) {
+			updatedClasses.add(staleClass.getFullName());
+		}
+
+		return updatedClasses;
+	}
+
+	/**
+	 * Removes everything indexed for the given classes, then indexes those which are still in the jar again.
+	 */
+	private void reindexClasses(Set<ClassEntry> staleClasses, ClassProvider classProvider, ProgressListener progress) {
+		progress.init(4, I18n.translate("progress.jar.indexing"));
 		progress.step(1, I18n.translate("progress.jar.indexing.entries"));
 
+		indexers.forEach(indexer -> indexer.removeClasses(staleClasses));
+		removeClasses(staleClasses);
+		entryResolver.invalidate();
+		invalidateClassProviderWithFrames();
+
+		Set<String> classNames = new HashSet<>();
+
+		for (ClassEntry staleClass : staleClasses) {
+			if (indexedClasses.contains(staleClass.getFullName())) {
+				classNames.add(staleClass.getFullName());
+			}
+		}
+
+		referenceIndex.startIndexing();
+
+		try {
+			Set<String> classesWithoutFrames = indexClasses(classNames, classProvider, null);
+
+			progress.step(2, I18n.translate("progress.jar.indexing.references"));
+			indexReferencesWithoutFrames(classesWithoutFrames, classProvider, null);
+		} finally {
+			referenceIndex.finishIndexing();
+		}
+
+		inheritanceIndex.computeClosure();
+
+		progress.step(3, I18n.translate("progress.jar.indexing.methods"));
+
+		if (level.includes(IndexLevel.HIERARCHY)) {
+			bridgeMethodIndex.findBridgeMethods(staleClasses);
+		}
+
+		progress.step(4, I18n.translate("progress.jar.indexing.process"));
+		activeIndexers.forEach(indexer -> indexer.processClasses(this, staleClasses));
+		entryResolver.invalidate();
+		version++;
+	}
+
+	/**
+	 * Streams each class file through a single {@link ClassReader} pass which indexes both its entries and its
+	 * references. Classes that predate stack map frames only have their entries indexed, since computing their
+	 * frames needs the entries of the whole jar. Below {@link IndexLevel#HIERARCHY}, only the entries are indexed.
+	 *
+	 * <p>The visitors of the plugin pass visit each class in the same read as its references.
+	 *
+	 * @return the classes whose references still need to be indexed with {@link #indexReferencesWithoutFrames}
+	 */
+	private Set<String> indexClasses(Set<String> classNames, ClassProvider classProvider, @Nullable ClassVisitorPass pluginPass) {
+		Set<String> classesWithoutFrames = ConcurrentHashMap.newKeySet();
+
 		classNames.parallelStream().forEach(className -> {
-			classProvider.get(className).accept(new IndexClassVisitor(this, Enigma.ASM_VERSION));
+			try {
+				ClassReader reader = new ClassReader(classProvider.getBytes(className));
+
+				if (!level.includes(IndexLevel.HIERARCHY)) {
+					reader.accept(new IndexClassVisitor(this, Enigma.ASM_VERSION), ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+				} else if (reader.readUnsignedShort(6) >= Opcodes.V1_7) {
+					reader.accept(new IndexClassVisitor(this, Enigma.ASM_VERSION, createReferenceVisitor(pluginPass)), 0);
+				} else {
+					FrameRequirementVisitor frameRequirement = new FrameRequirementVisitor(Enigma.ASM_VERSION);
+					reader.accept(new IndexClassVisitor(this, Enigma.ASM_VERSION, frameRequirement), ClassReader.SKIP_DEBUG);
+
+					if (frameRequirement.isFramesRequired()) {
+						classesWithoutFrames.add(className);
+					} else {
+						// straight-line code has no frames, so the plugins see the class as it would be with computed frames
+						reader.accept(createReferenceVisitor(pluginPass), 0);
+					}
+				}
+			} catch (Exception e) {
+				throw new RuntimeException("Exception while indexing class: " + className, e);
+			}
 		});
 
-		ClassProvider classProviderWithFrames = new CachingClassProvider(new AddFramesIfNecessaryClassProvider(classProvider, entryIndex));
+		return classesWithoutFrames;
+	}
+
+	private IndexReferenceVisitor createReferenceVisitor() {
+		// the bridge methods are found from the references of the synthetic methods alone
+		return new IndexReferenceVisitor(this, Enigma.ASM_VERSION, !level.includes(IndexLevel.FULL));
+	}
 
-		progress.step(2, I18n.translate("progress.jar.indexing.references"));
+	private ClassVisitor createReferenceVisitor(@Nullable ClassVisitorPass pluginPass) {
+		if (pluginPass == null) {
+			return createReferenceVisitor();
+		}
+
+		List<ClassVisitor> visitors = new ArrayList<>(pluginPass.getVisitors().size() + 1);
+		visitors.add(createReferenceVisitor());
+		visitors.addAll(pluginPass.getVisitors());
+		return TeeClassVisitor.of(Enigma.ASM_VERSION, visitors);
+	}
 
+	private void indexReferencesWithoutFrames(Set<String> classNames, ClassProvider classProvider, @Nullable ClassVisitorPass pluginPass) {
 		classNames.parallelStream().forEach(className -> {
 			try {
-				classProviderWithFrames.get(className).accept(new IndexReferenceVisitor(this, Enigma.ASM_VERSION));
+				IndexClassWriter writer = new IndexClassWriter(entryIndex, libraryIndex, ClassWriter.COMPUTE_FRAMES);
+				new ClassReader(classProvider.getBytes(className)).accept(writer, 0);
+				new ClassReader(writer.toByteArray()).accept(createReferenceVisitor(pluginPass), 0);
 			} catch (Exception e) {
 				throw new RuntimeException("Exception while indexing class: " + className, e);
 			}
 		});
+	}
 
-		progress.step(3, I18n.translate("progress.jar.indexing.methods"));
-		bridgeMethodIndex.findBridgeMethods();
+	@Override
+	public void removeClasses(Set<ClassEntry> classEntries) {
+		childrenByClass.keySet().removeAll(classEntries);
 
-		progress.step(4, I18n.translate("progress.jar.indexing.process"));
-		processIndex(this);
+		for (ClassEntry classEntry : classEntries) {
+			if (classEntry.isInnerClass()) {
+				List<ParentedEntry<?>> siblings = childrenByClass.get(classEntry.getOuterClass());
+
+				if (siblings != null) {
+					siblings.remove(classEntry);
+				}
+			}
+		}
+
+		// the removed classes are left among the dependents of the classes they referenced, as going through all
+		// of those costs more than re-indexing a class which no longer depends on a changed one
+		classDependents.keySet().removeAll(classEntries);
+	}
+
+	/**
+	 * Populates this empty index from a snapshot written by {@link #writeSnapshot}, as an alternative to
+	 * {@link #indexJar}. If this returns {@code false} or throws, the index must be discarded.
+	 *
+	 * @return whether a snapshot matching the given key was found
+	 */
+	public boolean readSnapshot(Set<String> classNames, Path path, byte[] key) throws IOException {
+		if (!IndexSnapshot.read(this, path, key)) {
+			return false;
+		}
+
+		indexedClasses.addAll(classNames);
+		setLevel(IndexLevel.FULL);
+		return true;
+	}
+
+	public void writeSnapshot(Path path, byte[] key) throws IOException {
+		if (level != IndexLevel.FULL) {
+			throw new IllegalStateException("Cannot write a snapshot of an index at level " + level);
+		}
+
+		IndexSnapshot.write(this, path, key);
+	}
+
+	void writeSnapshot(IndexSnapshot.Output out) throws IOException {
+		entryIndex.writeSnapshot(out);
+		inheritanceIndex.writeSnapshot(out);
+		referenceIndex.writeSnapshot(out);
+		bridgeMethodIndex.writeSnapshot(out);
+		packageVisibilityIndex.writeSnapshot(out);
+		out.writeEntryMultimap(childrenByClass);
+		out.writeEntryMultimap(classDependents);
+		out.writeInt(classChecksums.size());
+
+		for (Map.Entry<String, Long> checksum : classChecksums.entrySet()) {
+			out.writeString(checksum.getKey());
+			out.writeLong(checksum.getValue());
+		}
+	}
+
+	void readSnapshot(IndexSnapshot.Input in) throws IOException {
+		entryIndex.readSnapshot(in);
+		inheritanceIndex.readSnapshot(in);
+		referenceIndex.readSnapshot(in, entryIndex.getEntryPool());
+		bridgeMethodIndex.readSnapshot(in);
+		packageVisibilityIndex.readSnapshot(in);
+		in.readEntryMultimap(childrenByClass);
+
+		Map<ClassEntry, List<ClassEntry>> dependents = new HashMap<>();
+		in.readEntryMultimap(dependents);
+		dependents.forEach((classEntry, dependentClasses) -> {
+			Set<ClassEntry> set = ConcurrentHashMap.newKeySet();
+			set.addAll(dependentClasses);
+			classDependents.put(classEntry, set);
+		});
+
+		int checksumCount = in.readInt();
+
+		for (int i = 0; i < checksumCount; i++) {
+			String className = in.readString();
+			classChecksums.put(className, in.readLong());
+		}
+	}
+
+	/**
+	 * Wraps a class provider so that classes which predate stack map frames get them computed against this index.
+	 * The classes with frames are cached until the index changes, the wrapper is reused as long as it is asked for
+	 * the same class provider.
+	 */
+	public synchronized ClassProvider createClassProviderWithFrames(ClassProvider classProvider) {
+		if (classProviderWithFrames == null || framesSource != classProvider) {
+			framesSource = classProvider;
+			classProviderWithFrames = new CachingClassProvider(new AddFramesIfNecessaryClassProvider(classProvider, entryIndex, libraryIndex), framesCacheSize);
+		}
 
 		return classProviderWithFrames;
 	}
 
+	/**
+	 * @param cacheSize the estimated number of bytes the classes given frames may take up in the cache
+	 */
+	public synchronized void setFramesCacheSize(long cacheSize) {
+		framesCacheSize = cacheSize;
+		// made again with the new size the next time it is asked for
+		classProviderWithFrames = null;
+	}
+
+	/**
+	 * @return a number which changes whenever classes are indexed again or the level of the index is completed
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	private synchronized void invalidateClassProviderWithFrames() {
+		if (classProviderWithFrames != null) {
+			classProviderWithFrames.invalidate();
+		}
+	}
+
 	@Override
 	public void processIndex(JarIndex index) {
-		indexers.forEach(indexer -> indexer.processIndex(index));
+		activeIndexers.forEach(indexer -> indexer.processIndex(index));
+		// resolutions made while processing may predate the renamed bridge methods
+		entryResolver.invalidate();
 	}
 
 	@Override
@@ -120,7 +654,7 @@ public class JarIndex implements JarIndexer, JarIndexView {
 			}
 		}
 
-		indexers.forEach(indexer -> indexer.indexClass(classEntry));
+		activeIndexers.forEach(indexer -> indexer.indexClass(classEntry));
 
 		if (classEntry.isInnerClass() && !classEntry.getAccess().isSynthetic()) {
 			synchronizedAdd(childrenByClass, classEntry.getParent(), classEntry);
@@ -133,7 +667,7 @@ public class JarIndex implements JarIndexer, JarIndexView {
 			return;
 		}
 
-		indexers.forEach(indexer -> indexer.indexField(fieldEntry));
+		activeIndexers.forEach(indexer -> indexer.indexField(fieldEntry));
 
 		if (!fieldEntry.getAccess().isSynthetic()) {
 			synchronizedAdd(childrenByClass, fieldEntry.getParent(), fieldEntry);
@@ -146,7 +680,7 @@ public class JarIndex implements JarIndexer, JarIndexView {
 			return;
 		}
 
-		indexers.forEach(indexer -> indexer.indexMethod(methodEntry));
+		activeIndexers.forEach(indexer -> indexer.indexMethod(methodEntry));
 
 		if (!methodEntry.getAccess().isSynthetic() && !methodEntry.getName().equals("<clinit>")) {
 			synchronizedAdd(childrenByClass, methodEntry.getParent(), methodEntry);
@@ -155,38 +689,121 @@ public class JarIndex implements JarIndexer, JarIndexView {
 
 	@Override
 	public void indexClassReference(MethodDefEntry callerEntry, ClassEntry referencedEntry, ReferenceTargetType targetType) {
+		indexClassReference(activeIndexers, callerEntry, referencedEntry, targetType);
+	}
+
+	private void indexClassReference(Collection<JarIndexer> indexers, MethodDefEntry callerEntry, ClassEntry referencedEntry, ReferenceTargetType targetType) {
 		if (callerEntry.getParent().isJre()) {
 			return;
 		}
 
-		indexers.forEach(indexer -> indexer.indexClassReference(callerEntry, referencedEntry, targetType));
+		ClassEntry canonicalEntry = entryIndex.getEntryPool().canonicalize(referencedEntry);
+		ReferenceTargetType canonicalTargetType = canonicalize(targetType);
+		indexers.forEach(indexer -> indexer.indexClassReference(callerEntry, canonicalEntry, canonicalTargetType));
+		addDependency(callerEntry, referencedEntry, targetType);
 	}
 
 	@Override
 	public void indexMethodReference(MethodDefEntry callerEntry, MethodEntry referencedEntry, ReferenceTargetType targetType) {
+		indexMethodReference(activeIndexers, callerEntry, referencedEntry, targetType);
+	}
+
+	private void indexMethodReference(Collection<JarIndexer> indexers, MethodDefEntry callerEntry, MethodEntry referencedEntry, ReferenceTargetType targetType) {
 		if (callerEntry.getParent().isJre()) {
 			return;
 		}
 
-		indexers.forEach(indexer -> indexer.indexMethodReference(callerEntry, referencedEntry, targetType));
+		MethodEntry canonicalEntry = entryIndex.getEntryPool().canonicalize(referencedEntry);
+		ReferenceTargetType canonicalTargetType = canonicalize(targetType);
+		indexers.forEach(indexer -> indexer.indexMethodReference(callerEntry, canonicalEntry, canonicalTargetType));
+		addDependency(callerEntry, referencedEntry.getParent(), targetType);
 	}
 
 	@Override
 	public void indexFieldReference(MethodDefEntry callerEntry, FieldEntry referencedEntry, ReferenceTargetType targetType) {
+		indexFieldReference(activeIndexers, callerEntry, referencedEntry, targetType);
+	}
+
+	private void indexFieldReference(Collection<JarIndexer> indexers, MethodDefEntry callerEntry, FieldEntry referencedEntry, ReferenceTargetType targetType) {
 		if (callerEntry.getParent().isJre()) {
 			return;
 		}
 
-		indexers.forEach(indexer -> indexer.indexFieldReference(callerEntry, referencedEntry, targetType));
+		FieldEntry canonicalEntry = entryIndex.getEntryPool().canonicalize(referencedEntry);
+		ReferenceTargetType canonicalTargetType = canonicalize(targetType);
+		indexers.forEach(indexer -> indexer.indexFieldReference(callerEntry, canonicalEntry, canonicalTargetType));
+		addDependency(callerEntry, referencedEntry.getParent(), targetType);
 	}
 
 	@Override
 	public void indexLambda(MethodDefEntry callerEntry, Lambda lambda, ReferenceTargetType targetType) {
+		indexLambda(activeIndexers, callerEntry, lambda, targetType);
+	}
+
+	private void indexLambda(Collection<JarIndexer> indexers, MethodDefEntry callerEntry, Lambda lambda, ReferenceTargetType targetType) {
 		if (callerEntry.getParent().isJre()) {
 			return;
 		}
 
-		indexers.forEach(indexer -> indexer.indexLambda(callerEntry, lambda, targetType));
+		ReferenceTargetType canonicalTargetType = canonicalize(targetType);
+		indexers.forEach(indexer -> indexer.indexLambda(callerEntry, lambda, canonicalTargetType));
+		addDependency(callerEntry, lambda.getImplMethod().getContainingClass(), targetType);
+	}
+
+	/**
+	 * @return an indexer passing the references to the given indexers only, for the classes whose entries are
+	 * already indexed
+	 */
+	private JarIndexer createReferenceIndexer(Collection<JarIndexer> indexers) {
+		return new JarIndexer() {
+			@Override
+			public void indexClassReference(MethodDefEntry callerEntry, ClassEntry referencedEntry, ReferenceTargetType targetType) {
+				JarIndex.this.indexClassReference(indexers, callerEntry, referencedEntry, targetType);
+			}
+
+			@Override
+			public void indexMethodReference(MethodDefEntry callerEntry, MethodEntry referencedEntry, ReferenceTargetType targetType) {
+				JarIndex.this.indexMethodReference(indexers, callerEntry, referencedEntry, targetType);
+			}
+
+			@Override
+			public void indexFieldReference(MethodDefEntry callerEntry, FieldEntry referencedEntry, ReferenceTargetType targetType) {
+				JarIndex.this.indexFieldReference(indexers, callerEntry, referencedEntry, targetType);
+			}
+
+			@Override
+			public void indexLambda(MethodDefEntry callerEntry, Lambda lambda, ReferenceTargetType targetType) {
+				JarIndex.this.indexLambda(indexers, callerEntry, lambda, targetType);
+			}
+		};
+	}
+
+	/**
+	 * References are parsed from bytecode over and over, so their entries are interned to share a single copy.
+	 */
+	private ReferenceTargetType canonicalize(ReferenceTargetType targetType) {
+		if (targetType instanceof ReferenceTargetType.ClassType classType) {
+			return ReferenceTargetType.classType(entryIndex.getEntryPool().canonicalize(classType.getEntry()));
+		}
+
+		return targetType;
+	}
+
+	/**
+	 * Records that the index data of the caller's class depends on the referenced class, and on the class of the
+	 * reference target, so that {@link #updateJar} can re-index it when either of those changes.
+	 */
+	private void addDependency(MethodDefEntry callerEntry, ClassEntry referencedClass, ReferenceTargetType targetType) {
+		ClassEntry callerClass = callerEntry.getParent();
+
+		// jdk classes are never re-indexed, and nearly every class references them
+		if (!referencedClass.equals(callerClass) && !referencedClass.isJre()) {
+			classDependents.computeIfAbsent(referencedClass, k -> ConcurrentHashMap.newKeySet()).add(callerClass);
+		}
+
+		if (targetType instanceof ReferenceTargetType.ClassType classType && !classType.getEntry().equals(callerClass) && !classType.getEntry().isJre()) {
+			classDependents.computeIfAbsent(classType.getEntry(), k -> ConcurrentHashMap.newKeySet()).add(callerClass);
+		}
 	}
 
 	@Override
@@ -201,15 +818,23 @@ public class JarIndex implements JarIndexer, JarIndexView {
 
 	@Override
 	public ReferenceIndex getReferenceIndex() {
+		complete(IndexLevel.FULL);
 		return referenceIndex;
 	}
 
 	@Override
 	public BridgeMethodIndex getBridgeMethodIndex() {
+		complete(IndexLevel.HIERARCHY);
 		return bridgeMethodIndex;
 	}
 
+	@Nullable
+	public LibraryIndex getLibraryIndex() {
+		return libraryIndex;
+	}
+
 	public PackageVisibilityIndex getPackageVisibilityIndex() {
+		complete(IndexLevel.FULL);
 		return packageVisibilityIndex;
 	}
 
@@ -221,6 +846,10 @@ public class JarIndex implements JarIndexer, JarIndexView {
 		return this.childrenByClass;
 	}
 
+	public Map<String, Long> getClassChecksums() {
+		return Collections.unmodifiableMap(classChecksums);
+	}
+
 	public boolean isIndexed(String internalName) {
 		return indexedClasses.contains(internalName);
 	}
@@ -1,5 +1,7 @@
 package cuchaz.enigma.analysis.index;
 
+import java.util.Set;
+
 import cuchaz.enigma.analysis.ReferenceTargetType;
 import cuchaz.enigma.translation.representation.Lambda;
 import cuchaz.enigma.translation.representation.entry.ClassDefEntry;
@@ -33,4 +35,18 @@ public interface JarIndexer {
 
 	default void processIndex(JarIndex index) {
 	}
+
+	/**
+	 * Removes everything that was indexed for the given classes, before {@link JarIndex#updateJar} indexes
+	 * them again.
+	 */
+	default void removeClasses(Set<ClassEntry> classEntries) {
+	}
+
+	/**
+	 * Like {@link #processIndex}, but only for the given classes after {@link JarIndex#updateJar} has indexed
+	 * them again.
+	 */
+	default void processClasses(JarIndex index, Set<ClassEntry> classEntries) {
+	}
 }
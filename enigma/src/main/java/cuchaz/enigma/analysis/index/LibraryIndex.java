@@ -0,0 +1,275 @@
+package cuchaz.enigma.analysis.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import cuchaz.enigma.Enigma;
+import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.utils.Utils;
+
+/**
+ * The hierarchy, access flags and member signatures of the classes of the libraries of a jar, read without their
+ * code, so that frame computation and relation checks don't need to parse whole library classes.
+ *
+ * <p>When a library appears in several libraries, the first one indexed wins, like in a combining class provider.
+ * The stubs of each library jar can be stored in a cache directory, keyed by the checksum of the jar.
+ */
+public final class LibraryIndex {
+	private static final int MAGIC = 0x454E4C53; // "ENLS"
+	private static final int FORMAT_VERSION = 1;
+
+	private final ConcurrentMap<String, ClassStub> stubs = new ConcurrentHashMap<>();
+
+	/**
+	 * Adds the classes of the given library jar, read from the stubs stored in the cache directory if they were
+	 * stored before, and stored there otherwise.
+	 */
+	public void indexLibrary(Path jar, @Nullable Path cacheDirectory) throws IOException {
+		indexLibrary(jar, cacheDirectory == null ? null : Utils.zipCentralDirectorySha1(jar), cacheDirectory);
+	}
+
+	/**
+	 * @param checksum the checksum of the jar as computed by {@link Utils#zipCentralDirectorySha1}, if it is already known
+	 */
+	public void indexLibrary(Path jar, @Nullable byte[] checksum, @Nullable Path cacheDirectory) throws IOException {
+		Path stubsPath = null;
+
+		if (cacheDirectory != null) {
+			if (checksum == null) {
+				checksum = Utils.zipCentralDirectorySha1(jar);
+			}
+
+			stubsPath = getPath(cacheDirectory, checksum);
+
+			try {
+				if (read(stubsPath, checksum)) {
+					return;
+				}
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Failed to read library stubs " + stubsPath + ", re-indexing");
+				e.printStackTrace();
+			}
+		}
+
+		Map<String, ClassStub> libraryStubs;
+
+		try (JarClassProvider classProvider = new JarClassProvider(jar)) {
+			libraryStubs = readStubs(classProvider, classProvider.getClassNames());
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+
+		libraryStubs.values().forEach(stub -> stubs.putIfAbsent(stub.name(), stub));
+
+		if (stubsPath != null) {
+			try {
+				write(stubsPath, checksum, libraryStubs.values());
+			} catch (IOException e) {
+				System.err.println("Failed to write library stubs " + stubsPath);
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Adds the given classes of a class provider, which is read without caching anything.
+	 */
+	public void indexLibrary(ClassProvider classProvider, Collection<String> classNames) {
+		readStubs(classProvider, classNames).values().forEach(stub -> stubs.putIfAbsent(stub.name(), stub));
+	}
+
+	private static Map<String, ClassStub> readStubs(ClassProvider classProvider, Collection<String> classNames) {
+		Map<String, ClassStub> libraryStubs = new ConcurrentHashMap<>();
+
+		classNames.parallelStream().forEach(className -> {
+			byte[] bytes = classProvider.getBytes(className);
+
+			if (bytes != null) {
+				StubVisitor visitor = new StubVisitor();
+				new ClassReader(bytes).accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+				libraryStubs.put(className, visitor.toStub());
+			}
+		});
+
+		return libraryStubs;
+	}
+
+	public static Path getPath(Path cacheDirectory, byte[] checksum) {
+		return cacheDirectory.resolve(HexFormat.of().formatHex(checksum) + ".stubs");
+	}
+
+	@Nullable
+	public ClassStub getStub(String name) {
+		return stubs.get(name);
+	}
+
+	public boolean hasClass(String name) {
+		return stubs.containsKey(name);
+	}
+
+	private boolean read(Path path, byte[] checksum) throws IOException {
+		if (!Files.isRegularFile(path)) {
+			return false;
+		}
+
+		List<ClassStub> libraryStubs = new ArrayList<>();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				return false;
+			}
+
+			byte[] storedChecksum = new byte[checksum.length];
+			in.readFully(storedChecksum);
+
+			if (!Arrays.equals(storedChecksum, checksum)) {
+				return false;
+			}
+
+			IndexSnapshot.Input input = new IndexSnapshot.Input(in);
+			int count = input.readInt();
+
+			for (int i = 0; i < count; i++) {
+				String name = input.readString();
+				int access = input.readInt();
+				String superName = input.readString();
+				List<String> interfaces = new ArrayList<>();
+
+				for (int j = input.readInt(); j > 0; j--) {
+					interfaces.add(input.readString());
+				}
+
+				libraryStubs.add(new ClassStub(name, access, superName, List.copyOf(interfaces), readMembers(input), readMembers(input)));
+			}
+		}
+
+		// only added once the whole file was read, so that a broken file can be indexed again from the jar
+		libraryStubs.forEach(stub -> stubs.putIfAbsent(stub.name(), stub));
+		Utils.touch(path);
+		return true;
+	}
+
+	private static List<MemberStub> readMembers(IndexSnapshot.Input input) throws IOException {
+		MemberStub[] members = new MemberStub[input.readInt()];
+
+		for (int i = 0; i < members.length; i++) {
+			members[i] = new MemberStub(input.readInt(), input.readString(), input.readString());
+		}
+
+		return List.of(members);
+	}
+
+	private static void write(Path path, byte[] checksum, Collection<ClassStub> libraryStubs) throws IOException {
+		Files.createDirectories(path.getParent());
+		Path tempPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.write(checksum);
+
+				IndexSnapshot.Output output = new IndexSnapshot.Output(out);
+				output.writeInt(libraryStubs.size());
+
+				for (ClassStub stub : libraryStubs) {
+					output.writeString(stub.name());
+					output.writeInt(stub.access());
+					output.writeString(stub.superName());
+					output.writeInt(stub.interfaces().size());
+
+					for (String interfaceName : stub.interfaces()) {
+						output.writeString(interfaceName);
+					}
+
+					writeMembers(output, stub.fields());
+					writeMembers(output, stub.methods());
+				}
+			}
+
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+	private static void writeMembers(IndexSnapshot.Output output, List<MemberStub> members) throws IOException {
+		output.writeInt(members.size());
+
+		for (MemberStub member : members) {
+			output.writeInt(member.access());
+			output.writeString(member.name());
+			output.writeString(member.desc());
+		}
+	}
+
+	public record ClassStub(String name, int access, @Nullable String superName, List<String> interfaces, List<MemberStub> fields, List<MemberStub> methods) {
+		public boolean isInterface() {
+			return (access & Opcodes.ACC_INTERFACE) != 0;
+		}
+	}
+
+	public record MemberStub(int access, String name, String desc) {
+	}
+
+	private static final class StubVisitor extends ClassVisitor {
+		private String name;
+		private int access;
+		private String superName;
+		private List<String> interfaces = List.of();
+		private final List<MemberStub> fields = new ArrayList<>();
+		private final List<MemberStub> methods = new ArrayList<>();
+
+		private StubVisitor() {
+			super(Enigma.ASM_VERSION);
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+			this.name = name;
+			this.access = access;
+			this.superName = superName;
+			this.interfaces = interfaces == null ? List.of() : List.of(interfaces);
+		}
+
+		@Override
+		public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+			fields.add(new MemberStub(access, name, descriptor));
+			return null;
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+			methods.add(new MemberStub(access, name, descriptor));
+			return null;
+		}
+
+		private ClassStub toStub() {
+			return new ClassStub(name, access, superName, interfaces, List.copyOf(fields), List.copyOf(methods));
+		}
+	}
+}
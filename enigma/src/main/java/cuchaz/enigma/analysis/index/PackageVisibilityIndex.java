@@ -1,15 +1,21 @@
 package cuchaz.enigma.analysis.index;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.jetbrains.annotations.Nullable;
 
 import cuchaz.enigma.analysis.EntryReference;
 import cuchaz.enigma.analysis.ReferenceTargetType;
@@ -46,7 +52,8 @@ public class PackageVisibilityIndex implements JarIndexer {
 	}
 
 	private final ConcurrentMap<ClassEntry, List<ClassEntry>> connections = new ConcurrentHashMap<>();
-	private final List<Set<ClassEntry>> partitions = new ArrayList<>();
+	// compared by identity, so that a partition is found without hashing its classes
+	private final Set<Set<ClassEntry>> partitions = Collections.newSetFromMap(new IdentityHashMap<>());
 	private final Map<ClassEntry, Set<ClassEntry>> classPartitions = new HashMap<>();
 
 	private void addConnection(ClassEntry classA, ClassEntry classB) {
@@ -56,90 +63,111 @@ public class PackageVisibilityIndex implements JarIndexer {
 		}
 	}
 
-	private void buildPartition(Set<ClassEntry> unassignedClasses, Set<ClassEntry> partition, ClassEntry member) {
-		List<ClassEntry> memberConnections = connections.get(member);
+	private void addConnections(EntryIndex entryIndex, ReferenceIndex referenceIndex, InheritanceIndex inheritanceIndex) {
+		entryIndex.getFields().parallelStream().forEach(entry -> addConnections(entryIndex.getFieldAccess(entry), referenceIndex.getReferencesToField(entry), inheritanceIndex));
+		entryIndex.getMethods().parallelStream().forEach(entry -> addConnections(entryIndex.getMethodAccess(entry), referenceIndex.getReferencesToMethod(entry), inheritanceIndex));
+		entryIndex.getClasses().parallelStream().forEach(entry -> addClassConnections(entry, entryIndex, referenceIndex, inheritanceIndex));
+	}
 
-		if (memberConnections == null) {
-			return;
+	/**
+	 * Adds the connections of a class that was indexed again, which are those of the references to its members
+	 * and of the references it makes itself.
+	 */
+	private void addConnections(ClassEntry classEntry, EntryIndex entryIndex, ReferenceIndex referenceIndex, InheritanceIndex inheritanceIndex) {
+		for (FieldDefEntry entry : entryIndex.getFields(classEntry)) {
+			addConnections(entryIndex.getFieldAccess(entry), referenceIndex.getReferencesToField(entry), inheritanceIndex);
 		}
 
-		for (ClassEntry connected : memberConnections) {
-			if (unassignedClasses.remove(connected)) {
-				partition.add(connected);
-				buildPartition(unassignedClasses, partition, connected);
-			}
+		for (MethodDefEntry entry : entryIndex.getMethods(classEntry)) {
+			addConnections(entryIndex.getMethodAccess(entry), referenceIndex.getReferencesToMethod(entry), inheritanceIndex);
+		}
+
+		addClassConnections(classEntry, entryIndex, referenceIndex, inheritanceIndex);
+
+		for (EntryReference<?, ?> ref : referenceIndex.getReindexedReferences(classEntry)) {
+			AccessFlags entryAcc = ref.entry instanceof ClassEntry referencedClass ? entryIndex.getClassAccess(referencedClass) : entryIndex.getEntryAccess(ref.entry);
+			addConnections(entryAcc, List.of(ref), inheritanceIndex);
 		}
 	}
 
-	private void addConnections(EntryIndex entryIndex, ReferenceIndex referenceIndex, InheritanceIndex inheritanceIndex) {
-		entryIndex.getFields().parallelStream().forEach(entry -> {
-			AccessFlags entryAcc = entryIndex.getFieldAccess(entry);
+	private void addClassConnections(ClassEntry entry, EntryIndex entryIndex, ReferenceIndex referenceIndex, InheritanceIndex inheritanceIndex) {
+		AccessFlags entryAcc = entryIndex.getClassAccess(entry);
+		addConnections(entryAcc, referenceIndex.getFieldTypeReferencesToClass(entry), inheritanceIndex);
+		addConnections(entryAcc, referenceIndex.getMethodTypeReferencesToClass(entry), inheritanceIndex);
 
-			if (!entryAcc.isPublic() && !entryAcc.isPrivate()) {
-				for (EntryReference<FieldEntry, MethodDefEntry> ref : referenceIndex.getReferencesToField(entry)) {
-					if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
-						addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
-					}
-				}
+		for (ClassEntry parent : inheritanceIndex.getParents(entry)) {
+			AccessFlags parentAcc = entryIndex.getClassAccess(parent);
+
+			if (parentAcc != null && !parentAcc.isPublic() && !parentAcc.isPrivate()) {
+				addConnection(entry, parent);
 			}
-		});
+		}
 
-		entryIndex.getMethods().parallelStream().forEach(entry -> {
-			AccessFlags entryAcc = entryIndex.getMethodAccess(entry);
+		ClassEntry outerClass = entry.getOuterClass();
 
-			if (!entryAcc.isPublic() && !entryAcc.isPrivate()) {
-				for (EntryReference<MethodEntry, MethodDefEntry> ref : referenceIndex.getReferencesToMethod(entry)) {
-					if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
-						addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
-					}
+		if (outerClass != null) {
+			addConnection(entry, outerClass);
+		}
+	}
+
+	private void addConnections(@Nullable AccessFlags entryAcc, Collection<? extends EntryReference<?, ?>> references, InheritanceIndex inheritanceIndex) {
+		if (entryAcc != null && !entryAcc.isPublic() && !entryAcc.isPrivate()) {
+			for (EntryReference<?, ?> ref : references) {
+				if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
+					addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
 				}
 			}
-		});
+		}
+	}
 
-		entryIndex.getClasses().parallelStream().forEach(entry -> {
-			AccessFlags entryAcc = entryIndex.getClassAccess(entry);
+	private void addPartitions(EntryIndex entryIndex) {
+		// the partitions are the connected components between the classes of the jar, which are found by joining
+		// both ends of every connection, keyed by pool id
+		EntryPool entryPool = entryIndex.getEntryPool();
+		UnionFind unionFind = new UnionFind(entryPool.size());
 
-			if (!entryAcc.isPublic() && !entryAcc.isPrivate()) {
-				for (EntryReference<ClassEntry, FieldDefEntry> ref : referenceIndex.getFieldTypeReferencesToClass(entry)) {
-					if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
-						addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
-					}
-				}
+		connections.entrySet().parallelStream().forEach(connection -> {
+			ClassEntry classEntry = connection.getKey();
 
-				for (EntryReference<ClassEntry, MethodDefEntry> ref : referenceIndex.getMethodTypeReferencesToClass(entry)) {
-					if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
-						addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
-					}
-				}
+			if (!entryIndex.hasClass(classEntry)) {
+				return;
 			}
 
-			for (ClassEntry parent : inheritanceIndex.getParents(entry)) {
-				AccessFlags parentAcc = entryIndex.getClassAccess(parent);
+			int id = entryPool.getId(classEntry);
 
-				if (parentAcc != null && !parentAcc.isPublic() && !parentAcc.isPrivate()) {
-					addConnection(entry, parent);
+			for (ClassEntry connected : connection.getValue()) {
+				if (entryIndex.hasClass(connected)) {
+					unionFind.union(id, entryPool.getId(connected));
 				}
 			}
+		});
 
-			ClassEntry outerClass = entry.getOuterClass();
+		Map<Integer, Set<ClassEntry>> partitionsByRoot = new HashMap<>();
 
-			if (outerClass != null) {
-				addConnection(entry, outerClass);
-			}
-		});
+		for (ClassEntry entry : entryIndex.getClasses()) {
+			Set<ClassEntry> partition = partitionsByRoot.computeIfAbsent(unionFind.find(entryPool.getId(entry)), root -> new HashSet<>());
+			partition.add(entry);
+			classPartitions.put(entry, partition);
+		}
+
+		partitions.addAll(partitionsByRoot.values());
 	}
 
-	private void addPartitions(EntryIndex entryIndex) {
-		Set<ClassEntry> unassignedClasses = new HashSet<>(entryIndex.getClasses());
+	void writeSnapshot(IndexSnapshot.Output out) throws IOException {
+		out.writeEntryMultimap(connections);
+		out.writeInt(partitions.size());
 
-		while (!unassignedClasses.isEmpty()) {
-			Iterator<ClassEntry> iterator = unassignedClasses.iterator();
-			ClassEntry initialEntry = iterator.next();
-			iterator.remove();
+		for (Set<ClassEntry> partition : partitions) {
+			out.writeEntries(partition);
+		}
+	}
+
+	void readSnapshot(IndexSnapshot.Input in) throws IOException {
+		in.readEntryMultimap(connections);
+		int partitionCount = in.readInt();
 
-			HashSet<ClassEntry> partition = new HashSet<>();
-			partition.add(initialEntry);
-			buildPartition(unassignedClasses, partition, initialEntry);
+		for (int i = 0; i < partitionCount; i++) {
+			Set<ClassEntry> partition = new HashSet<>(in.readEntries());
 			partitions.add(partition);
 
 			for (ClassEntry entry : partition) {
@@ -148,6 +176,60 @@ public class PackageVisibilityIndex implements JarIndexer {
 		}
 	}
 
+	/**
+	 * A disjoint-set forest over ids which can be joined from several threads at once. Each set is rooted at its
+	 * lowest id, so concurrent unions can never link two roots into a cycle.
+	 */
+	private static final class UnionFind {
+		private final AtomicIntegerArray parents;
+
+		private UnionFind(int size) {
+			parents = new AtomicIntegerArray(size);
+
+			for (int i = 0; i < size; i++) {
+				parents.set(i, i);
+			}
+		}
+
+		private int find(int id) {
+			while (true) {
+				int parent = parents.get(id);
+
+				if (parent == id) {
+					return id;
+				}
+
+				int grandparent = parents.get(parent);
+
+				if (grandparent != parent) {
+					// path halving, losing the race only means another thread shortened the path first
+					parents.compareAndSet(id, parent, grandparent);
+				}
+
+				id = grandparent;
+			}
+		}
+
+		private void union(int a, int b) {
+			while (true) {
+				a = find(a);
+				b = find(b);
+
+				if (a == b) {
+					return;
+				}
+
+				int root = Math.min(a, b);
+				int child = Math.max(a, b);
+
+				// fails if the child stopped being a root in the meantime, in which case the roots are looked up again
+				if (parents.compareAndSet(child, child, root)) {
+					return;
+				}
+			}
+		}
+	}
+
 	public Collection<Set<ClassEntry>> getPartitions() {
 		return partitions;
 	}
@@ -156,6 +238,124 @@ public class PackageVisibilityIndex implements JarIndexer {
 		return classPartitions.get(classEntry);
 	}
 
+	@Override
+	public void removeClasses(Set<ClassEntry> classEntries) {
+		for (ClassEntry classEntry : classEntries) {
+			List<ClassEntry> connected = connections.remove(classEntry);
+
+			if (connected == null) {
+				continue;
+			}
+
+			for (ClassEntry connectedClass : connected) {
+				connections.computeIfPresent(connectedClass, (k, connectedBack) -> {
+					connectedBack.removeIf(classEntry::equals);
+					return connectedBack.isEmpty() ? null : connectedBack;
+				});
+			}
+		}
+	}
+
+	@Override
+	public void processClasses(JarIndex index, Set<ClassEntry> classEntries) {
+		EntryIndex entryIndex = index.getEntryIndex();
+		ReferenceIndex referenceIndex = index.getReferenceIndex();
+		InheritanceIndex inheritanceIndex = index.getInheritanceIndex();
+
+		Set<ClassEntry> detachedClasses = new HashSet<>();
+
+		for (ClassEntry classEntry : classEntries) {
+			if (entryIndex.hasClass(classEntry)) {
+				addConnections(classEntry, entryIndex, referenceIndex, inheritanceIndex);
+			}
+
+			// the classes which were connected to this one, which are all in its former partition
+			Set<ClassEntry> partition = classPartitions.get(classEntry);
+
+			if (partition != null) {
+				detachedClasses.addAll(partition);
+			}
+		}
+
+		for (ClassEntry classEntry : detachedClasses) {
+			if (!classEntries.contains(classEntry) && entryIndex.hasClass(classEntry)) {
+				addConnectionsTo(classEntry, classEntries, entryIndex, inheritanceIndex);
+			}
+		}
+
+		updatePartitions(classEntries, entryIndex);
+	}
+
+	/**
+	 * Adds the connections of a class to its parents and its outer class among the given classes, which were
+	 * removed with them and are not found from their side.
+	 */
+	private void addConnectionsTo(ClassEntry entry, Set<ClassEntry> classEntries, EntryIndex entryIndex, InheritanceIndex inheritanceIndex) {
+		for (ClassEntry parent : inheritanceIndex.getParents(entry)) {
+			AccessFlags parentAcc = entryIndex.getClassAccess(parent);
+
+			if (classEntries.contains(parent) && parentAcc != null && !parentAcc.isPublic() && !parentAcc.isPrivate()) {
+				addConnection(entry, parent);
+			}
+		}
+
+		ClassEntry outerClass = entry.getOuterClass();
+
+		if (outerClass != null && classEntries.contains(outerClass)) {
+			addConnection(entry, outerClass);
+		}
+	}
+
+	/**
+	 * Finds the partitions again around the given classes. Only the partitions they were in can split, and only
+	 * those they are connected to now can join them, so the partitions are found by walking the connections from
+	 * the classes of the former.
+	 */
+	private void updatePartitions(Set<ClassEntry> classEntries, EntryIndex entryIndex) {
+		Set<ClassEntry> affectedClasses = new HashSet<>();
+
+		for (ClassEntry classEntry : classEntries) {
+			Set<ClassEntry> partition = classPartitions.remove(classEntry);
+
+			if (partition != null && partitions.remove(partition)) {
+				affectedClasses.addAll(partition);
+			}
+
+			affectedClasses.add(classEntry);
+		}
+
+		Set<ClassEntry> visited = new HashSet<>();
+
+		for (ClassEntry start : affectedClasses) {
+			if (!entryIndex.hasClass(start) || !visited.add(start)) {
+				continue;
+			}
+
+			Set<ClassEntry> partition = new HashSet<>();
+			Deque<ClassEntry> queue = new ArrayDeque<>();
+			queue.add(start);
+
+			while (!queue.isEmpty()) {
+				ClassEntry classEntry = queue.poll();
+				partition.add(classEntry);
+				Set<ClassEntry> formerPartition = classPartitions.put(classEntry, partition);
+
+				if (formerPartition != null && formerPartition != partition) {
+					// a partition which was joined to the affected ones
+					partitions.remove(formerPartition);
+				}
+
+				for (ClassEntry connected : connections.getOrDefault(classEntry, List.of())) {
+					if (entryIndex.hasClass(connected) && visited.add(connected)) {
+						queue.add(connected);
+					}
+				}
+			}
+
+			partitions.add(partition);
+		}
+	}
+
 	@Override
 	public void processIndex(JarIndex index) {
 		EntryIndex entryIndex = index.getEntryIndex();
@@ -1,10 +1,24 @@
 package cuchaz.enigma.analysis.index;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.Nullable;
 
 import cuchaz.enigma.analysis.EntryReference;
 import cuchaz.enigma.analysis.ReferenceTargetType;
@@ -33,6 +47,27 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 	private ConcurrentMap<ClassEntry, List<EntryReference<ClassEntry, FieldDefEntry>>> fieldTypeReferences = new ConcurrentHashMap<>();
 	private ConcurrentMap<ClassEntry, List<EntryReference<ClassEntry, MethodDefEntry>>> methodTypeReferences = new ConcurrentHashMap<>();
 
+	// the maps above are frozen into this at the end of processIndex, after which they only hold the references
+	// of the classes indexed again since, which hide what was frozen for them
+	@Nullable
+	private volatile Frozen frozen;
+	@Nullable
+	private EntryPool entryPool;
+	private int frozenSize;
+	private final Set<ClassEntry> retractedClasses = ConcurrentHashMap.newKeySet();
+	private final ConcurrentMap<ClassEntry, ReferenceBuffer> reindexedClasses = new ConcurrentHashMap<>();
+	private int reindexedSize;
+
+	// references to shared targets like java/lang/Object are collected per thread while classes are indexed in
+	// parallel, instead of contending on a single list, and merged into the maps above once indexing finished
+	private final Queue<ReferenceBuffer> buffers = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<ReferenceBuffer> localBuffer = ThreadLocal.withInitial(() -> {
+		ReferenceBuffer buffer = new ReferenceBuffer();
+		buffers.add(buffer);
+		return buffer;
+	});
+	private volatile boolean indexing;
+
 	@Override
 	public void indexMethod(MethodDefEntry methodEntry) {
 		indexMethodDescriptor(methodEntry, methodEntry.getDesc());
@@ -49,7 +84,7 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 	private void indexMethodTypeDescriptor(MethodDefEntry method, TypeDescriptor typeDescriptor) {
 		if (typeDescriptor.isType()) {
 			ClassEntry referencedClass = typeDescriptor.getTypeEntry();
-			JarIndex.synchronizedAdd(methodTypeReferences, referencedClass, new EntryReference<>(referencedClass, referencedClass.getName(), method));
+			buffer().methodTypeReferences.add(new EntryReference<>(referencedClass, referencedClass.getName(), method));
 		} else if (typeDescriptor.isArray()) {
 			indexMethodTypeDescriptor(method, typeDescriptor.getArrayType());
 		}
@@ -63,7 +98,7 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 	private void indexFieldTypeDescriptor(FieldDefEntry field, TypeDescriptor typeDescriptor) {
 		if (typeDescriptor.isType()) {
 			ClassEntry referencedClass = typeDescriptor.getTypeEntry();
-			JarIndex.synchronizedAdd(fieldTypeReferences, referencedClass, new EntryReference<>(referencedClass, referencedClass.getName(), field));
+			buffer().fieldTypeReferences.add(new EntryReference<>(referencedClass, referencedClass.getName(), field));
 		} else if (typeDescriptor.isArray()) {
 			indexFieldTypeDescriptor(field, typeDescriptor.getArrayType());
 		}
@@ -71,23 +106,24 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 
 	@Override
 	public void indexClassReference(MethodDefEntry callerEntry, ClassEntry referencedEntry, ReferenceTargetType targetType) {
-		JarIndex.synchronizedAdd(referencesToClasses, referencedEntry, new EntryReference<>(referencedEntry, referencedEntry.getName(), callerEntry, targetType));
+		buffer().referencesToClasses.add(new EntryReference<>(referencedEntry, referencedEntry.getName(), callerEntry, targetType));
 	}
 
 	@Override
 	public void indexMethodReference(MethodDefEntry callerEntry, MethodEntry referencedEntry, ReferenceTargetType targetType) {
-		JarIndex.synchronizedAdd(referencesToMethods, referencedEntry, new EntryReference<>(referencedEntry, referencedEntry.getName(), callerEntry, targetType));
-		JarIndex.synchronizedAdd(methodReferences, callerEntry, referencedEntry);
+		// the methods referenced by each method are taken from these when they are merged
+		ReferenceBuffer buffer = buffer();
+		buffer.referencesToMethods.add(new EntryReference<>(referencedEntry, referencedEntry.getName(), callerEntry, targetType));
 
 		if (referencedEntry.isConstructor()) {
 			ClassEntry referencedClass = referencedEntry.getParent();
-			JarIndex.synchronizedAdd(referencesToClasses, referencedClass, new EntryReference<>(referencedClass, referencedEntry.getName(), callerEntry, targetType));
+			buffer.referencesToClasses.add(new EntryReference<>(referencedClass, referencedEntry.getName(), callerEntry, targetType));
 		}
 	}
 
 	@Override
 	public void indexFieldReference(MethodDefEntry callerEntry, FieldEntry referencedEntry, ReferenceTargetType targetType) {
-		JarIndex.synchronizedAdd(referencesToFields, referencedEntry, new EntryReference<>(referencedEntry, referencedEntry.getName(), callerEntry, targetType));
+		buffer().referencesToFields.add(new EntryReference<>(referencedEntry, referencedEntry.getName(), callerEntry, targetType));
 	}
 
 	@Override
@@ -103,6 +139,85 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 		indexMethodDescriptor(callerEntry, lambda.getInstantiatedMethodType());
 	}
 
+	private ReferenceBuffer buffer() {
+		assert indexing : "references are only indexed between startIndexing and finishIndexing";
+		return localBuffer.get();
+	}
+
+	/**
+	 * Called before classes are indexed, the references they make are only visible once indexing finished.
+	 */
+	void startIndexing() {
+		indexing = true;
+	}
+
+	/**
+	 * Merges the references collected by the indexing threads into the maps, once they all finished.
+	 */
+	void finishIndexing() {
+		indexing = false;
+
+		if (frozen != null) {
+			// only the re-indexed classes are in the buffers, which are kept by class to be remapped later
+			buffers.forEach(this::addReindexed);
+		} else {
+			mergeValues(methodReferences, buffers.parallelStream().flatMap(buffer -> buffer.referencesToMethods.stream()).map(reference -> Map.<MethodEntry, MethodEntry>entry(reference.context, reference.entry)));
+			merge(referencesToMethods, buffers.parallelStream().flatMap(buffer -> buffer.referencesToMethods.stream()));
+			merge(referencesToClasses, buffers.parallelStream().flatMap(buffer -> buffer.referencesToClasses.stream()));
+			merge(referencesToFields, buffers.parallelStream().flatMap(buffer -> buffer.referencesToFields.stream()));
+			merge(fieldTypeReferences, buffers.parallelStream().flatMap(buffer -> buffer.fieldTypeReferences.stream()));
+			merge(methodTypeReferences, buffers.parallelStream().flatMap(buffer -> buffer.methodTypeReferences.stream()));
+		}
+
+		// the buffers stay with their threads for the next time classes are indexed, but not their references
+		buffers.forEach(ReferenceBuffer::clear);
+	}
+
+	/**
+	 * Groups the references by their entry without locking, each thread of the stream groups its own part.
+	 */
+	private static <E extends Entry<?>, C extends Entry<?>> void merge(ConcurrentMap<E, List<EntryReference<E, C>>> multimap, Stream<EntryReference<E, C>> references) {
+		Map<E, List<EntryReference<E, C>>> grouped = references.collect(Collectors.groupingBy(reference -> reference.entry, Collectors.toCollection(ArrayList::new)));
+
+		grouped.forEach((entry, entryReferences) -> multimap.merge(entry, entryReferences, (existing, added) -> {
+			existing.addAll(added);
+			return existing;
+		}));
+	}
+
+	private static <K, V> void mergeValues(ConcurrentMap<K, List<V>> multimap, Stream<Map.Entry<K, V>> values) {
+		Map<K, List<V>> grouped = values.collect(Collectors.groupingBy(Map.Entry::getKey, Collectors.mapping(Map.Entry::getValue, Collectors.toCollection(ArrayList::new))));
+
+		grouped.forEach((key, keyValues) -> multimap.merge(key, keyValues, (existing, added) -> {
+			existing.addAll(added);
+			return existing;
+		}));
+	}
+
+	/**
+	 * Adds the references collected while classes were indexed again to the maps, and to the references of the
+	 * class each was made from.
+	 */
+	private void addReindexed(ReferenceBuffer buffer) {
+		for (EntryReference<MethodEntry, MethodDefEntry> reference : buffer.referencesToMethods) {
+			JarIndex.synchronizedAdd(methodReferences, reference.context, reference.entry);
+		}
+
+		addAll(referencesToMethods, buffer.referencesToMethods, reindexed -> reindexed.referencesToMethods);
+		addAll(referencesToClasses, buffer.referencesToClasses, reindexed -> reindexed.referencesToClasses);
+		addAll(referencesToFields, buffer.referencesToFields, reindexed -> reindexed.referencesToFields);
+		addAll(fieldTypeReferences, buffer.fieldTypeReferences, reindexed -> reindexed.fieldTypeReferences);
+		addAll(methodTypeReferences, buffer.methodTypeReferences, reindexed -> reindexed.methodTypeReferences);
+	}
+
+	private <E extends Entry<?>, C extends Entry<?>> void addAll(ConcurrentMap<E, List<EntryReference<E, C>>> multimap, List<EntryReference<E, C>> references, Function<ReferenceBuffer, List<EntryReference<E, C>>> reindexedList) {
+		for (EntryReference<E, C> reference : references) {
+			JarIndex.synchronizedAdd(multimap, reference.entry, reference);
+			reindexedList.apply(reindexedClasses.computeIfAbsent(reference.context.getContainingClass(), classEntry -> new ReferenceBuffer())).add(reference);
+			reindexedSize++;
+		}
+	}
+
 	@Override
 	public void processIndex(JarIndex index) {
 		methodReferences = remapReferences(index, methodReferences);
@@ -111,6 +226,208 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 		referencesToFields = remapReferencesTo(index, referencesToFields);
 		fieldTypeReferences = remapReferencesTo(index, fieldTypeReferences);
 		methodTypeReferences = remapReferencesTo(index, methodTypeReferences);
+		freeze(index.getEntryIndex().getEntryPool());
+	}
+
+	@Override
+	public void removeClasses(Set<ClassEntry> classEntries) {
+		if (frozen == null) {
+			extract(methodReferences, (caller, referenced) -> classEntries.contains(caller.getParent()));
+			extract(referencesToMethods, (entry, reference) -> classEntries.contains(reference.context.getContainingClass()));
+			extract(referencesToClasses, (entry, reference) -> classEntries.contains(reference.context.getContainingClass()));
+			extract(referencesToFields, (entry, reference) -> classEntries.contains(reference.context.getContainingClass()));
+			extract(fieldTypeReferences, (entry, reference) -> classEntries.contains(reference.context.getContainingClass()));
+			extract(methodTypeReferences, (entry, reference) -> classEntries.contains(reference.context.getContainingClass()));
+			return;
+		}
+
+		for (ClassEntry classEntry : classEntries) {
+			retractedClasses.add(classEntry);
+			removeReindexed(classEntry);
+		}
+	}
+
+	private void removeReindexed(ClassEntry classEntry) {
+		ReferenceBuffer reindexed = reindexedClasses.remove(classEntry);
+
+		if (reindexed == null) {
+			return;
+		}
+
+		for (EntryReference<MethodEntry, MethodDefEntry> reference : reindexed.referencesToMethods) {
+			methodReferences.remove(reference.context);
+		}
+
+		removeAll(referencesToMethods, reindexed.referencesToMethods, classEntry);
+		removeAll(referencesToClasses, reindexed.referencesToClasses, classEntry);
+		removeAll(referencesToFields, reindexed.referencesToFields, classEntry);
+		removeAll(fieldTypeReferences, reindexed.fieldTypeReferences, classEntry);
+		removeAll(methodTypeReferences, reindexed.methodTypeReferences, classEntry);
+	}
+
+	private <E extends Entry<?>, C extends Entry<?>> void removeAll(ConcurrentMap<E, List<EntryReference<E, C>>> multimap, List<EntryReference<E, C>> references, ClassEntry classEntry) {
+		for (EntryReference<E, C> reference : references) {
+			multimap.computeIfPresent(reference.entry, (entry, row) -> {
+				row.removeIf(rowReference -> rowReference.context.getContainingClass().equals(classEntry));
+				return row.isEmpty() ? null : row;
+			});
+		}
+
+		reindexedSize -= references.size();
+	}
+
+	@Override
+	public void processClasses(JarIndex index, Set<ClassEntry> classEntries) {
+		if (frozen == null) {
+			processIndex(index);
+			return;
+		}
+
+		// the re-indexed references were added unresolved, so only those need to be remapped
+		for (ClassEntry classEntry : classEntries) {
+			ReferenceBuffer reindexed = reindexedClasses.get(classEntry);
+
+			if (reindexed != null) {
+				removeReindexed(classEntry);
+				addReindexed(remap(index, reindexed));
+			}
+		}
+
+		// the frozen tables are only built again once the references kept apart from them grew large enough,
+		// so that updating a few classes doesn't go through the references of the whole jar
+		if (reindexedSize > frozenSize / 4) {
+			refreeze();
+		}
+	}
+
+	private ReferenceBuffer remap(JarIndex index, ReferenceBuffer buffer) {
+		ReferenceBuffer remapped = new ReferenceBuffer();
+		buffer.referencesToMethods.forEach(reference -> remapped.referencesToMethods.add(remap(index, reference)));
+		buffer.referencesToClasses.forEach(reference -> remapped.referencesToClasses.add(remap(index, reference)));
+		buffer.referencesToFields.forEach(reference -> remapped.referencesToFields.add(remap(index, reference)));
+		buffer.fieldTypeReferences.forEach(reference -> remapped.fieldTypeReferences.add(remap(index, reference)));
+		buffer.methodTypeReferences.forEach(reference -> remapped.methodTypeReferences.add(remap(index, reference)));
+		return remapped;
+	}
+
+	/**
+	 * Gets the references to fields, methods and classes made from a class which was indexed again, to update
+	 * what depends on them without going through the references of the whole jar.
+	 */
+	List<EntryReference<?, ?>> getReindexedReferences(ClassEntry classEntry) {
+		ReferenceBuffer reindexed = reindexedClasses.get(classEntry);
+
+		if (reindexed == null) {
+			return List.of();
+		}
+
+		List<EntryReference<?, ?>> references = new ArrayList<>();
+		references.addAll(reindexed.referencesToFields);
+		references.addAll(reindexed.referencesToMethods);
+		references.addAll(reindexed.fieldTypeReferences);
+		references.addAll(reindexed.methodTypeReferences);
+		return references;
+	}
+
+	private void freeze(EntryPool entryPool) {
+		this.entryPool = entryPool;
+		frozenSize = 0;
+
+		for (Map<?, ? extends List<?>> multimap : List.of(referencesToMethods, referencesToClasses, referencesToFields, fieldTypeReferences, methodTypeReferences)) {
+			multimap.values().forEach(row -> frozenSize += row.size());
+		}
+
+		frozen = new Frozen(
+				EntryTable.freeze(entryPool, methodReferences),
+				ReferenceTable.freeze(entryPool, referencesToMethods),
+				ReferenceTable.freeze(entryPool, referencesToClasses),
+				ReferenceTable.freeze(entryPool, referencesToFields),
+				ReferenceTable.freeze(entryPool, fieldTypeReferences),
+				ReferenceTable.freeze(entryPool, methodTypeReferences)
+		);
+
+		methodReferences = new ConcurrentHashMap<>();
+		referencesToMethods = new ConcurrentHashMap<>();
+		referencesToClasses = new ConcurrentHashMap<>();
+		referencesToFields = new ConcurrentHashMap<>();
+		fieldTypeReferences = new ConcurrentHashMap<>();
+		methodTypeReferences = new ConcurrentHashMap<>();
+		retractedClasses.clear();
+		reindexedClasses.clear();
+		reindexedSize = 0;
+	}
+
+	/**
+	 * Freezes the frozen tables again together with the references of the classes indexed again since.
+	 */
+	private void refreeze() {
+		Frozen frozen = this.frozen;
+
+		if (frozen == null || retractedClasses.isEmpty() && reindexedClasses.isEmpty()) {
+			return;
+		}
+
+		methodReferences = combine(frozen.methodReferences().asMap(), methodReferences, (caller, referenced) -> caller.getContainingClass());
+		referencesToMethods = combine(frozen.referencesToMethods().asMap(), referencesToMethods, (entry, reference) -> reference.context == null ? null : reference.context.getContainingClass());
+		referencesToClasses = combine(frozen.referencesToClasses().asMap(), referencesToClasses, (entry, reference) -> reference.context == null ? null : reference.context.getContainingClass());
+		referencesToFields = combine(frozen.referencesToFields().asMap(), referencesToFields, (entry, reference) -> reference.context == null ? null : reference.context.getContainingClass());
+		fieldTypeReferences = combine(frozen.fieldTypeReferences().asMap(), fieldTypeReferences, (entry, reference) -> reference.context == null ? null : reference.context.getContainingClass());
+		methodTypeReferences = combine(frozen.methodTypeReferences().asMap(), methodTypeReferences, (entry, reference) -> reference.context == null ? null : reference.context.getContainingClass());
+		freeze(entryPool);
+	}
+
+	/**
+	 * @param contextClass gets the class a value of a row was indexed from
+	 */
+	private <K, V> ConcurrentMap<K, List<V>> combine(Map<K, Collection<V>> frozenRows, ConcurrentMap<K, List<V>> reindexed, BiFunction<K, V, ClassEntry> contextClass) {
+		ConcurrentMap<K, List<V>> multimap = new ConcurrentHashMap<>();
+
+		frozenRows.forEach((key, row) -> {
+			List<V> values = new ArrayList<>(row.size());
+
+			for (V value : row) {
+				ClassEntry classEntry = contextClass.apply(key, value);
+
+				if (classEntry == null || !retractedClasses.contains(classEntry)) {
+					values.add(value);
+				}
+			}
+
+			if (!values.isEmpty()) {
+				multimap.put(key, values);
+			}
+		});
+
+		reindexed.forEach((key, row) -> row.forEach(value -> JarIndex.synchronizedAdd(multimap, key, value)));
+		return multimap;
+	}
+
+	/**
+	 * Removes the values matching the predicate from the multimap and returns them.
+	 */
+	private static <K, V> ConcurrentMap<K, List<V>> extract(ConcurrentMap<K, List<V>> multimap, BiPredicate<K, V> predicate) {
+		ConcurrentMap<K, List<V>> extracted = new ConcurrentHashMap<>();
+		Iterator<Map.Entry<K, List<V>>> iterator = multimap.entrySet().iterator();
+
+		while (iterator.hasNext()) {
+			Map.Entry<K, List<V>> entry = iterator.next();
+			List<V> values = entry.getValue();
+
+			values.removeIf(value -> {
+				if (predicate.test(entry.getKey(), value)) {
+					JarIndex.synchronizedAdd(extracted, entry.getKey(), value);
+					return true;
+				}
+
+				return false;
+			});
+
+			if (values.isEmpty()) {
+				iterator.remove();
+			}
+		}
+
+		return extracted;
 	}
 
 	private <K extends Entry<?>, V extends Entry<?>> ConcurrentMap<K, List<V>> remapReferences(JarIndex index, ConcurrentMap<K, List<V>> multimap) {
@@ -126,14 +443,9 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 	}
 
 	private <E extends Entry<?>, C extends Entry<?>> ConcurrentMap<E, List<EntryReference<E, C>>> remapReferencesTo(JarIndex index, ConcurrentMap<E, List<EntryReference<E, C>>> multimap) {
+		// every reference is keyed by its own entry, so the remapped reference carries its remapped key
 		ConcurrentMap<E, List<EntryReference<E, C>>> resolved = new ConcurrentHashMap<>();
-
-		multimap.entrySet().parallelStream().forEach(entry -> {
-			for (EntryReference<E, C> value : entry.getValue()) {
-				JarIndex.synchronizedAdd(resolved, remap(index, entry.getKey()), remap(index, value));
-			}
-		});
-
+		merge(resolved, multimap.values().parallelStream().flatMap(List::stream).map(reference -> remap(index, reference)));
 		return resolved;
 	}
 
@@ -145,7 +457,51 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 		return index.getEntryResolver().resolveFirstReference(reference, ResolutionStrategy.RESOLVE_CLOSEST);
 	}
 
+	void writeSnapshot(IndexSnapshot.Output out) throws IOException {
+		refreeze();
+		Frozen frozen = this.frozen;
+
+		if (frozen != null) {
+			out.writeEntryMultimap(frozen.methodReferences().asMap());
+			out.writeReferenceMultimap(frozen.referencesToMethods().asMap());
+			out.writeReferenceMultimap(frozen.referencesToClasses().asMap());
+			out.writeReferenceMultimap(frozen.referencesToFields().asMap());
+			out.writeReferenceMultimap(frozen.fieldTypeReferences().asMap());
+			out.writeReferenceMultimap(frozen.methodTypeReferences().asMap());
+			return;
+		}
+
+		out.writeEntryMultimap(methodReferences);
+		out.writeReferenceMultimap(referencesToMethods);
+		out.writeReferenceMultimap(referencesToClasses);
+		out.writeReferenceMultimap(referencesToFields);
+		out.writeReferenceMultimap(fieldTypeReferences);
+		out.writeReferenceMultimap(methodTypeReferences);
+	}
+
+	void readSnapshot(IndexSnapshot.Input in, EntryPool entryPool) throws IOException {
+		in.readEntryMultimap(methodReferences);
+		in.readReferenceMultimap(referencesToMethods);
+		in.readReferenceMultimap(referencesToClasses);
+		in.readReferenceMultimap(referencesToFields);
+		in.readReferenceMultimap(fieldTypeReferences);
+		in.readReferenceMultimap(methodTypeReferences);
+		freeze(entryPool);
+	}
+
 	public Collection<MethodEntry> getMethodsReferencedBy(MethodEntry entry) {
+		Frozen frozen = this.frozen;
+
+		if (frozen != null) {
+			List<MethodEntry> reindexed = methodReferences.get(entry);
+
+			if (reindexed != null || retractedClasses.contains(entry.getContainingClass())) {
+				return reindexed == null ? Collections.emptyList() : reindexed;
+			}
+
+			return frozen.methodReferences().get(entry);
+		}
+
 		return methodReferences.getOrDefault(entry, Collections.emptyList());
 	}
 
@@ -155,6 +511,12 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 	}
 
 	public Collection<EntryReference<FieldEntry, MethodDefEntry>> getReferencesToField(FieldEntry entry) {
+		Frozen frozen = this.frozen;
+
+		if (frozen != null) {
+			return get(frozen.referencesToFields().get(entry), referencesToFields.get(entry));
+		}
+
 		return referencesToFields.getOrDefault(entry, Collections.emptyList());
 	}
 
@@ -164,6 +526,12 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 	}
 
 	public Collection<EntryReference<ClassEntry, MethodDefEntry>> getReferencesToClass(ClassEntry entry) {
+		Frozen frozen = this.frozen;
+
+		if (frozen != null) {
+			return get(frozen.referencesToClasses().get(entry), referencesToClasses.get(entry));
+		}
+
 		return referencesToClasses.getOrDefault(entry, Collections.emptyList());
 	}
 
@@ -173,6 +541,12 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 	}
 
 	public Collection<EntryReference<MethodEntry, MethodDefEntry>> getReferencesToMethod(MethodEntry entry) {
+		Frozen frozen = this.frozen;
+
+		if (frozen != null) {
+			return get(frozen.referencesToMethods().get(entry), referencesToMethods.get(entry));
+		}
+
 		return referencesToMethods.getOrDefault(entry, Collections.emptyList());
 	}
 
@@ -182,6 +556,12 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 	}
 
 	public Collection<EntryReference<ClassEntry, FieldDefEntry>> getFieldTypeReferencesToClass(ClassEntry entry) {
+		Frozen frozen = this.frozen;
+
+		if (frozen != null) {
+			return get(frozen.fieldTypeReferences().get(entry), fieldTypeReferences.get(entry));
+		}
+
 		return fieldTypeReferences.getOrDefault(entry, Collections.emptyList());
 	}
 
@@ -191,6 +571,12 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 	}
 
 	public Collection<EntryReference<ClassEntry, MethodDefEntry>> getMethodTypeReferencesToClass(ClassEntry entry) {
+		Frozen frozen = this.frozen;
+
+		if (frozen != null) {
+			return get(frozen.methodTypeReferences().get(entry), methodTypeReferences.get(entry));
+		}
+
 		return methodTypeReferences.getOrDefault(entry, Collections.emptyList());
 	}
 
@@ -198,4 +584,58 @@ public class ReferenceIndex implements JarIndexer, ReferenceIndexView {
 	public Collection<? extends EntryReferenceView> getMethodTypeReferencesToClass(ClassEntryView entry) {
 		return getMethodTypeReferencesToClass((ClassEntry) entry);
 	}
+
+	/**
+	 * Combines a frozen row with the references of the classes indexed again since it was frozen.
+	 */
+	private <E extends Entry<?>, C extends Entry<?>> Collection<EntryReference<E, C>> get(List<EntryReference<E, C>> frozenRow, @Nullable List<EntryReference<E, C>> reindexedRow) {
+		if (retractedClasses.isEmpty() && reindexedRow == null) {
+			return frozenRow;
+		}
+
+		List<EntryReference<E, C>> row = new ArrayList<>(frozenRow.size());
+
+		for (EntryReference<E, C> reference : frozenRow) {
+			if (reference.context == null || !retractedClasses.contains(reference.context.getContainingClass())) {
+				row.add(reference);
+			}
+		}
+
+		if (reindexedRow != null) {
+			synchronized (reindexedRow) {
+				row.addAll(reindexedRow);
+			}
+		}
+
+		return row;
+	}
+
+	private record Frozen(
+			EntryTable<MethodEntry, MethodEntry> methodReferences,
+			ReferenceTable<MethodEntry, MethodDefEntry> referencesToMethods,
+			ReferenceTable<ClassEntry, MethodDefEntry> referencesToClasses,
+			ReferenceTable<FieldEntry, MethodDefEntry> referencesToFields,
+			ReferenceTable<ClassEntry, FieldDefEntry> fieldTypeReferences,
+			ReferenceTable<ClassEntry, MethodDefEntry> methodTypeReferences
+	) {
+	}
+
+	private static final class ReferenceBuffer {
+		private List<EntryReference<MethodEntry, MethodDefEntry>> referencesToMethods = new ArrayList<>();
+		private List<EntryReference<ClassEntry, MethodDefEntry>> referencesToClasses = new ArrayList<>();
+		private List<EntryReference<FieldEntry, MethodDefEntry>> referencesToFields = new ArrayList<>();
+		private List<EntryReference<ClassEntry, FieldDefEntry>> fieldTypeReferences = new ArrayList<>();
+		private List<EntryReference<ClassEntry, MethodDefEntry>> methodTypeReferences = new ArrayList<>();
+
+		/**
+		 * Drops the references, along with the capacity the lists grew to.
+		 */
+		private void clear() {
+			referencesToMethods = new ArrayList<>();
+			referencesToClasses = new ArrayList<>();
+			referencesToFields = new ArrayList<>();
+			fieldTypeReferences = new ArrayList<>();
+			methodTypeReferences = new ArrayList<>();
+		}
+	}
 }
@@ -0,0 +1,171 @@
+package cuchaz.enigma.analysis.index;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.ReferenceTargetType;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+
+/**
+ * A read-only multimap from entries to the references to them, stored as compressed sparse rows indexed by
+ * {@link EntryPool} id. The references to the entry with id {@code i} are at {@code offsets[i]} (inclusive)
+ * to {@code offsets[i + 1]} (exclusive) of the parallel reference arrays, and are only turned back into
+ * {@link EntryReference} objects when they are looked up.
+ */
+final class ReferenceTable<E extends Entry<?>, C extends Entry<?>> {
+	private static final byte NAMED = 1;
+	private static final byte TARGET_UNINITIALIZED = 2;
+	private static final byte TARGET_CLASS_TYPE = 4;
+
+	private final EntryPool entryPool;
+	private final int[] offsets;
+	private final int[] entries;
+	private final int[] contexts;
+	private final byte[] flags;
+	// the pool id of the target class of class type references, only allocated if there are any
+	private final int[] targetClasses;
+	private final Entry<?>[] contextTable;
+
+	private ReferenceTable(EntryPool entryPool, int[] offsets, int[] entries, int[] contexts, byte[] flags, int[] targetClasses, Entry<?>[] contextTable) {
+		this.entryPool = entryPool;
+		this.offsets = offsets;
+		this.entries = entries;
+		this.contexts = contexts;
+		this.flags = flags;
+		this.targetClasses = targetClasses;
+		this.contextTable = contextTable;
+	}
+
+	static <E extends Entry<?>, C extends Entry<?>> ReferenceTable<E, C> freeze(EntryPool entryPool, Map<E, List<EntryReference<E, C>>> multimap) {
+		int referenceCount = 0;
+		boolean hasClassTypes = false;
+
+		for (Map.Entry<E, List<EntryReference<E, C>>> row : multimap.entrySet()) {
+			entryPool.intern(row.getKey());
+			referenceCount += row.getValue().size();
+
+			for (EntryReference<E, C> reference : row.getValue()) {
+				entryPool.intern(reference.entry);
+
+				if (reference.targetType instanceof ReferenceTargetType.ClassType classType) {
+					entryPool.intern(classType.getEntry());
+					hasClassTypes = true;
+				}
+			}
+		}
+
+		int[] offsets = new int[entryPool.size() + 1];
+
+		for (Map.Entry<E, List<EntryReference<E, C>>> row : multimap.entrySet()) {
+			offsets[entryPool.getId(row.getKey()) + 1] += row.getValue().size();
+		}
+
+		for (int i = 1; i < offsets.length; i++) {
+			offsets[i] += offsets[i - 1];
+		}
+
+		int[] cursors = offsets.clone();
+		int[] entries = new int[referenceCount];
+		int[] contexts = new int[referenceCount];
+		byte[] flags = new byte[referenceCount];
+		int[] targetClasses = hasClassTypes ? new int[referenceCount] : null;
+		Map<Entry<?>, Integer> contextIds = new HashMap<>();
+
+		for (Map.Entry<E, List<EntryReference<E, C>>> row : multimap.entrySet()) {
+			int id = entryPool.getId(row.getKey());
+
+			for (EntryReference<E, C> reference : row.getValue()) {
+				int index = cursors[id]++;
+				entries[index] = entryPool.getId(reference.entry);
+				contexts[index] = reference.context == null ? -1 : contextIds.computeIfAbsent(reference.context, context -> contextIds.size());
+				byte flag = reference.isNamed() ? NAMED : 0;
+
+				if (reference.targetType instanceof ReferenceTargetType.ClassType classType) {
+					flag |= TARGET_CLASS_TYPE;
+					targetClasses[index] = entryPool.getId(classType.getEntry());
+				} else if (reference.targetType.getKind() == ReferenceTargetType.Kind.UNINITIALIZED) {
+					flag |= TARGET_UNINITIALIZED;
+				}
+
+				flags[index] = flag;
+			}
+		}
+
+		Entry<?>[] contextTable = new Entry<?>[contextIds.size()];
+		contextIds.forEach((context, contextId) -> contextTable[contextId] = context);
+
+		return new ReferenceTable<>(entryPool, offsets, entries, contexts, flags, targetClasses, contextTable);
+	}
+
+	List<EntryReference<E, C>> get(Entry<?> entry) {
+		int id = entryPool.getId(entry);
+
+		if (id < 0 || id >= offsets.length - 1 || offsets[id] == offsets[id + 1]) {
+			return Collections.emptyList();
+		}
+
+		return new Row(offsets[id], offsets[id + 1]);
+	}
+
+	/**
+	 * @return every non-empty row keyed by its entry, to write or rebuild the whole table
+	 */
+	@SuppressWarnings("unchecked")
+	Map<E, Collection<EntryReference<E, C>>> asMap() {
+		Map<E, Collection<EntryReference<E, C>>> map = new LinkedHashMap<>();
+
+		for (int id = 0; id < offsets.length - 1; id++) {
+			if (offsets[id] != offsets[id + 1]) {
+				map.put((E) entryPool.get(id), new Row(offsets[id], offsets[id + 1]));
+			}
+		}
+
+		return map;
+	}
+
+	private final class Row extends AbstractList<EntryReference<E, C>> {
+		private final int start;
+		private final int end;
+
+		private Row(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public EntryReference<E, C> get(int index) {
+			if (index < 0 || index >= end - start) {
+				throw new IndexOutOfBoundsException(index);
+			}
+
+			int i = start + index;
+			E entry = (E) entryPool.get(entries[i]);
+			C context = contexts[i] < 0 ? null : (C) contextTable[contexts[i]];
+			ReferenceTargetType targetType;
+
+			if ((flags[i] & TARGET_CLASS_TYPE) != 0) {
+				targetType = ReferenceTargetType.classType((ClassEntry) entryPool.get(targetClasses[i]));
+			} else if ((flags[i] & TARGET_UNINITIALIZED) != 0) {
+				targetType = ReferenceTargetType.uninitialized();
+			} else {
+				targetType = ReferenceTargetType.none();
+			}
+
+			// any non-empty source name that is not a constructor keyword marks the reference as named
+			return new EntryReference<>(entry, (flags[i] & NAMED) != 0 ? entry.getName() : null, context, targetType);
+		}
+
+		@Override
+		public int size() {
+			return end - start;
+		}
+	}
+}
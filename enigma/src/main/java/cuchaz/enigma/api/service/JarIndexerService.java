@@ -26,18 +26,46 @@ public interface JarIndexerService extends EnigmaService {
 
 	/**
 	 * Creates multiple thread-local {@code ClassVisitor}s, runs each on a subset of classes on their own thread, and
-	 * combines them at the end.
+	 * combines them at the end. When the jar is indexed, the visitors run in the same pass over the classes as the
+	 * indexing, next to the visitors of the other such plugins.
 	 */
 	static <V extends ClassVisitor> JarIndexerService fromVisitorsInParallel(Supplier<V> visitorCreator, Consumer<Collection<V>> combiner) {
-		return (scope, classProvider, jarIndex) -> {
+		return new ClassVisitorIndexer<V>() {
+			@Override
+			public V createVisitor() {
+				return visitorCreator.get();
+			}
+
+			@Override
+			public void combine(Collection<V> visitors) {
+				combiner.accept(visitors);
+			}
+		};
+	}
+
+	/**
+	 * An indexer made of {@code ClassVisitor}s, which is run in the pass that indexes the jar, so that each class is
+	 * only read once for all such indexers. Each thread of the pass creates its own visitor, which visits classes
+	 * one after another, and the visitors are combined once all classes were visited.
+	 *
+	 * <p>The classes are visited with their code and stack map frames, but the index is not complete until the
+	 * visitors are combined.
+	 */
+	interface ClassVisitorIndexer<V extends ClassVisitor> extends JarIndexerService {
+		V createVisitor();
+
+		void combine(Collection<V> visitors);
+
+		@Override
+		default void acceptJar(Set<String> scope, ClassProvider classProvider, JarIndexView jarIndex) {
 			CopyOnWriteArrayList<V> allVisitors = new CopyOnWriteArrayList<>();
 			ThreadLocal<V> visitors = ThreadLocal.withInitial(() -> {
-				V visitor = visitorCreator.get();
+				V visitor = createVisitor();
 				allVisitors.add(visitor);
 				return visitor;
 			});
 			scope.parallelStream().forEach(className -> classProvider.get(className).accept(visitors.get()));
-			combiner.accept(allVisitors);
-		};
+			combine(allVisitors);
+		}
 	}
 }
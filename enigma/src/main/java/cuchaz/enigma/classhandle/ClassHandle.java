@@ -60,6 +60,16 @@ public interface ClassHandle extends AutoCloseable {
 	 */
 	CompletableFuture<Result<Source, ClassHandleError>> getUncommentedSource();
 
+	/**
+	 * Sets how soon this handle needs its class, which moves the pending work for the class ahead of or behind
+	 * the work for other classes. The class is worked on with the highest priority of its handles.
+	 *
+	 * Does nothing if the class handle is closed.
+	 *
+	 * @param priority the priority of this handle, {@link DecompilePriority#VISIBLE} by default
+	 */
+	void setPriority(DecompilePriority priority);
+
 	void invalidate();
 
 	void invalidateMapped();
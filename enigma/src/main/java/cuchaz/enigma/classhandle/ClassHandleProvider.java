@@ -2,17 +2,22 @@ package cuchaz.enigma.classhandle;
 
 import static cuchaz.enigma.utils.Utils.withLock;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -23,25 +28,32 @@ import javax.swing.SwingUtilities;
 import org.jetbrains.annotations.Nullable;
 
 import cuchaz.enigma.EnigmaProject;
-import cuchaz.enigma.classprovider.DecompilerInputTransformingClassProvider;
-import cuchaz.enigma.classprovider.ObfuscationFixClassProvider;
+import cuchaz.enigma.analysis.index.IndexLevel;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.analysis.index.ReferenceIndex;
 import cuchaz.enigma.events.ClassHandleListener;
 import cuchaz.enigma.events.ClassHandleListener.InvalidationType;
 import cuchaz.enigma.source.DecompiledClassSource;
 import cuchaz.enigma.source.Decompiler;
 import cuchaz.enigma.source.DecompilerService;
 import cuchaz.enigma.source.Source;
+import cuchaz.enigma.source.SourceCache;
 import cuchaz.enigma.source.SourceIndex;
 import cuchaz.enigma.source.SourceSettings;
+import cuchaz.enigma.source.Token;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import cuchaz.enigma.translation.representation.entry.ParentedEntry;
 import cuchaz.enigma.utils.Result;
 
 public final class ClassHandleProvider {
 	private final EnigmaProject project;
 
-	private final ExecutorService pool = Executors.newWorkStealingPool();
+	private final DecompileScheduler scheduler = new DecompileScheduler();
 	private DecompilerService ds;
-	private Decompiler decompiler;
+	private volatile DecompilerState decompiler;
+	@Nullable
+	private volatile ClassPrefetcher prefetcher;
 
 	private final Map<ClassEntry, Entry> handles = new HashMap<>();
 
@@ -63,16 +75,92 @@ public final class ClassHandleProvider {
 	 */
 	@Nullable
 	public ClassHandle openClass(ClassEntry entry) {
+		return openClass(entry, DecompilePriority.VISIBLE);
+	}
+
+	@Nullable
+	ClassHandle openClass(ClassEntry entry, DecompilePriority priority) {
 		if (!project.getJarIndex().getEntryIndex().hasClass(entry)) {
 			return null;
 		}
 
 		return withLock(lock.writeLock(), () -> {
-			Entry e = handles.computeIfAbsent(entry, entry1 -> new Entry(this, entry1));
-			return e.createHandle();
+			Entry e = handles.computeIfAbsent(entry, entry1 -> new Entry(this, entry1, priority));
+			return e.createHandle(priority);
 		});
 	}
 
+	boolean isOpen(ClassEntry entry) {
+		return withLock(lock.readLock(), () -> handles.containsKey(entry));
+	}
+
+	/**
+	 * Sets how many classes are decompiled ahead of time, before they are opened. These are the classes referenced
+	 * by the open classes, which are decompiled when nothing else is, and kept until the limit is reached. Prefetching
+	 * is disabled by default.
+	 *
+	 * @param limit the number of classes to keep decompiled ahead of time, {@code 0} to disable prefetching
+	 */
+	public void setPrefetchLimit(int limit) {
+		ClassPrefetcher prefetcher = limit > 0 ? new ClassPrefetcher(this, task -> scheduler.submit(() -> DecompilePriority.SPECULATIVE, task), limit) : null;
+		ClassPrefetcher old = this.prefetcher;
+		this.prefetcher = prefetcher;
+
+		if (old != null) {
+			old.close();
+		}
+	}
+
+	private void prefetch(List<ClassEntry> classes) {
+		ClassPrefetcher prefetcher = this.prefetcher;
+
+		if (prefetcher == null || classes.isEmpty()) {
+			return;
+		}
+
+		try {
+			prefetcher.prefetch(classes);
+		} catch (RejectedExecutionException e) {
+			// the provider was destroyed in between
+		}
+	}
+
+	/**
+	 * Gets the classes of the jar which a class refers to, from the most to the least likely to be opened after it:
+	 * its supertypes, the classes its source refers to in order, and the owners of the methods it calls.
+	 */
+	private List<ClassEntry> collectReferencedClasses(ClassEntry entry, SourceIndex index) {
+		JarIndex jarIndex = project.getJarIndex();
+		Set<ClassEntry> classes = new LinkedHashSet<>(jarIndex.getInheritanceIndex().getParents(entry));
+
+		for (Token token : index.referenceTokens()) {
+			classes.add(index.getReference(token).entry.getTopLevelClass());
+		}
+
+		// the references are only indexed on demand, which is not worth it for prefetching
+		if (jarIndex.getIndexLevel().includes(IndexLevel.FULL)) {
+			ReferenceIndex referenceIndex = jarIndex.getReferenceIndex();
+
+			for (ParentedEntry<?> child : jarIndex.getChildrenByClass().getOrDefault(entry, List.of())) {
+				if (child instanceof MethodEntry method) {
+					for (MethodEntry referenced : referenceIndex.getMethodsReferencedBy(method)) {
+						classes.add(referenced.getParent().getOutermostClass());
+					}
+				}
+			}
+		}
+
+		List<ClassEntry> referencedClasses = new ArrayList<>();
+
+		for (ClassEntry referencedClass : classes) {
+			if (!referencedClass.equals(entry) && jarIndex.getEntryIndex().hasClass(referencedClass)) {
+				referencedClasses.add(referencedClass);
+			}
+		}
+
+		return referencedClasses;
+	}
+
 	/**
 	 * Set the decompiler service to use when decompiling classes. Invalidates
 	 * all currently open classes.
@@ -103,14 +191,68 @@ public final class ClassHandleProvider {
 		return ds;
 	}
 
-	private Decompiler createDecompiler() {
-		return ds.create(
-				new ObfuscationFixClassProvider(
-						new DecompilerInputTransformingClassProvider(project.getClassProvider(), project.getEnigma().getServices()),
-						project.getJarIndex()
-				),
-				new SourceSettings(true, true)
-		);
+	private DecompilerState createDecompiler() {
+		SourceSettings settings = new SourceSettings(true, true);
+		Decompiler decompiler = ds.create(project.getDecompilerClassProvider(), settings);
+		Path cacheDirectory = project.getEnigma().getSourceCacheDirectory();
+		String cacheId = ds.getCacheId();
+
+		if (cacheDirectory == null || cacheId == null) {
+			return new DecompilerState(decompiler, null);
+		}
+
+		return new DecompilerState(decompiler, new SourceCache(cacheDirectory, cacheId, settings));
+	}
+
+	/**
+	 * Gets the uncommented source of a class, from the source cache if it was decompiled before.
+	 */
+	private Source getUncommentedSource(ClassEntry entry) {
+		// read once, so that the source is cached with the decompiler that made it
+		DecompilerState state = this.decompiler;
+		Decompiler decompiler = state.decompiler();
+		SourceCache cache = state.sourceCache();
+		String className = entry.getFullName();
+
+		if (cache == null) {
+			return decompiler.getSource(className);
+		}
+
+		// the inner classes are decompiled with their outer class
+		List<String> classNames = new ArrayList<>();
+		collectClassNames(entry, classNames);
+		byte[] key = cache.computeKey(project.getDecompilerClassProvider(), classNames);
+
+		if (key == null) {
+			return decompiler.getSource(className);
+		}
+
+		Source cached = cache.get(key);
+
+		if (cached != null || DecompileScheduler.isCancelled()) {
+			// a cancelled decompile is not used, so a missing source is not decompiled for it
+			return cached;
+		}
+
+		return cache.put(key, decompiler.getSource(className));
+	}
+
+	private void collectClassNames(ClassEntry entry, List<String> classNames) {
+		classNames.add(entry.getFullName());
+		List<ClassEntry> innerClasses = new ArrayList<>();
+
+		for (ParentedEntry<?> child : project.getJarIndex().getChildrenByClass().getOrDefault(entry, List.of())) {
+			if (child instanceof ClassEntry innerClass) {
+				innerClasses.add(innerClass);
+			}
+		}
+
+		// the inner classes are indexed in parallel, in no particular order
+		innerClasses.sort(Comparator.comparing(ClassEntry::getFullName));
+
+		for (ClassEntry innerClass : innerClasses) {
+			collectClassNames(innerClass, classNames);
+		}
 	}
 
 	/**
@@ -207,10 +349,11 @@ public final class ClassHandleProvider {
 	 * be used.
 	 */
 	public void destroy() {
-		pool.shutdown();
+		setPrefetchLimit(0);
+		scheduler.shutdown();
 
 		try {
-			pool.awaitTermination(30, TimeUnit.SECONDS);
+			scheduler.awaitTermination(30, TimeUnit.SECONDS);
 		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		}
@@ -221,6 +364,19 @@ public final class ClassHandleProvider {
 		});
 	}
 
+	private record DecompilerState(Decompiler decompiler, @Nullable SourceCache sourceCache) {
+	}
+
+	/**
+	 * The stages each class goes through, in order. Superseding a stage supersedes the stages after it.
+	 */
+	private enum Stage {
+		DECOMPILE,
+		JAVADOC,
+		INDEX,
+		REMAP
+	}
+
 	private static final class Entry {
 		private final ClassHandleProvider p;
 		private final ClassEntry entry;
@@ -237,25 +393,86 @@ public final class ClassHandleProvider {
 		private final AtomicInteger indexVersion = new AtomicInteger();
 		private final AtomicInteger mappedVersion = new AtomicInteger();
 
+		// the work of this class which did not finish yet, by the stage it is for
+		private final ConcurrentMap<DecompileScheduler.Job, Stage> jobs = new ConcurrentHashMap<>();
+		private volatile DecompilePriority priority;
+		// the classes this class refers to, once its source is indexed and if prefetching is enabled
+		private volatile List<ClassEntry> referencedClasses;
+
 		private final ReadWriteLock lock = new ReentrantReadWriteLock();
 		private final Object decompileCompleteMutex = new Object();
 		private final Object mappedCompleteMutex = new Object();
 
-		private Entry(ClassHandleProvider p, ClassEntry entry) {
+		private Entry(ClassHandleProvider p, ClassEntry entry, DecompilePriority priority) {
 			this.p = p;
 			this.entry = entry;
+			this.priority = priority;
 			this.deobfRef = p.project.getMapper().deobfuscate(entry);
 			invalidate();
 		}
 
-		public ClassHandleImpl createHandle() {
-			ClassHandleImpl handle = new ClassHandleImpl(this);
+		public ClassHandleImpl createHandle(DecompilePriority priority) {
+			ClassHandleImpl handle = new ClassHandleImpl(this, priority);
 			withLock(lock.writeLock(), () -> {
 				handles.add(handle);
 			});
+			updatePriority();
 			return handle;
 		}
 
+		private void updatePriority() {
+			DecompilePriority newPriority = withLock(lock.readLock(), () -> {
+				DecompilePriority highest = DecompilePriority.SPECULATIVE;
+
+				for (ClassHandleImpl handle : handles) {
+					if (handle.priority.isHigherThan(highest)) {
+						highest = handle.priority;
+					}
+				}
+
+				return highest;
+			});
+
+			if (newPriority != priority) {
+				DecompilePriority oldPriority = priority;
+				priority = newPriority;
+				jobs.keySet().forEach(DecompileScheduler.Job::reprioritize);
+
+				// a class which was prefetched is opened, the classes it refers to are likely to be opened next
+				List<ClassEntry> referencedClasses = this.referencedClasses;
+
+				if (oldPriority == DecompilePriority.SPECULATIVE && referencedClasses != null) {
+					p.prefetch(referencedClasses);
+				}
+			}
+		}
+
+		private Executor executor(Stage stage) {
+			return task -> {
+				DecompileScheduler.Job job = p.scheduler.submit(() -> priority, task, jobs::remove);
+				jobs.put(job, stage);
+
+				// the job may have finished before it was added
+				if (job.isDone()) {
+					jobs.remove(job);
+				}
+			};
+		}
+
+		/**
+		 * Cancels the work for the given stage and the stages after it, as it was superseded.
+		 */
+		private void cancel(Stage from) {
+			jobs.entrySet().removeIf(job -> {
+				if (job.getValue().compareTo(from) >= 0) {
+					job.getKey().cancel();
+					return true;
+				}
+
+				return false;
+			});
+		}
+
 		@Nullable
 		public ClassEntry getDeobfRef() {
 			return deobfRef;
@@ -274,29 +491,46 @@ public final class ClassHandleProvider {
 		public void invalidate() {
 			checkDeobfRefForUpdate();
 			withLock(lock.readLock(), () -> new ArrayList<>(handles)).forEach(h -> h.onInvalidate(InvalidationType.FULL));
+			cancel(Stage.DECOMPILE);
 			continueMapSource(continueIndexSource(continueInsertJavadoc(decompile())));
 		}
 
 		public void invalidateJavadoc() {
 			checkDeobfRefForUpdate();
 			withLock(lock.readLock(), () -> new ArrayList<>(handles)).forEach(h -> h.onInvalidate(InvalidationType.JAVADOC));
+			cancel(Stage.JAVADOC);
 			continueMapSource(continueIndexSource(continueInsertJavadoc(CompletableFuture.completedFuture(uncommentedSource))));
 		}
 
 		public void invalidateMapped() {
 			checkDeobfRefForUpdate();
 			withLock(lock.readLock(), () -> new ArrayList<>(handles)).forEach(h -> h.onInvalidate(InvalidationType.MAPPINGS));
+			cancel(Stage.REMAP);
 			continueMapSource(CompletableFuture.completedFuture(source));
 		}
 
 		private CompletableFuture<Result<Source, ClassHandleError>> decompile() {
 			int v = decompileVersion.incrementAndGet();
 			return CompletableFuture.supplyAsync(() -> {
-				if (decompileVersion.get() != v) {
+				if (decompileVersion.get() != v || DecompileScheduler.isCancelled()) {
+					return null;
+				}
+
+				Source source = p.getUncommentedSource(entry);
+
+				if (source == null || DecompileScheduler.isCancelled()) {
 					return null;
 				}
 
-				Result<Source, ClassHandleError> uncommentedSource = Result.ok(p.decompiler.getSource(entry.getFullName()));
+				// the decompilers may only decompile once asked for the index, which is done here rather than in the
+				// later stages, which are superseded on their own
+				source.index();
+
+				if (DecompileScheduler.isCancelled()) {
+					return null;
+				}
+
+				Result<Source, ClassHandleError> uncommentedSource = Result.ok(source);
 
 				synchronized (decompileCompleteMutex) {
 					if (decompileVersion.get() != v) {
@@ -318,13 +552,13 @@ public final class ClassHandleProvider {
 				}
 
 				return uncommentedSource;
-			}, p.pool);
+			}, executor(Stage.DECOMPILE));
 		}
 
 		private CompletableFuture<Result<Source, ClassHandleError>> continueInsertJavadoc(CompletableFuture<Result<Source, ClassHandleError>> f) {
 			int v = javadocVersion.incrementAndGet();
 			return f.thenApplyAsync(res -> {
-				if (res == null || javadocVersion.get() != v) {
+				if (res == null || javadocVersion.get() != v || DecompileScheduler.isCancelled()) {
 					return null;
 				}
 
@@ -337,34 +571,43 @@ public final class ClassHandleProvider {
 				});
 
 				return jdSource;
-			}, p.pool);
+			}, executor(Stage.JAVADOC));
 		}
 
 		private CompletableFuture<Result<DecompiledClassSource, ClassHandleError>> continueIndexSource(CompletableFuture<Result<Source, ClassHandleError>> f) {
 			int v = indexVersion.incrementAndGet();
 			return f.thenApplyAsync(res -> {
-				if (res == null || indexVersion.get() != v) {
+				if (res == null || indexVersion.get() != v || DecompileScheduler.isCancelled()) {
 					return null;
 				}
 
 				return res.andThen(jdSource -> {
 					SourceIndex index = jdSource.index();
 					index.resolveReferences(p.project.getMapper().getObfResolver());
+
+					if (p.prefetcher != null) {
+						referencedClasses = p.collectReferencedClasses(entry, index);
+
+						if (priority.isHigherThan(DecompilePriority.SPECULATIVE)) {
+							p.prefetch(referencedClasses);
+						}
+					}
+
 					DecompiledClassSource source = new DecompiledClassSource(entry, index);
 					return Result.ok(source);
 				});
-			}, p.pool).exceptionally(e -> Result.err(ClassHandleError.decompile(e)));
+			}, executor(Stage.INDEX)).exceptionally(e -> Result.err(ClassHandleError.decompile(e)));
 		}
 
 		private void continueMapSource(CompletableFuture<Result<DecompiledClassSource, ClassHandleError>> f) {
 			int v = mappedVersion.incrementAndGet();
 			f.thenApplyAsync(res -> {
-				if (res == null || mappedVersion.get() != v) {
+				if (res == null || mappedVersion.get() != v || DecompileScheduler.isCancelled()) {
 					return null;
 				}
 
 				return res.andThen(source -> Result.ok(source.remapSource(p.project, p.project.getMapper().getDeobfuscator())));
-			}, p.pool).whenComplete((res, e) -> {
+			}, executor(Stage.REMAP)).whenComplete((res, e) -> {
 				if (e != null) {
 					res = Result.err(ClassHandleError.remap(e));
 				}
@@ -396,13 +639,23 @@ public final class ClassHandleProvider {
 
 		public void closeHandle(ClassHandleImpl classHandle) {
 			classHandle.destroy();
-			withLock(lock.writeLock(), () -> {
+			boolean deleted = withLock(lock.writeLock(), () -> {
 				handles.remove(classHandle);
 
 				if (handles.isEmpty()) {
 					p.deleteEntry(this);
+					return true;
 				}
+
+				return false;
 			});
+
+			if (deleted) {
+				// nothing needs the class anymore
+				cancel(Stage.DECOMPILE);
+			} else {
+				updatePriority();
+			}
 		}
 
 		public void destroy() {
@@ -410,6 +663,7 @@ public final class ClassHandleProvider {
 				handles.forEach(ClassHandleImpl::destroy);
 				handles.clear();
 			});
+			cancel(Stage.DECOMPILE);
 		}
 
 		public CompletableFuture<Result<Source, ClassHandleError>> getUncommentedSourceAsync() {
@@ -439,9 +693,11 @@ public final class ClassHandleProvider {
 		private boolean valid = true;
 
 		private final Set<ClassHandleListener> listeners = new HashSet<>();
+		private volatile DecompilePriority priority;
 
-		private ClassHandleImpl(Entry entry) {
+		private ClassHandleImpl(Entry entry, DecompilePriority priority) {
 			this.entry = entry;
+			this.priority = priority;
 		}
 
 		@Override
@@ -470,6 +726,15 @@ public final class ClassHandleProvider {
 			return entry.getUncommentedSourceAsync();
 		}
 
+		@Override
+		public void setPriority(DecompilePriority priority) {
+			this.priority = priority;
+
+			if (valid) {
+				this.entry.updatePriority();
+			}
+		}
+
 		@Override
 		public void invalidate() {
 			checkValid();
@@ -521,7 +786,7 @@ public final class ClassHandleProvider {
 		@Override
 		public ClassHandle copy() {
 			checkValid();
-			return entry.createHandle();
+			return entry.createHandle(DecompilePriority.VISIBLE);
 		}
 
 		@Override
@@ -0,0 +1,128 @@
+package cuchaz.enigma.classhandle;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+
+/**
+ * Decompiles the classes which are likely to be opened next ahead of time, which are the classes referenced by the
+ * open ones. The prefetched classes are kept open by speculative class handles, up to a limit after which the least
+ * recently used ones are closed again, and only a few of them are decompiled at once, so that the prefetching does
+ * not take all the decompiler threads whenever a class is opened.
+ *
+ * <p>The prefetcher works on the given executor, as it opens and closes class handles, which must not happen
+ * while the class handle provider or its classes are locked.
+ */
+final class ClassPrefetcher {
+	private final ClassHandleProvider provider;
+	private final Executor executor;
+	private final int limit;
+	private final int concurrency;
+
+	// the prefetched classes, from the least to the most recently used
+	private final Map<ClassEntry, ClassHandle> handles = new LinkedHashMap<>(16, 0.75f, true);
+	// the classes to prefetch, from the most likely to be opened
+	private final Set<ClassEntry> queue = new LinkedHashSet<>();
+	private final Set<ClassEntry> running = new HashSet<>();
+	private boolean closed;
+
+	ClassPrefetcher(ClassHandleProvider provider, Executor executor, int limit) {
+		this.provider = provider;
+		this.executor = executor;
+		this.limit = limit;
+		this.concurrency = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	}
+
+	/**
+	 * Queues the classes referenced by a class which was opened, ahead of the ones queued before.
+	 *
+	 * @param classes the referenced classes, from the most likely to be opened
+	 */
+	void prefetch(List<ClassEntry> classes) {
+		executor.execute(() -> enqueue(classes));
+	}
+
+	private synchronized void enqueue(List<ClassEntry> classes) {
+		if (closed) {
+			return;
+		}
+
+		List<ClassEntry> newQueue = new ArrayList<>(limit);
+
+		for (ClassEntry entry : classes) {
+			if (newQueue.size() >= limit) {
+				break;
+			}
+
+			if (handles.get(entry) == null) {
+				newQueue.add(entry);
+			}
+		}
+
+		// the references of the classes opened before are less likely to be needed now, and may be dropped
+		for (Iterator<ClassEntry> iter = queue.iterator(); iter.hasNext() && newQueue.size() < limit; ) {
+			newQueue.add(iter.next());
+		}
+
+		queue.clear();
+		queue.addAll(newQueue);
+		startNext();
+	}
+
+	private void startNext() {
+		while (!queue.isEmpty() && running.size() < concurrency) {
+			ClassEntry entry = queue.iterator().next();
+			queue.remove(entry);
+
+			if (handles.containsKey(entry) || provider.isOpen(entry)) {
+				continue;
+			}
+
+			ClassHandle handle = provider.openClass(entry, DecompilePriority.SPECULATIVE);
+
+			if (handle == null) {
+				continue;
+			}
+
+			handles.put(entry, handle);
+			running.add(entry);
+			evict();
+			handle.getSource().whenCompleteAsync((res, e) -> finished(entry), executor);
+		}
+	}
+
+	private synchronized void finished(ClassEntry entry) {
+		if (running.remove(entry)) {
+			startNext();
+		}
+	}
+
+	private void evict() {
+		for (Iterator<Map.Entry<ClassEntry, ClassHandle>> iter = handles.entrySet().iterator(); iter.hasNext() && handles.size() > limit; ) {
+			Map.Entry<ClassEntry, ClassHandle> eldest = iter.next();
+			iter.remove();
+			// closing the handle cancels the decompilation if it is still running, which never completes then
+			running.remove(eldest.getKey());
+			eldest.getValue().close();
+		}
+	}
+
+	/**
+	 * Closes the class handles of the prefetched classes, and stops prefetching.
+	 */
+	synchronized void close() {
+		closed = true;
+		queue.clear();
+		running.clear();
+		handles.values().forEach(ClassHandle::close);
+		handles.clear();
+	}
+}
@@ -0,0 +1,30 @@
+package cuchaz.enigma.classhandle;
+
+/**
+ * How soon a class is needed, from the most urgent to the least. The work for a class runs with the highest
+ * priority of its open handles.
+ *
+ * @see ClassHandle#setPriority(DecompilePriority)
+ */
+public enum DecompilePriority {
+	/**
+	 * The class is shown in the focused editor.
+	 */
+	FOCUSED,
+	/**
+	 * The class is shown, but not focused. This is the priority of new class handles.
+	 */
+	VISIBLE,
+	/**
+	 * The class is open but not shown, like in a tab in the background.
+	 */
+	BACKGROUND,
+	/**
+	 * The class is not open yet, and only decompiled ahead of time in case it is.
+	 */
+	SPECULATIVE;
+
+	public boolean isHigherThan(DecompilePriority other) {
+		return ordinal() < other.ordinal();
+	}
+}
@@ -0,0 +1,143 @@
+package cuchaz.enigma.classhandle;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the work of class handles on a fixed number of threads, the most urgent first, and in the order it was
+ * submitted otherwise. Work which is not needed anymore is cancelled, which takes it off the queue, or flags it if
+ * it is already running, for the work to stop where it {@link #isCancelled() checks} for it.
+ *
+ * <p>Running work is never interrupted, as an interrupt closes the channels the classes are read from for every
+ * thread reading them.
+ */
+final class DecompileScheduler {
+	private static final ThreadLocal<Job> CURRENT_JOB = new ThreadLocal<>();
+
+	private final AtomicLong sequence = new AtomicLong();
+	private final ThreadPoolExecutor executor;
+
+	DecompileScheduler() {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "Decompiler thread #" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @param priority the priority of the work, which is read again when the job is {@link Job#reprioritize()
+	 * reprioritized}
+	 */
+	Job submit(Supplier<DecompilePriority> priority, Runnable task) {
+		return submit(priority, task, job -> {
+		});
+	}
+
+	/**
+	 * @param onDone called with the job on the thread which ran it, once it is {@link Job#isDone() done}
+	 */
+	Job submit(Supplier<DecompilePriority> priority, Runnable task, Consumer<Job> onDone) {
+		Job job = new Job(priority, task, onDone, sequence.getAndIncrement());
+		executor.execute(job);
+		return job;
+	}
+
+	/**
+	 * @return whether the job running on the current thread was cancelled, in which case its result is not used
+	 */
+	static boolean isCancelled() {
+		Job job = CURRENT_JOB.get();
+		return job != null && job.cancelled;
+	}
+
+	void shutdown() {
+		executor.shutdown();
+	}
+
+	boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	final class Job implements Runnable, Comparable<Job> {
+		private final Supplier<DecompilePriority> prioritySupplier;
+		private final Runnable task;
+		private final Consumer<Job> onDone;
+		private final long sequence;
+		// only changed while the job is off the queue, so that the order of the queue stays consistent
+		private volatile DecompilePriority priority;
+
+		private volatile boolean cancelled;
+		private volatile boolean done;
+
+		private Job(Supplier<DecompilePriority> prioritySupplier, Runnable task, Consumer<Job> onDone, long sequence) {
+			this.prioritySupplier = prioritySupplier;
+			this.task = task;
+			this.onDone = onDone;
+			this.sequence = sequence;
+			this.priority = prioritySupplier.get();
+		}
+
+		@Override
+		public void run() {
+			if (cancelled) {
+				return;
+			}
+
+			CURRENT_JOB.set(this);
+
+			try {
+				task.run();
+			} finally {
+				CURRENT_JOB.remove();
+				done = true;
+				onDone.accept(this);
+			}
+		}
+
+		/**
+		 * Moves the job to its place for the current priority of its work, if it did not start yet.
+		 */
+		void reprioritize() {
+			DecompilePriority newPriority = prioritySupplier.get();
+
+			if (newPriority != priority && executor.remove(this)) {
+				priority = newPriority;
+
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					// the scheduler was shut down in between, which drops what is still queued
+				}
+			}
+		}
+
+		void cancel() {
+			if (done) {
+				return;
+			}
+
+			cancelled = true;
+			executor.remove(this);
+		}
+
+		boolean isDone() {
+			return done || cancelled;
+		}
+
+		@Override
+		public int compareTo(Job other) {
+			int result = priority.compareTo(other.priority);
+			return result != 0 ? result : Long.compare(sequence, other.sequence);
+		}
+	}
+}
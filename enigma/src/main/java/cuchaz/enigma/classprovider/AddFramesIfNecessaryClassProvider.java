@@ -10,14 +10,22 @@ import org.objectweb.asm.tree.ClassNode;
 
 import cuchaz.enigma.analysis.IndexClassWriter;
 import cuchaz.enigma.analysis.index.EntryIndex;
+import cuchaz.enigma.analysis.index.LibraryIndex;
 
 public class AddFramesIfNecessaryClassProvider implements ClassProvider {
 	private final ClassProvider delegate;
 	private final EntryIndex entryIndex;
+	@Nullable
+	private final LibraryIndex libraryIndex;
 
 	public AddFramesIfNecessaryClassProvider(ClassProvider delegate, EntryIndex entryIndex) {
+		this(delegate, entryIndex, null);
+	}
+
+	public AddFramesIfNecessaryClassProvider(ClassProvider delegate, EntryIndex entryIndex, @Nullable LibraryIndex libraryIndex) {
 		this.delegate = delegate;
 		this.entryIndex = entryIndex;
+		this.libraryIndex = libraryIndex;
 	}
 
 	@Override
@@ -39,7 +47,7 @@ public class AddFramesIfNecessaryClassProvider implements ClassProvider {
 			return clazz;
 		}
 
-		IndexClassWriter cw = new IndexClassWriter(entryIndex, ClassWriter.COMPUTE_FRAMES);
+		IndexClassWriter cw = new IndexClassWriter(entryIndex, libraryIndex, ClassWriter.COMPUTE_FRAMES);
 		clazz.accept(cw);
 		ClassReader cr = new ClassReader(cw.toByteArray());
 		ClassNode node = new ClassNode();
@@ -2,25 +2,81 @@ package cuchaz.enigma.classprovider;
 
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.Objects;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import cuchaz.enigma.utils.AsmUtil;
 
 /**
  * Wraps a ClassProvider to provide caching and synchronization.
+ *
+ * <p>The cache is bounded by the estimated memory taken by the cached class nodes. It is split in a probation
+ * segment, which classes enter when they are loaded, and a protected segment, which classes are promoted to once
+ * they are requested again. Classes are evicted from the probation segment first, so a scan over many classes
+ * which are each used once doesn't push out the classes which are used over and over.
+ *
+ * <p>Concurrent requests for the same class wait for a single load of it.
+ *
+ * <p>When the wrapped provider transforms its classes, its class files can only be made by serializing its nodes,
+ * which the cache can do once per class, see {@link #CachingClassProvider(ClassProvider, long, boolean)}.
  */
 public class CachingClassProvider implements ClassProvider {
-	private static final long EXPIRE_AFTER = 1 * 60 * 1000; // one minute
-	private static final long MAX_SIZE = 128;
+	public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+	// the share of the maximum weight reserved for classes that were requested more than once
+	private static final double PROTECTED_RATIO = 0.8;
+
 	private final ClassProvider classProvider;
-	private long lastPruneTime = 0;
-	private final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
+	private final long maxWeight;
+	private final long maxProtectedWeight;
+	private final boolean serializeNodes;
+	private final ConcurrentMap<String, Node> cache = new ConcurrentHashMap<>();
+
+	// the eviction order of each segment, least recently used first, guarded by the policy lock
+	private final ReentrantLock policyLock = new ReentrantLock();
+	private final LinkedHashMap<String, Node> probation = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<String, Node> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+	private long probationWeight;
+	private long protectedWeight;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder totalLoadTime = new LongAdder();
 
 	public CachingClassProvider(ClassProvider classProvider) {
+		this(classProvider, DEFAULT_MAX_WEIGHT);
+	}
+
+	/**
+	 * @param maxWeight the estimated number of bytes the cached classes may take up
+	 */
+	public CachingClassProvider(ClassProvider classProvider, long maxWeight) {
+		this(classProvider, maxWeight, false);
+	}
+
+	/**
+	 * @param maxWeight the estimated number of bytes the cached classes may take up
+	 * @param serializeNodes whether to make the class files from the cached nodes and cache them too, rather than
+	 *                       asking the wrapped provider for them, for providers that would serialize their nodes anyway
+	 */
+	public CachingClassProvider(ClassProvider classProvider, long maxWeight, boolean serializeNodes) {
+		if (maxWeight < 0) {
+			throw new IllegalArgumentException("Negative cache size " + maxWeight);
+		}
+
 		this.classProvider = classProvider;
+		this.maxWeight = maxWeight;
+		this.maxProtectedWeight = (long) (maxWeight * PROTECTED_RATIO);
+		this.serializeNodes = serializeNodes;
 	}
 
 	@Override
@@ -31,54 +87,267 @@ public class CachingClassProvider implements ClassProvider {
 	@Override
 	@Nullable
 	public ClassNode get(String name) {
-		final long time = System.currentTimeMillis();
-		boolean prune = false;
-
-		if (lastPruneTime + 2 * EXPIRE_AFTER < time) {
-			synchronized (cache) {
-				if (lastPruneTime + 2 * EXPIRE_AFTER < time) {
-					lastPruneTime = time;
-					prune = true;
-				}
+		return join(getNode(name));
+	}
+
+	private Node getNode(String name) {
+		Node node = cache.get(name);
+
+		if (node == null) {
+			Node loading = new Node(name);
+			node = cache.putIfAbsent(name, loading);
+
+			if (node == null) {
+				load(loading);
+				return loading;
 			}
 		}
 
-		if (prune) {
-			cache.values().removeIf(value -> value.addTime + EXPIRE_AFTER < time);
+		hitCount.increment();
+		onAccess(node);
+		return node;
+	}
+
+	private void load(Node node) {
+		missCount.increment();
+		long start = System.nanoTime();
+		ClassNode classNode;
+
+		try {
+			classNode = classProvider.get(node.name);
+		} catch (RuntimeException | Error e) {
+			// let the next request try again rather than caching the failure
+			cache.remove(node.name, node);
+			node.value.completeExceptionally(e);
+			throw e;
+		} finally {
+			totalLoadTime.add(System.nanoTime() - start);
 		}
 
-		if (cache.size() > MAX_SIZE) {
-			synchronized (cache) {
-				if (cache.size() > MAX_SIZE) {
-					Iterator<Map.Entry<String, CacheEntry>> iterator = cache.entrySet().iterator();
-					iterator.next();
+		node.weight = estimateWeight(classNode);
+		node.value.complete(classNode);
+		admit(node);
+	}
+
+	@Nullable
+	private static ClassNode join(Node node) {
+		try {
+			return node.value.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			} else if (e.getCause() instanceof Error error) {
+				throw error;
+			}
+
+			throw e;
+		}
+	}
+
+	private void admit(Node node) {
+		policyLock.lock();
+
+		try {
+			// the node could have been removed by invalidate() while it was loading
+			if (cache.get(node.name) != node) {
+				return;
+			}
+
+			probation.put(node.name, node);
+			node.segment = probation;
+			probationWeight += node.weight;
+			evict();
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	private void addBytes(Node node, byte[] bytes) {
+		policyLock.lock();
+
+		try {
+			if (node.bytes != null) {
+				return;
+			}
+
+			node.bytes = bytes;
+			node.weight += bytes.length;
+
+			if (node.segment == probation) {
+				probationWeight += bytes.length;
+			} else if (node.segment == protectedSegment) {
+				protectedWeight += bytes.length;
+			}
+
+			evict();
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	private void onAccess(Node node) {
+		// recency is best effort, a request doesn't wait for another one to reorder the segments
+		if (!node.value.isDone() || !policyLock.tryLock()) {
+			return;
+		}
+
+		try {
+			if (probation.remove(node.name, node)) {
+				probationWeight -= node.weight;
+				protectedSegment.put(node.name, node);
+				node.segment = protectedSegment;
+				protectedWeight += node.weight;
+
+				// make room by moving the least recently used protected classes back to probation
+				Iterator<Node> iterator = protectedSegment.values().iterator();
+
+				while (protectedWeight > maxProtectedWeight && iterator.hasNext()) {
+					Node demoted = iterator.next();
 					iterator.remove();
+					protectedWeight -= demoted.weight;
+					probation.put(demoted.name, demoted);
+					demoted.segment = probation;
+					probationWeight += demoted.weight;
 				}
+			} else {
+				// moves the node to the end of its segment
+				protectedSegment.get(node.name);
+			}
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	private void evict() {
+		Iterator<Node> iterator = probation.values().iterator();
+
+		while (probationWeight + protectedWeight > maxWeight && iterator.hasNext()) {
+			Node evicted = iterator.next();
+			iterator.remove();
+			probationWeight -= evicted.weight;
+			evicted.segment = null;
+			cache.remove(evicted.name, evicted);
+			evictionCount.increment();
+		}
+
+		iterator = protectedSegment.values().iterator();
+
+		while (probationWeight + protectedWeight > maxWeight && iterator.hasNext()) {
+			Node evicted = iterator.next();
+			iterator.remove();
+			protectedWeight -= evicted.weight;
+			evicted.segment = null;
+			cache.remove(evicted.name, evicted);
+			evictionCount.increment();
+		}
+	}
+
+	/**
+	 * Removes all cached classes, the statistics are kept.
+	 */
+	public void invalidate() {
+		policyLock.lock();
+
+		try {
+			cache.clear();
+			probation.values().forEach(node -> node.segment = null);
+			protectedSegment.values().forEach(node -> node.segment = null);
+			probation.clear();
+			protectedSegment.clear();
+			probationWeight = 0;
+			protectedWeight = 0;
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	public Stats getStats() {
+		policyLock.lock();
+
+		try {
+			return new Stats(hitCount.sum(), missCount.sum(), evictionCount.sum(), totalLoadTime.sum(), cache.size(), probationWeight + protectedWeight);
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	/**
+	 * Class files are only cached when serializing the nodes, otherwise they are read from the wrapped provider
+	 * every time, as they are usually read once by the consumers streaming them.
+	 */
+	@Override
+	@Nullable
+	public byte[] getBytes(String name) {
+		if (!serializeNodes) {
+			return classProvider.getBytes(name);
+		}
+
+		Node node = getNode(name);
+		ClassNode classNode = join(node);
+
+		if (classNode == null) {
+			return null;
+		}
+
+		byte[] bytes = node.bytes;
+
+		if (bytes == null) {
+			bytes = AsmUtil.nodeToBytes(classNode);
+			addBytes(node, bytes);
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * @return a rough estimate of the heap taken by the given class node, in bytes
+	 */
+	private static long estimateWeight(@Nullable ClassNode classNode) {
+		if (classNode == null) {
+			return 64;
+		}
+
+		long weight = 512 + 32L * classNode.interfaces.size() + 128L * classNode.innerClasses.size() + 128L * classNode.fields.size();
+
+		for (MethodNode method : classNode.methods) {
+			weight += 256 + 64L * method.instructions.size();
+			weight += 96L * method.tryCatchBlocks.size();
+
+			if (method.localVariables != null) {
+				weight += 96L * method.localVariables.size();
 			}
 		}
 
-		CacheEntry entry = cache.computeIfAbsent(name, key -> new CacheEntry(time, classProvider.get(key)));
-		entry.addTime = time;
-		return entry.classNode;
+		return weight;
 	}
 
-	private static final class CacheEntry {
-		private long addTime;
-		private final @Nullable ClassNode classNode;
+	private static final class Node {
+		private final String name;
+		private final CompletableFuture<ClassNode> value = new CompletableFuture<>();
+		// set before the node is added to a segment, then only changed under the policy lock like the segment
+		private long weight;
+		@Nullable
+		private LinkedHashMap<String, Node> segment;
+		@Nullable
+		private volatile byte[] bytes;
 
-		private CacheEntry(long addTime, @Nullable ClassNode classNode) {
-			this.addTime = addTime;
-			this.classNode = classNode;
+		private Node(String name) {
+			this.name = name;
 		}
+	}
 
-		@Override
-		public boolean equals(Object obj) {
-			return obj instanceof CacheEntry ce && Objects.equals(classNode, ce.classNode);
+	/**
+	 * @param totalLoadTime the time spent loading the missing classes, in nanoseconds
+	 * @param weight the estimated number of bytes taken by the cached classes
+	 */
+	public record Stats(long hitCount, long missCount, long evictionCount, long totalLoadTime, int size, long weight) {
+		public double hitRate() {
+			long requestCount = hitCount + missCount;
+			return requestCount == 0 ? 1 : (double) hitCount / requestCount;
 		}
 
-		@Override
-		public int hashCode() {
-			return Objects.hash(addTime, classNode);
+		public double averageLoadPenalty() {
+			return missCount == 0 ? 0 : (double) totalLoadTime / missCount;
 		}
 	}
 }
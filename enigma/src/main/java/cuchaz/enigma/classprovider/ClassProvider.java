@@ -3,6 +3,7 @@ package cuchaz.enigma.classprovider;
 import java.util.Collection;
 
 import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
 
 public interface ClassProvider {
@@ -20,4 +21,25 @@ public interface ClassProvider {
 	 */
 	@Nullable
 	ClassNode get(String name);
+
+	/**
+	 * Gets the class file of a class, for consumers that stream it through a
+	 * {@linkplain org.objectweb.asm.ClassReader ClassReader} instead of building a {@linkplain ClassNode}.
+	 * Providers that read class files should override this to skip the tree entirely.
+	 *
+	 * @param name the internal name of the class
+	 * @return the class file of that class, or {@code null} if it was not found
+	 */
+	@Nullable
+	default byte[] getBytes(String name) {
+		ClassNode node = get(name);
+
+		if (node == null) {
+			return null;
+		}
+
+		ClassWriter writer = new ClassWriter(0);
+		node.accept(writer);
+		return writer.toByteArray();
+	}
 }
@@ -1,8 +1,14 @@
 package cuchaz.enigma.classprovider;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.stream.Collectors;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
 
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.tree.ClassNode;
@@ -10,26 +16,65 @@ import org.objectweb.asm.tree.ClassNode;
 /**
  * Combines a list of {@link ClassProvider}s into one, calling each one in a row
  * until one can provide the class.
+ *
+ * <p>The class names of the providers are collected once, when the combining provider is created, so that the
+ * provider of a listed class is found with a single lookup. Only providers which don't list their classes are
+ * asked for the other classes.
  */
 public class CombiningClassProvider implements ClassProvider {
 	private final ClassProvider[] classProviders;
+	// the first provider listing each class, which is the one that would provide it when calling them in a row
+	private final Map<String, ClassProvider> providersByName;
+	private final ClassProvider[] lazyProviders;
+	private final NavigableSet<String> classNames;
 
 	public CombiningClassProvider(ClassProvider... classProviders) {
 		this.classProviders = classProviders;
+		Map<String, ClassProvider> providersByName = new HashMap<>();
+		List<ClassProvider> lazyProviders = new ArrayList<>();
+
+		for (ClassProvider cp : classProviders) {
+			Collection<String> names = cp.getClassNames();
+
+			if (names.isEmpty()) {
+				lazyProviders.add(cp);
+			}
+
+			for (String name : names) {
+				providersByName.putIfAbsent(name, cp);
+			}
+		}
+
+		this.providersByName = Map.copyOf(providersByName);
+		this.lazyProviders = lazyProviders.toArray(new ClassProvider[0]);
+		this.classNames = Collections.unmodifiableNavigableSet(new TreeSet<>(providersByName.keySet()));
 	}
 
+	/**
+	 * @return the names of the classes listed by the providers, sorted so that the classes sharing a prefix, such
+	 * as the inner classes of a class, can be found without going through all of them
+	 */
 	@Override
-	public Collection<String> getClassNames() {
-		return Arrays.stream(classProviders)
-			.map(ClassProvider::getClassNames)
-			.flatMap(Collection::stream)
-			.collect(Collectors.toSet());
+	public NavigableSet<String> getClassNames() {
+		return classNames;
 	}
 
 	@Override
 	@Nullable
 	public ClassNode get(String name) {
-		for (ClassProvider cp : classProviders) {
+		ClassProvider provider = providersByName.get(name);
+
+		if (provider != null) {
+			ClassNode node = provider.get(name);
+
+			if (node != null) {
+				return node;
+			}
+
+			return probe(name, provider, ClassProvider::get);
+		}
+
+		for (ClassProvider cp : lazyProviders) {
 			ClassNode node = cp.get(name);
 
 			if (node != null) {
@@ -39,4 +84,52 @@ public class CombiningClassProvider implements ClassProvider {
 
 		return null;
 	}
+
+	@Override
+	@Nullable
+	public byte[] getBytes(String name) {
+		ClassProvider provider = providersByName.get(name);
+
+		if (provider != null) {
+			byte[] bytes = provider.getBytes(name);
+
+			if (bytes != null) {
+				return bytes;
+			}
+
+			return probe(name, provider, ClassProvider::getBytes);
+		}
+
+		for (ClassProvider cp : lazyProviders) {
+			byte[] bytes = cp.getBytes(name);
+
+			if (bytes != null) {
+				return bytes;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Falls back to calling the providers after the one listing the class in a row, if it could not provide it.
+	 */
+	@Nullable
+	private <T> T probe(String name, ClassProvider listingProvider, BiFunction<ClassProvider, String, T> lookup) {
+		boolean after = false;
+
+		for (ClassProvider cp : classProviders) {
+			if (after) {
+				T result = lookup.apply(cp, name);
+
+				if (result != null) {
+					return result;
+				}
+			} else if (cp == listingProvider) {
+				after = true;
+			}
+		}
+
+		return null;
+	}
 }
@@ -8,13 +8,37 @@ import org.objectweb.asm.tree.ClassNode;
 import cuchaz.enigma.EnigmaServices;
 import cuchaz.enigma.api.service.DecompilerInputTransformerService;
 
+/**
+ * Applies the {@link DecompilerInputTransformerService}s to the classes of the wrapped provider. The transformed
+ * classes are cached along with their class files, if there are no transformers the classes are passed through.
+ */
 public class DecompilerInputTransformingClassProvider implements ClassProvider {
 	private final ClassProvider delegate;
 	private final EnigmaServices services;
+	private final CachingClassProvider transformedClasses;
 
 	public DecompilerInputTransformingClassProvider(ClassProvider delegate, EnigmaServices services) {
+		this(delegate, services, CachingClassProvider.DEFAULT_MAX_WEIGHT);
+	}
+
+	/**
+	 * @param cacheSize the estimated number of bytes the transformed classes may take up in the cache
+	 */
+	public DecompilerInputTransformingClassProvider(ClassProvider delegate, EnigmaServices services, long cacheSize) {
 		this.delegate = delegate;
 		this.services = services;
+		this.transformedClasses = new CachingClassProvider(new ClassProvider() {
+			@Override
+			public Collection<String> getClassNames() {
+				return delegate.getClassNames();
+			}
+
+			@Override
+			@Nullable
+			public ClassNode get(String name) {
+				return transform(delegate.get(name));
+			}
+		}, cacheSize, true);
 	}
 
 	@Override
@@ -25,8 +49,25 @@ public class DecompilerInputTransformingClassProvider implements ClassProvider {
 	@Override
 	@Nullable
 	public ClassNode get(String name) {
-		ClassNode classNode = delegate.get(name);
+		if (services.get(DecompilerInputTransformerService.TYPE).isEmpty()) {
+			return delegate.get(name);
+		}
 
+		return transformedClasses.get(name);
+	}
+
+	@Override
+	@Nullable
+	public byte[] getBytes(String name) {
+		if (services.get(DecompilerInputTransformerService.TYPE).isEmpty()) {
+			return delegate.getBytes(name);
+		}
+
+		return transformedClasses.getBytes(name);
+	}
+
+	@Nullable
+	private ClassNode transform(@Nullable ClassNode classNode) {
 		if (classNode == null) {
 			return null;
 		}
@@ -1,14 +1,23 @@
 package cuchaz.enigma.classprovider;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.tree.ClassNode;
@@ -17,54 +26,292 @@ import cuchaz.enigma.utils.AsmUtil;
 
 /**
  * Provides classes by loading them from a JAR file.
+ *
+ * <p>The central directory of the jar is read once when it is opened, the classes are then read with positioned
+ * reads, which don't block each other, and inflated in the calling thread.
+ *
+ * <p>A file channel is closed for every thread when a thread reading it is interrupted, so the channel is opened
+ * again when a read finds it closed. The interrupted read itself still fails, the others are retried.
  */
 public class JarClassProvider implements AutoCloseable, ClassProvider {
-	private final FileSystem fileSystem;
-	private final Set<String> classNames;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int END_LENGTH = 22;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_LOCATOR_LENGTH = 20;
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+	private static final int CENTRAL_LENGTH = 46;
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+	private static final int LOCAL_LENGTH = 30;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+
+	private final Path jarPath;
+	private volatile FileChannel channel;
+	private boolean closed;
+	private final Map<String, Location> entries;
 
 	public JarClassProvider(Path jarPath) throws IOException {
-		this.fileSystem = FileSystems.newFileSystem(jarPath, (ClassLoader) null);
-		this.classNames = collectClassNames(fileSystem);
+		this.jarPath = jarPath;
+		this.channel = FileChannel.open(jarPath, StandardOpenOption.READ);
+
+		try {
+			this.entries = Collections.unmodifiableMap(readCentralDirectory(channel));
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
 	}
 
-	private static Set<String> collectClassNames(FileSystem fileSystem) throws IOException {
-		Set<String> classNames = new HashSet<>();
+	private static Map<String, Location> readCentralDirectory(FileChannel channel) throws IOException {
+		long fileSize = channel.size();
+		// the end record is followed by a comment of at most 0xFFFF bytes
+		int tailLength = (int) Math.min(fileSize, END_LENGTH + 0xFFFF);
+		ByteBuffer tail = read(channel, fileSize - tailLength, tailLength);
+		int endPosition = -1;
+
+		for (int i = tailLength - END_LENGTH; i >= 0; i--) {
+			if (tail.getInt(i) == END_SIGNATURE) {
+				endPosition = i;
+				break;
+			}
+		}
+
+		if (endPosition < 0) {
+			throw new ZipException("Missing end of central directory");
+		}
+
+		long entryCount = Short.toUnsignedInt(tail.getShort(endPosition + 10));
+		long directoryLength = Integer.toUnsignedLong(tail.getInt(endPosition + 12));
+		long directoryOffset = Integer.toUnsignedLong(tail.getInt(endPosition + 16));
+		long endOffset = fileSize - tailLength + endPosition;
+		// the offsets are shifted when data is prepended to the archive, like the launcher of an executable jar
+		long archiveStart = endOffset - directoryLength - directoryOffset;
+
+		if (entryCount == 0xFFFF || directoryLength == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+			if (endPosition < ZIP64_LOCATOR_LENGTH || tail.getInt(endPosition - ZIP64_LOCATOR_LENGTH) != ZIP64_LOCATOR_SIGNATURE) {
+				throw new ZipException("Missing zip64 end of central directory locator");
+			}
+
+			long zip64EndOffset = tail.getLong(endPosition - ZIP64_LOCATOR_LENGTH + 8);
+			ByteBuffer zip64End = read(channel, zip64EndOffset, 56);
+
+			if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+				throw new ZipException("Invalid zip64 end of central directory");
+			}
+
+			entryCount = zip64End.getLong(32);
+			directoryLength = zip64End.getLong(40);
+			directoryOffset = zip64End.getLong(48);
+			archiveStart = 0;
+		}
+
+		if (directoryLength > Integer.MAX_VALUE) {
+			throw new ZipException("Central directory too large");
+		}
+
+		ByteBuffer directory = read(channel, archiveStart + directoryOffset, (int) directoryLength);
+		Map<String, Location> entries = new HashMap<>((int) Math.min(entryCount * 2, Integer.MAX_VALUE - 8));
+		int position = 0;
 
-		for (Path root : fileSystem.getRootDirectories()) {
-			try (Stream<Path> stream = Files.walk(root)) {
-				stream.map(Path::toString).forEach(path -> {
-					if (path.endsWith(".class")) {
-						String name = path.substring(1, path.length() - ".class".length());
-						classNames.add(name);
+		for (long i = 0; i < entryCount; i++) {
+			if (position + CENTRAL_LENGTH > directory.limit() || directory.getInt(position) != CENTRAL_SIGNATURE) {
+				throw new ZipException("Invalid central directory entry " + i);
+			}
+
+			int method = Short.toUnsignedInt(directory.getShort(position + 10));
+			long crc = Integer.toUnsignedLong(directory.getInt(position + 16));
+			long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+			long size = Integer.toUnsignedLong(directory.getInt(position + 24));
+			int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+			int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+			int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+			long localOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+
+			byte[] nameBytes = new byte[nameLength];
+			directory.get(position + CENTRAL_LENGTH, nameBytes);
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+			if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localOffset == 0xFFFFFFFFL) {
+				// the real values are in the zip64 extra field, in this order, but only those that overflowed
+				int extra = position + CENTRAL_LENGTH + nameLength;
+				int extraEnd = extra + extraLength;
+
+				while (extra + 4 <= extraEnd) {
+					int id = Short.toUnsignedInt(directory.getShort(extra));
+					int length = Short.toUnsignedInt(directory.getShort(extra + 2));
+
+					if (id == ZIP64_EXTRA_ID) {
+						int value = extra + 4;
+
+						if (size == 0xFFFFFFFFL) {
+							size = directory.getLong(value);
+							value += 8;
+						}
+
+						if (compressedSize == 0xFFFFFFFFL) {
+							compressedSize = directory.getLong(value);
+							value += 8;
+						}
+
+						if (localOffset == 0xFFFFFFFFL) {
+							localOffset = directory.getLong(value);
+						}
+
+						break;
 					}
-				});
+
+					extra += 4 + length;
+				}
+			}
+
+			position += CENTRAL_LENGTH + nameLength + extraLength + commentLength;
+
+			if (name.endsWith(".class") && !name.endsWith("/")) {
+				String className = name.substring(0, name.length() - ".class".length());
+				entries.put(className, new Location(archiveStart + localOffset, method, crc, compressedSize, size));
+			}
+		}
+
+		return entries;
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Unexpected end of jar at " + (position + buffer.position()));
 			}
 		}
 
-		return Collections.unmodifiableSet(classNames);
+		return buffer.flip();
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		while (true) {
+			FileChannel channel = this.channel;
+
+			try {
+				return read(channel, position, length);
+			} catch (ClosedByInterruptException e) {
+				// this thread was interrupted, the channel is only opened again for the others
+				reopen(channel);
+				throw e;
+			} catch (ClosedChannelException e) {
+				// another thread reading the channel was interrupted
+				reopen(channel);
+			}
+		}
+	}
+
+	private synchronized void reopen(FileChannel closedChannel) throws IOException {
+		if (closed) {
+			throw new ClosedChannelException();
+		}
+
+		if (channel == closedChannel) {
+			channel = FileChannel.open(jarPath, StandardOpenOption.READ);
+		}
 	}
 
 	@Override
 	public Set<String> getClassNames() {
-		return classNames;
+		return entries.keySet();
+	}
+
+	/**
+	 * Collects a cheap checksum of each class from the central directory, which was already read, keyed by internal
+	 * class name.
+	 */
+	public Map<String, Long> getClassChecksums() {
+		Map<String, Long> checksums = new HashMap<>(entries.size() * 2);
+
+		// the crc alone may collide, the size makes that much less likely
+		entries.forEach((name, entry) -> checksums.put(name, entry.crc | (entry.size << 32)));
+		return checksums;
 	}
 
 	@Nullable
 	@Override
 	public ClassNode get(String name) {
-		if (!classNames.contains(name)) {
+		byte[] bytes = getBytes(name);
+		return bytes == null ? null : AsmUtil.bytesToNode(bytes);
+	}
+
+	@Nullable
+	@Override
+	public byte[] getBytes(String name) {
+		Location entry = entries.get(name);
+
+		if (entry == null) {
 			return null;
 		}
 
 		try {
-			return AsmUtil.bytesToNode(Files.readAllBytes(fileSystem.getPath(name + ".class")));
+			return readEntry(name, entry);
 		} catch (IOException e) {
-			throw new RuntimeException(e);
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private byte[] readEntry(String name, Location entry) throws IOException {
+		if (entry.size > Integer.MAX_VALUE || entry.compressedSize > Integer.MAX_VALUE) {
+			throw new ZipException("Class too large: " + name);
+		}
+
+		// the lengths in the local header may differ from the central directory, only the latter is trusted
+		ByteBuffer header = read(entry.localOffset, LOCAL_LENGTH);
+
+		if (header.getInt(0) != LOCAL_SIGNATURE) {
+			throw new ZipException("Invalid local header for " + name);
+		}
+
+		long dataOffset = entry.localOffset + LOCAL_LENGTH + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+		ByteBuffer data = read(dataOffset, (int) entry.compressedSize);
+
+		if (entry.method == STORED) {
+			return data.array();
+		} else if (entry.method != DEFLATED) {
+			throw new ZipException("Unsupported compression method " + entry.method + " for " + name);
+		}
+
+		byte[] bytes = new byte[(int) entry.size];
+		Inflater inflater = new Inflater(true);
+
+		try {
+			inflater.setInput(data.array());
+			int length = 0;
+
+			while (length < bytes.length && !inflater.finished()) {
+				int inflated = inflater.inflate(bytes, length, bytes.length - length);
+
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+
+				length += inflated;
+			}
+
+			if (length != bytes.length) {
+				throw new ZipException("Truncated entry " + name);
+			}
+		} catch (DataFormatException e) {
+			throw new ZipException("Invalid deflated data for " + name + ": " + e.getMessage());
+		} finally {
+			inflater.end();
 		}
+
+		return bytes;
 	}
 
 	@Override
-	public void close() throws Exception {
-		fileSystem.close();
+	public synchronized void close() throws IOException {
+		closed = true;
+		channel.close();
+	}
+
+	private record Location(long localOffset, int method, long crc, long compressedSize, long size) {
 	}
 }
@@ -0,0 +1,108 @@
+package cuchaz.enigma.classprovider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.ClassNode;
+
+import cuchaz.enigma.utils.AsmUtil;
+
+/**
+ * Provides the classes of the running JDK from the {@code jrt:/} file system.
+ *
+ * <p>The modules are only listed once per JVM. As the JDK classes are the same for every project, use
+ * {@link #shared()}, which caches the parsed classes for all of them.
+ */
+public class JrtClassProvider implements ClassProvider {
+	private static final long SHARED_CACHE_SIZE = 32L * 1024 * 1024;
+
+	private final Map<String, Path> classPaths;
+
+	private JrtClassProvider(Map<String, Path> classPaths) {
+		this.classPaths = classPaths;
+	}
+
+	/**
+	 * @return the provider of the JDK classes shared by the whole JVM, or an empty provider if the running JDK
+	 * has no {@code jrt:/} file system
+	 */
+	public static ClassProvider shared() {
+		return SharedHolder.SHARED;
+	}
+
+	private static Map<String, Path> listClasses() {
+		FileSystem fileSystem;
+
+		try {
+			fileSystem = FileSystems.getFileSystem(URI.create("jrt:/"));
+		} catch (FileSystemNotFoundException | UnsupportedOperationException e) {
+			return Map.of();
+		}
+
+		Map<String, Path> classPaths = new HashMap<>();
+
+		try (Stream<Path> modules = Files.list(fileSystem.getPath("/modules"))) {
+			for (Path module : (Iterable<Path>) modules::iterator) {
+				try (Stream<Path> files = Files.walk(module)) {
+					files.forEach(file -> {
+						String name = module.relativize(file).toString();
+
+						if (name.endsWith(".class") && !name.equals("module-info.class")) {
+							classPaths.putIfAbsent(name.substring(0, name.length() - ".class".length()), file);
+						}
+					});
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Failed to list the JDK classes");
+			e.printStackTrace();
+			return Map.of();
+		}
+
+		return Collections.unmodifiableMap(classPaths);
+	}
+
+	@Override
+	public Set<String> getClassNames() {
+		return classPaths.keySet();
+	}
+
+	@Nullable
+	@Override
+	public ClassNode get(String name) {
+		byte[] bytes = getBytes(name);
+		return bytes == null ? null : AsmUtil.bytesToNode(bytes);
+	}
+
+	@Nullable
+	@Override
+	public byte[] getBytes(String name) {
+		Path path = classPaths.get(name);
+
+		if (path == null) {
+			return null;
+		}
+
+		try {
+			return Files.readAllBytes(path);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static final class SharedHolder {
+		private static final ClassProvider SHARED = new CachingClassProvider(new JrtClassProvider(listClasses()), SHARED_CACHE_SIZE);
+	}
+}
@@ -29,14 +29,55 @@ import cuchaz.enigma.bytecode.translators.SourceFixVisitor;
  * </ul>
  *
  * <p>These fixes are only applied to classes that were indexed by the JarIndex provided, and not library classes.
+ * The fixed classes are cached along with their class files until the index changes, the class files of the other
+ * classes are read from the wrapped provider as is.
  */
 public class ObfuscationFixClassProvider implements ClassProvider {
 	private final ClassProvider classProvider;
 	private final JarIndex jarIndex;
+	private final CachingClassProvider fixedClasses;
+	// the version of the index the cached classes were fixed against
+	private volatile int fixedVersion;
 
 	public ObfuscationFixClassProvider(ClassProvider classProvider, JarIndex jarIndex) {
+		this(classProvider, jarIndex, CachingClassProvider.DEFAULT_MAX_WEIGHT);
+	}
+
+	/**
+	 * @param cacheSize the estimated number of bytes the fixed classes may take up in the cache
+	 */
+	public ObfuscationFixClassProvider(ClassProvider classProvider, JarIndex jarIndex, long cacheSize) {
 		this.classProvider = classProvider;
 		this.jarIndex = jarIndex;
+		this.fixedClasses = new CachingClassProvider(new ClassProvider() {
+			@Override
+			public Collection<String> getClassNames() {
+				return classProvider.getClassNames();
+			}
+
+			@Override
+			@Nullable
+			public ClassNode get(String name) {
+				return fix(classProvider.get(name));
+			}
+		}, cacheSize, true);
+		this.fixedVersion = jarIndex.getVersion();
+	}
+
+	/**
+	 * Drops the fixed classes if the index changed since they were fixed, as the fixes depend on it.
+	 */
+	private void invalidateIfChanged() {
+		int version = jarIndex.getVersion();
+
+		if (version != fixedVersion) {
+			synchronized (this) {
+				if (version != fixedVersion) {
+					fixedClasses.invalidate();
+					fixedVersion = version;
+				}
+			}
+		}
 	}
 
 	@Override
@@ -47,10 +88,29 @@ public class ObfuscationFixClassProvider implements ClassProvider {
 	@Override
 	@Nullable
 	public ClassNode get(String name) {
-		ClassNode node = classProvider.get(name);
+		if (!jarIndex.isIndexed(name)) {
+			return classProvider.get(name);
+		}
+
+		invalidateIfChanged();
+		return fixedClasses.get(name);
+	}
 
+	@Override
+	@Nullable
+	public byte[] getBytes(String name) {
 		if (!jarIndex.isIndexed(name)) {
-			return node;
+			return classProvider.getBytes(name);
+		}
+
+		invalidateIfChanged();
+		return fixedClasses.getBytes(name);
+	}
+
+	@Nullable
+	private ClassNode fix(@Nullable ClassNode node) {
+		if (node == null) {
+			return null;
 		}
 
 		ClassNode fixedNode = new ClassNode();
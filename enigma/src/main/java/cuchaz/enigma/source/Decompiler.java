@@ -1,8 +1,12 @@
 package cuchaz.enigma.source;
 
+import java.util.Collection;
+import java.util.function.BiConsumer;
+
 import org.jetbrains.annotations.Nullable;
 
 import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.utils.Result;
 
 public interface Decompiler {
 	@Deprecated // use remapper specific one for easy doc inclusion
@@ -11,4 +15,28 @@ public interface Decompiler {
 	}
 
 	Source getSource(String className, @Nullable EntryRemapper remapper);
+
+	/**
+	 * Decompiles many classes at once, like for exporting a jar. Decompilers which can share the loading and
+	 * analysis of classes between the classes they decompile together override this, by default each class is
+	 * decompiled on its own.
+	 *
+	 * <p>The sources may still decompile lazily, and fail when first used.
+	 *
+	 * @param classNames the top-level classes to decompile
+	 * @param consumer given the source of each class, or the reason it failed, from any thread
+	 */
+	default void decompileAll(Collection<String> classNames, @Nullable EntryRemapper remapper, BiConsumer<String, Result<Source, Throwable>> consumer) {
+		classNames.parallelStream().forEach(className -> {
+			Result<Source, Throwable> source;
+
+			try {
+				source = Result.ok(getSource(className, remapper));
+			} catch (Throwable t) {
+				source = Result.err(t);
+			}
+
+			consumer.accept(className, source);
+		});
+	}
 }
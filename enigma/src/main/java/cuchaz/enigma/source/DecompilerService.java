@@ -1,5 +1,7 @@
 package cuchaz.enigma.source;
 
+import org.jetbrains.annotations.Nullable;
+
 import cuchaz.enigma.api.service.EnigmaService;
 import cuchaz.enigma.api.service.EnigmaServiceType;
 import cuchaz.enigma.classprovider.ClassProvider;
@@ -8,4 +10,13 @@ public interface DecompilerService extends EnigmaService {
 	EnigmaServiceType<DecompilerService> TYPE = EnigmaServiceType.create("decompiler");
 
 	Decompiler create(ClassProvider classProvider, SourceSettings settings);
+
+	/**
+	 * @return an id of this decompiler which changes whenever its output does, for the decompiled sources to be
+	 * cached under, or {@code null} if they should not be cached
+	 */
+	@Nullable
+	default String getCacheId() {
+		return null;
+	}
 }
@@ -1,13 +1,32 @@
 package cuchaz.enigma.source;
 
+import java.util.function.BiFunction;
+
+import cuchaz.enigma.classprovider.ClassProvider;
 import cuchaz.enigma.source.bytecode.BytecodeDecompiler;
 import cuchaz.enigma.source.cfr.CfrDecompiler;
 import cuchaz.enigma.source.procyon.ProcyonDecompiler;
 import cuchaz.enigma.source.vineflower.VineflowerDecompiler;
 
 public class Decompilers {
-	public static final DecompilerService VINEFLOWER = VineflowerDecompiler::new;
-	public static final DecompilerService CFR = CfrDecompiler::new;
-	public static final DecompilerService PROCYON = ProcyonDecompiler::new;
-	public static final DecompilerService BYTECODE = BytecodeDecompiler::new;
+	public static final DecompilerService VINEFLOWER = new Builtin("vineflower", VineflowerDecompiler::new);
+	public static final DecompilerService CFR = new Builtin("cfr", CfrDecompiler::new);
+	public static final DecompilerService PROCYON = new Builtin("procyon", ProcyonDecompiler::new);
+	public static final DecompilerService BYTECODE = new Builtin("bytecode", BytecodeDecompiler::new);
+
+	/**
+	 * The decompilers bundled with Enigma, whose output only changes with the version of Enigma, which the source
+	 * cache already keys on.
+	 */
+	private record Builtin(String name, BiFunction<ClassProvider, SourceSettings, Decompiler> factory) implements DecompilerService {
+		@Override
+		public Decompiler create(ClassProvider classProvider, SourceSettings settings) {
+			return factory.apply(classProvider, settings);
+		}
+
+		@Override
+		public String getCacheId() {
+			return "enigma:" + name;
+		}
+	}
 }
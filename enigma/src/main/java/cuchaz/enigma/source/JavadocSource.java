@@ -0,0 +1,215 @@
+package cuchaz.enigma.source;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.index.EntryIndex;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldDefEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.LocalVariableEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+
+/**
+ * A decompiled source with the javadocs of a remapper inserted before the declarations of its index, so that
+ * changing the javadocs does not need the class to be decompiled again.
+ */
+public final class JavadocSource implements Source {
+	private final Source source;
+	private final EntryRemapper remapper;
+	private SourceIndex index;
+
+	/**
+	 * @param source the source to add the javadocs to, which must not have any yet
+	 */
+	public JavadocSource(Source source, EntryRemapper remapper) {
+		this.source = source;
+		this.remapper = remapper;
+	}
+
+	@Override
+	public String asString() {
+		return index().getSource();
+	}
+
+	@Override
+	public Source withJavadocs(EntryRemapper remapper) {
+		return new JavadocSource(source, remapper);
+	}
+
+	@Override
+	public synchronized SourceIndex index() {
+		if (index == null) {
+			index = insertJavadocs(source.index(), remapper);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Creates a copy of an index with the javadocs of the remapper inserted before its declarations. The given
+	 * index is left as it is.
+	 */
+	public static SourceIndex insertJavadocs(SourceIndex index, EntryRemapper remapper) {
+		String source = index.getSource();
+		EntryIndex entryIndex = remapper.getJarIndex().getEntryIndex();
+		// the comments to insert, by the position they are inserted at
+		NavigableMap<Integer, String> comments = new TreeMap<>();
+
+		for (Token token : index.declarationTokens()) {
+			List<String> lines = getJavadocLines(index.getDeclaration(token), remapper, entryIndex);
+
+			if (!lines.isEmpty()) {
+				int position = getCommentPosition(source, token.start);
+				comments.merge(position, formatComment(lines, getIndent(source, position)), String::concat);
+			}
+		}
+
+		StringBuilder builder = new StringBuilder(source);
+		// the number of characters inserted at or before each position
+		NavigableMap<Integer, Integer> offsets = new TreeMap<>();
+		int offset = 0;
+
+		for (Map.Entry<Integer, String> comment : comments.entrySet()) {
+			builder.insert(comment.getKey() + offset, comment.getValue());
+			offset += comment.getValue().length();
+			offsets.put(comment.getKey(), offset);
+		}
+
+		SourceIndex commented = new SourceIndex(builder.toString());
+
+		for (Token token : index.referenceTokens()) {
+			Map.Entry<Integer, Integer> tokenOffset = offsets.floorEntry(token.start);
+			Token movedToken = tokenOffset == null ? token.move(0) : token.move(tokenOffset.getValue());
+			Entry<?> declaration = index.getDeclaration(token);
+
+			if (declaration != null) {
+				commented.addDeclaration(movedToken, declaration);
+			} else {
+				EntryReference<Entry<?>, Entry<?>> reference = index.getReference(token);
+				commented.addReference(movedToken, reference.entry, reference.context);
+			}
+		}
+
+		return commented;
+	}
+
+	private static List<String> getJavadocLines(Entry<?> entry, EntryRemapper remapper, EntryIndex entryIndex) {
+		List<String> lines = new ArrayList<>();
+		List<String> params = new ArrayList<>();
+
+		if (entry instanceof ClassEntry classEntry) {
+			for (FieldDefEntry component : entryIndex.getRecordComponents(classEntry)) {
+				addParam(params, component, remapper.getDeobfMapping(component));
+			}
+		} else if (entry instanceof FieldEntry fieldEntry) {
+			if (isRecordComponent(fieldEntry, entryIndex)) {
+				// documented with the record instead
+				return lines;
+			}
+		} else if (entry instanceof MethodEntry) {
+			List<LocalVariableEntry> parameters = new ArrayList<>();
+			Collection<Entry<?>> children = remapper.getObfChildren(entry);
+
+			if (children != null) {
+				for (Entry<?> child : children) {
+					if (child instanceof LocalVariableEntry parameter && parameter.isArgument()) {
+						parameters.add(parameter);
+					}
+				}
+			}
+
+			parameters.sort(Comparator.comparingInt(LocalVariableEntry::getIndex));
+
+			for (LocalVariableEntry parameter : parameters) {
+				addParam(params, parameter, remapper.getDeobfMapping(parameter));
+			}
+		} else {
+			// only classes, fields and methods are documented
+			return lines;
+		}
+
+		String javadoc = remapper.getDeobfMapping(entry).javadoc();
+
+		if (javadoc != null && !javadoc.isBlank()) {
+			lines.addAll(javadoc.trim().lines().toList());
+
+			if (!params.isEmpty()) {
+				lines.add("");
+			}
+		}
+
+		lines.addAll(params);
+		return lines;
+	}
+
+	private static void addParam(List<String> params, Entry<?> entry, EntryMapping mapping) {
+		String javadoc = mapping.javadoc();
+
+		if (javadoc != null && !javadoc.isBlank()) {
+			String name = mapping.targetName() != null ? mapping.targetName() : entry.getName();
+			params.addAll(("@param " + name + " " + javadoc.trim()).lines().toList());
+		}
+	}
+
+	private static boolean isRecordComponent(FieldEntry entry, EntryIndex entryIndex) {
+		for (FieldDefEntry component : entryIndex.getRecordComponents(entry.getParent())) {
+			if (component.getName().equals(entry.getName()) && component.getDesc().equals(entry.getDesc())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Gets where the javadoc of a declaration goes, which is the start of its line, or of the annotations on the
+	 * lines before it.
+	 */
+	private static int getCommentPosition(String source, int declarationStart) {
+		int lineStart = source.lastIndexOf('\n', declarationStart - 1) + 1;
+
+		while (lineStart > 0) {
+			int previousLineStart = source.lastIndexOf('\n', lineStart - 2) + 1;
+
+			if (!source.substring(previousLineStart, lineStart).trim().startsWith("@")) {
+				break;
+			}
+
+			lineStart = previousLineStart;
+		}
+
+		return lineStart;
+	}
+
+	private static String getIndent(String source, int lineStart) {
+		int end = lineStart;
+
+		while (end < source.length() && (source.charAt(end) == ' ' || source.charAt(end) == '\t')) {
+			end++;
+		}
+
+		return source.substring(lineStart, end);
+	}
+
+	private static String formatComment(List<String> lines, String indent) {
+		StringBuilder builder = new StringBuilder();
+		builder.append(indent).append("/**\n");
+
+		for (String line : lines) {
+			builder.append(indent).append(line.isEmpty() ? " *" : " * " + line).append('\n');
+		}
+
+		builder.append(indent).append(" */\n");
+		return builder.toString();
+	}
+}
@@ -0,0 +1,498 @@
+package cuchaz.enigma.source;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.Nullable;
+
+import cuchaz.enigma.Enigma;
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.Signature;
+import cuchaz.enigma.translation.representation.TypeDescriptor;
+import cuchaz.enigma.translation.representation.entry.ClassDefEntry;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldDefEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.LocalVariableDefEntry;
+import cuchaz.enigma.translation.representation.entry.LocalVariableEntry;
+import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import cuchaz.enigma.utils.Utils;
+
+/**
+ * Stores the uncommented sources of decompiled classes on disk, keyed by the bytes the decompiler was given for a
+ * class and its inner classes, the decompiler and its settings. Javadocs are inserted into the cached sources, so
+ * they are never decompiled again while the class and the decompiler stay the same.
+ *
+ * <p>Every change of a class or of the decompiler adds another source, so the directory is {@link #prune pruned}
+ * down to a size, dropping the sources that were used the longest time ago.
+ */
+public final class SourceCache {
+	/**
+	 * The size the directory is pruned to by default, in bytes.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+
+	private static final int MAGIC = 0x454E5352; // "ENSR"
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int TAG_NULL = 0;
+	private static final int TAG_CLASS = 1;
+	private static final int TAG_CLASS_DEF = 2;
+	private static final int TAG_FIELD = 3;
+	private static final int TAG_FIELD_DEF = 4;
+	private static final int TAG_METHOD = 5;
+	private static final int TAG_METHOD_DEF = 6;
+	private static final int TAG_LOCAL_VARIABLE = 7;
+	private static final int TAG_LOCAL_VARIABLE_DEF = 8;
+
+	private final Path directory;
+	private final String decompilerId;
+	private final SourceSettings settings;
+
+	/**
+	 * @param decompilerId the {@link DecompilerService#getCacheId() cache id} of the decompiler
+	 */
+	public SourceCache(Path directory, String decompilerId, SourceSettings settings) {
+		this.directory = directory;
+		this.decompilerId = decompilerId;
+		this.settings = settings;
+	}
+
+	/**
+	 * @param classNames the class to decompile, followed by its inner classes, which are decompiled with it
+	 * @return the key of the source of the class, or {@code null} if a class is missing
+	 */
+	@Nullable
+	public byte[] computeKey(ClassProvider classProvider, List<String> classNames) {
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+
+		digest.update(Enigma.VERSION.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(decompilerId.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update((byte) (settings.removeImports ? 1 : 0));
+		digest.update((byte) (settings.removeVariableFinal ? 1 : 0));
+
+		for (String className : classNames) {
+			byte[] bytes = classProvider.getBytes(className);
+
+			if (bytes == null) {
+				return null;
+			}
+
+			digest.update(className.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(bytes);
+		}
+
+		return digest.digest();
+	}
+
+	/**
+	 * @return the cached source, or {@code null} if none was stored under the key
+	 */
+	@Nullable
+	public Source get(byte[] key) {
+		Path path = getPath(key);
+
+		if (!Files.isRegularFile(path)) {
+			return null;
+		}
+
+		try {
+			byte[] data = Files.readAllBytes(path);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				return null;
+			}
+
+			byte[] storedKey = new byte[key.length];
+			in.readFully(storedKey);
+
+			if (!Arrays.equals(storedKey, key)) {
+				return null;
+			}
+
+			byte[] index = Arrays.copyOfRange(data, 8 + key.length, data.length);
+			// read once here, so that a broken file is decompiled again
+			readIndex(index);
+			// the sources used the longest time ago are pruned first
+			Utils.touch(path);
+			return new CachedSource(index);
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Failed to read cached source " + path + ", decompiling");
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the given source under the key, decompiling it if it was not yet.
+	 *
+	 * @return the source backed by what was stored, which adds javadocs to the given source when it needs any
+	 */
+	public Source put(byte[] key, Source source) {
+		SourceIndex sourceIndex;
+
+		try {
+			sourceIndex = source.index();
+		} catch (RuntimeException e) {
+			// nothing to store, the source fails again where it is used, like it would without the cache
+			return source;
+		}
+
+		byte[] index;
+
+		try {
+			index = writeIndex(sourceIndex);
+		} catch (IOException | RuntimeException e) {
+			// entries which cannot be stored, the source is still usable
+			System.err.println("Failed to cache decompiled source");
+			e.printStackTrace();
+			return source;
+		}
+
+		Path path = getPath(key);
+
+		try {
+			Files.createDirectories(directory);
+			Path tempPath = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+			try {
+				try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tempPath))) {
+					out.writeInt(MAGIC);
+					out.writeInt(FORMAT_VERSION);
+					out.write(key);
+					out.write(index);
+				}
+
+				Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tempPath);
+			}
+		} catch (IOException e) {
+			System.err.println("Failed to write cached source " + path);
+			e.printStackTrace();
+		}
+
+		return new CachedSource(index);
+	}
+
+	/**
+	 * Deletes the sources used the longest time ago until the sources in the directory take at most the given
+	 * size, along with the files left behind by writes that did not finish.
+	 */
+	public static void prune(Path directory, long maxSize) {
+		Utils.pruneCacheDirectory(directory, maxSize);
+	}
+
+	private Path getPath(byte[] key) {
+		return directory.resolve(HexFormat.of().formatHex(key) + ".source");
+	}
+
+	private static byte[] writeIndex(SourceIndex index) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Output out = new Output(new DataOutputStream(bytes));
+
+		byte[] source = index.getSource().getBytes(StandardCharsets.UTF_8);
+		out.out.writeInt(source.length);
+		out.out.write(source);
+
+		List<Entry<?>> declarations = new ArrayList<>();
+		index.declarations().forEach(declarations::add);
+		out.out.writeInt(declarations.size());
+
+		for (Entry<?> declaration : declarations) {
+			out.writeToken(index.getDeclarationToken(declaration));
+			out.writeEntry(declaration);
+		}
+
+		List<Token> references = new ArrayList<>();
+
+		for (Token token : index.referenceTokens()) {
+			// the declarations add their own references
+			if (index.getDeclaration(token) == null) {
+				references.add(token);
+			}
+		}
+
+		out.out.writeInt(references.size());
+
+		for (Token token : references) {
+			EntryReference<Entry<?>, Entry<?>> reference = index.getReference(token);
+			out.writeToken(token);
+			out.writeEntry(reference.entry);
+			out.writeEntry(reference.context);
+		}
+
+		out.out.flush();
+		return bytes.toByteArray();
+	}
+
+	static SourceIndex readIndex(byte[] data) throws IOException {
+		Input in = new Input(new DataInputStream(new ByteArrayInputStream(data)));
+
+		byte[] source = new byte[in.in.readInt()];
+		in.in.readFully(source);
+		SourceIndex index = new SourceIndex(new String(source, StandardCharsets.UTF_8));
+
+		for (int i = in.in.readInt(); i > 0; i--) {
+			Token token = in.readToken();
+			index.addDeclaration(token, in.readEntry());
+		}
+
+		for (int i = in.in.readInt(); i > 0; i--) {
+			Token token = in.readToken();
+			Entry<?> entry = in.readEntry();
+			index.addReference(token, entry, in.readEntry());
+		}
+
+		return index;
+	}
+
+	private record TableKey(int tag, Entry<?> entry) {
+	}
+
+	private static final class Output {
+		private final DataOutputStream out;
+		private final Map<TableKey, Integer> entries = new HashMap<>();
+
+		private Output(DataOutputStream out) {
+			this.out = out;
+		}
+
+		private void writeString(@Nullable String value) throws IOException {
+			out.writeBoolean(value != null);
+
+			if (value != null) {
+				out.writeUTF(value);
+			}
+		}
+
+		private void writeToken(Token token) throws IOException {
+			out.writeInt(token.start);
+			out.writeInt(token.end);
+			writeString(token.text);
+		}
+
+		private void writeEntry(@Nullable Entry<?> entry) throws IOException {
+			int tag = getTag(entry);
+
+			if (tag == TAG_NULL) {
+				out.writeInt(-1);
+				return;
+			}
+
+			TableKey key = new TableKey(tag, entry);
+			Integer id = entries.get(key);
+
+			if (id != null) {
+				out.writeInt(id);
+				return;
+			}
+
+			out.writeInt(-2);
+			out.writeByte(tag);
+			writeEntry(entry.getParent());
+			writeString(entry.getName());
+			writeString(entry.getJavadocs());
+
+			if (entry instanceof ClassDefEntry classDef) {
+				writeString(classDef.getSignature().getSignature());
+				out.writeInt(classDef.getAccess().getFlags());
+				writeEntry(classDef.getSuperClass());
+				out.writeInt(classDef.getInterfaces().length);
+
+				for (ClassEntry interfaceEntry : classDef.getInterfaces()) {
+					writeEntry(interfaceEntry);
+				}
+			} else if (entry instanceof FieldEntry field) {
+				writeString(field.getDesc().toString());
+
+				if (field instanceof FieldDefEntry fieldDef) {
+					writeString(fieldDef.getSignature().getSignature());
+					out.writeInt(fieldDef.getAccess().getFlags());
+				}
+			} else if (entry instanceof MethodEntry method) {
+				writeString(method.getDesc().toString());
+
+				if (method instanceof MethodDefEntry methodDef) {
+					writeString(methodDef.getSignature().getSignature());
+					out.writeInt(methodDef.getAccess().getFlags());
+				}
+			} else if (entry instanceof LocalVariableEntry variable) {
+				out.writeInt(variable.getIndex());
+				out.writeBoolean(variable.isArgument());
+
+				if (variable instanceof LocalVariableDefEntry variableDef) {
+					writeString(variableDef.getDesc().toString());
+				}
+			}
+
+			// registered after the parents, in the same order the reader sees them
+			entries.put(key, entries.size());
+		}
+
+		private static int getTag(@Nullable Entry<?> entry) {
+			if (entry == null) {
+				return TAG_NULL;
+			} else if (entry instanceof ClassDefEntry) {
+				return TAG_CLASS_DEF;
+			} else if (entry instanceof ClassEntry) {
+				return TAG_CLASS;
+			} else if (entry instanceof FieldDefEntry) {
+				return TAG_FIELD_DEF;
+			} else if (entry instanceof FieldEntry) {
+				return TAG_FIELD;
+			} else if (entry instanceof MethodDefEntry) {
+				return TAG_METHOD_DEF;
+			} else if (entry instanceof MethodEntry) {
+				return TAG_METHOD;
+			} else if (entry instanceof LocalVariableDefEntry) {
+				return TAG_LOCAL_VARIABLE_DEF;
+			} else if (entry instanceof LocalVariableEntry) {
+				return TAG_LOCAL_VARIABLE;
+			}
+
+			throw new IllegalArgumentException("Cannot cache a source referencing an entry of type " + entry.getClass().getName() + ": " + entry);
+		}
+	}
+
+	private static final class Input {
+		private final DataInputStream in;
+		private final List<Entry<?>> entries = new ArrayList<>();
+
+		private Input(DataInputStream in) {
+			this.in = in;
+		}
+
+		@Nullable
+		private String readString() throws IOException {
+			return in.readBoolean() ? in.readUTF() : null;
+		}
+
+		private Token readToken() throws IOException {
+			return new Token(in.readInt(), in.readInt(), readString());
+		}
+
+		@Nullable
+		@SuppressWarnings("unchecked")
+		private <E extends Entry<?>> E readEntry() throws IOException {
+			int id = in.readInt();
+
+			if (id == -1) {
+				return null;
+			} else if (id != -2) {
+				return (E) entries.get(id);
+			}
+
+			int tag = in.readByte();
+			Entry<?> parent = readEntry();
+			String name = readString();
+			String javadocs = readString();
+
+			Entry<?> entry = switch (tag) {
+			case TAG_CLASS -> new ClassEntry((ClassEntry) parent, name, javadocs);
+			case TAG_CLASS_DEF -> {
+				Signature signature = Signature.createSignature(readString());
+				AccessFlags access = new AccessFlags(in.readInt());
+				ClassEntry superClass = readEntry();
+				ClassEntry[] interfaces = new ClassEntry[in.readInt()];
+
+				for (int i = 0; i < interfaces.length; i++) {
+					interfaces[i] = readEntry();
+				}
+
+				yield new ClassDefEntry((ClassEntry) parent, name, signature, access, superClass, interfaces, javadocs);
+			}
+			case TAG_FIELD -> new FieldEntry((ClassEntry) parent, name, new TypeDescriptor(readString()), javadocs);
+			case TAG_FIELD_DEF -> {
+				TypeDescriptor desc = new TypeDescriptor(readString());
+				Signature signature = Signature.createTypedSignature(readString());
+				yield new FieldDefEntry((ClassEntry) parent, name, desc, signature, new AccessFlags(in.readInt()), javadocs);
+			}
+			case TAG_METHOD -> new MethodEntry((ClassEntry) parent, name, new MethodDescriptor(readString()), javadocs);
+			case TAG_METHOD_DEF -> {
+				MethodDescriptor desc = new MethodDescriptor(readString());
+				Signature signature = Signature.createSignature(readString());
+				yield new MethodDefEntry((ClassEntry) parent, name, desc, signature, new AccessFlags(in.readInt()), javadocs);
+			}
+			case TAG_LOCAL_VARIABLE -> new LocalVariableEntry((MethodEntry) parent, in.readInt(), name, in.readBoolean(), javadocs);
+			case TAG_LOCAL_VARIABLE_DEF -> {
+				int index = in.readInt();
+				boolean argument = in.readBoolean();
+				yield new LocalVariableDefEntry((MethodEntry) parent, index, name, argument, new TypeDescriptor(readString()), javadocs);
+			}
+			default -> throw new IOException("Corrupt cached source, unknown entry tag " + tag);
+			};
+
+			entries.add(entry);
+			return (E) entry;
+		}
+	}
+
+	/**
+	 * A source read from what was stored, which the javadocs are inserted into like for the sources of the
+	 * decompilers.
+	 */
+	private static final class CachedSource implements Source {
+		private final byte[] data;
+		private SourceIndex index;
+
+		private CachedSource(byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public String asString() {
+			return index().getSource();
+		}
+
+		@Override
+		public Source withJavadocs(EntryRemapper remapper) {
+			return new JavadocSource(this, remapper);
+		}
+
+		@Override
+		public synchronized SourceIndex index() {
+			if (index == null) {
+				try {
+					index = readIndex(data);
+				} catch (IOException e) {
+					// already read once when the source was loaded
+					throw new IllegalStateException(e);
+				}
+			}
+
+			return index;
+		}
+	}
+}
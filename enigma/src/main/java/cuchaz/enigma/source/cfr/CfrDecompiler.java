@@ -2,22 +2,23 @@ package cuchaz.enigma.source.cfr;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 import org.benf.cfr.reader.apiunreleased.ClassFileSource2;
 import org.benf.cfr.reader.apiunreleased.JarContent;
 import org.benf.cfr.reader.bytecode.analysis.parse.utils.Pair;
+import org.benf.cfr.reader.state.DCCommonState;
 import org.benf.cfr.reader.util.AnalysisType;
 import org.benf.cfr.reader.util.getopt.Options;
 import org.benf.cfr.reader.util.getopt.OptionsImpl;
 import org.jetbrains.annotations.Nullable;
-import org.objectweb.asm.tree.ClassNode;
 
 import cuchaz.enigma.classprovider.ClassProvider;
 import cuchaz.enigma.source.Decompiler;
 import cuchaz.enigma.source.Source;
 import cuchaz.enigma.source.SourceSettings;
 import cuchaz.enigma.translation.mapping.EntryRemapper;
-import cuchaz.enigma.utils.AsmUtil;
+import cuchaz.enigma.utils.Result;
 
 public class CfrDecompiler implements Decompiler {
 	// cfr doesn't add final on params so final setting is ignored
@@ -36,6 +37,25 @@ public class CfrDecompiler implements Decompiler {
 		return new CfrSource(className, settings, this.options, this.classFileSource, mapper);
 	}
 
+	@Override
+	public void decompileAll(Collection<String> classNames, @Nullable EntryRemapper mapper, BiConsumer<String, Result<Source, Throwable>> consumer) {
+		// one state for all the classes, so that the classes they use are only loaded and analysed once
+		DCCommonState state = CfrSource.createState(this.options, this.classFileSource);
+
+		for (String className : classNames) {
+			Source source;
+
+			try {
+				source = new CfrSource(className, settings, this.options, this.classFileSource, mapper, CfrSource.decompile(state, className, settings, this.options, mapper));
+			} catch (RuntimeException e) {
+				// decompiled on its own, to fail by itself
+				source = getSource(className, mapper);
+			}
+
+			consumer.accept(className, Result.ok(source));
+		}
+	}
+
 	private record ClassFileSource(ClassProvider classProvider) implements ClassFileSource2 {
 		@Override
 		public JarContent addJarContent(String s, AnalysisType analysisType) {
@@ -58,13 +78,13 @@ public class CfrDecompiler implements Decompiler {
 
 		@Override
 		public Pair<byte[], String> getClassFileContent(String path) {
-			ClassNode node = classProvider.get(path.substring(0, path.lastIndexOf('.')));
+			byte[] bytes = classProvider.getBytes(path.substring(0, path.lastIndexOf('.')));
 
-			if (node == null) {
+			if (bytes == null) {
 				return null;
 			}
 
-			return new Pair<>(AsmUtil.nodeToBytes(node), path);
+			return new Pair<>(bytes, path);
 		}
 	}
 }
@@ -13,6 +13,7 @@ import org.benf.cfr.reader.util.getopt.Options;
 import org.benf.cfr.reader.util.getopt.OptionsImpl;
 import org.jetbrains.annotations.Nullable;
 
+import cuchaz.enigma.source.JavadocSource;
 import cuchaz.enigma.source.Source;
 import cuchaz.enigma.source.SourceIndex;
 import cuchaz.enigma.source.SourceSettings;
@@ -35,9 +36,16 @@ public class CfrSource implements Source {
 		this.mapper = mapper;
 	}
 
+	CfrSource(String className, SourceSettings settings, Options options, ClassFileSource2 classFileSource, @Nullable EntryRemapper mapper, SourceIndex index) {
+		this(className, settings, options, classFileSource, mapper);
+		this.index = index;
+	}
+
 	@Override
 	public Source withJavadocs(EntryRemapper mapper) {
-		return new CfrSource(className, settings, options, classFileSource, mapper);
+		// the javadocs are inserted into the decompiled source, rather than decompiling the class again with them
+		Source uncommented = this.mapper == null ? this : new CfrSource(className, settings, options, classFileSource, null);
+		return new JavadocSource(uncommented, mapper);
 	}
 
 	@Override
@@ -52,14 +60,25 @@ public class CfrSource implements Source {
 		return index.getSource();
 	}
 
-	private void ensureDecompiled() {
+	private synchronized void ensureDecompiled() {
 		if (index != null) {
 			return;
 		}
 
+		index = decompile(createState(options, classFileSource), className, settings, options, mapper);
+	}
+
+	/**
+	 * Creates the state classes are loaded into and analysed with. Classes decompiled with the same state share
+	 * the work for the classes they use, but must not be decompiled at the same time.
+	 */
+	static DCCommonState createState(Options options, ClassFileSource2 classFileSource) {
 		DCCommonState commonState = new DCCommonState(options, classFileSource);
 		ObfuscationMapping mapping = MappingFactory.get(options, commonState);
-		DCCommonState state = new DCCommonState(commonState, mapping);
+		return new DCCommonState(commonState, mapping);
+	}
+
+	static SourceIndex decompile(DCCommonState state, String className, SourceSettings settings, Options options, @Nullable EntryRemapper mapper) {
 		ClassFile tree = state.getClassFileMaybePath(className);
 
 		state.configureWith(tree);
@@ -84,6 +103,6 @@ public class CfrSource implements Source {
 
 		CfrDumper dumper = new CfrDumper(new StringBuilder(), settings, typeUsageCollector.getRealTypeUsageInformation(), options, mapper);
 		tree.dump(state.getObfuscationMapping().wrap(dumper));
-		index = dumper.getIndex();
+		return dumper.getIndex();
 	}
 }
@@ -7,10 +7,10 @@ import com.strobel.decompiler.PlainTextOutput;
 import com.strobel.decompiler.languages.java.JavaOutputVisitor;
 import com.strobel.decompiler.languages.java.ast.CompilationUnit;
 
+import cuchaz.enigma.source.JavadocSource;
 import cuchaz.enigma.source.Source;
 import cuchaz.enigma.source.SourceIndex;
 import cuchaz.enigma.source.procyon.index.SourceIndexVisitor;
-import cuchaz.enigma.source.procyon.transformers.AddJavadocsAstTransform;
 import cuchaz.enigma.translation.mapping.EntryRemapper;
 
 public class ProcyonSource implements Source {
@@ -43,8 +43,6 @@ public class ProcyonSource implements Source {
 
 	@Override
 	public Source withJavadocs(EntryRemapper remapper) {
-		CompilationUnit remappedTree = (CompilationUnit) tree.clone();
-		new AddJavadocsAstTransform(remapper).run(remappedTree);
-		return new ProcyonSource(remappedTree, settings);
+		return new JavadocSource(this, remapper);
 	}
 }
@@ -3,25 +3,32 @@ package cuchaz.enigma.source.vineflower;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
 
 import org.jetbrains.java.decompiler.main.extern.IContextSource;
 import org.jetbrains.java.decompiler.main.extern.IResultSaver;
-import org.objectweb.asm.tree.ClassNode;
 
 import cuchaz.enigma.classprovider.ClassProvider;
-import cuchaz.enigma.utils.AsmUtil;
 
 class VineflowerContextSource implements IContextSource {
 	private final IContextSource classpathSource = new ClasspathSource();
 	private final ClassProvider classProvider;
-	private final String className;
+	// the top-level classes to decompile
+	private final Set<String> classNames;
 	private Entries entries;
 
 	VineflowerContextSource(ClassProvider classProvider, String className) {
+		this(classProvider, List.of(className));
+	}
+
+	VineflowerContextSource(ClassProvider classProvider, Collection<String> classNames) {
 		this.classProvider = classProvider;
-		this.className = className;
+		this.classNames = new LinkedHashSet<>(classNames);
 	}
 
 	public IContextSource getClasspath() {
@@ -30,7 +37,11 @@ class VineflowerContextSource implements IContextSource {
 
 	@Override
 	public String getName() {
-		return "Enigma-provided context for class " + className;
+		return "Enigma-provided context for " + describeClasses();
+	}
+
+	private String describeClasses() {
+		return classNames.size() == 1 ? "class " + classNames.iterator().next() : classNames.size() + " classes";
 	}
 
 	@Override
@@ -48,15 +59,25 @@ class VineflowerContextSource implements IContextSource {
 			if (entries != null) return;
 
 			List<String> classNames = new ArrayList<>();
-			classNames.add(className);
 
-			int dollarIndex = className.indexOf('$');
-			String outermostClass = dollarIndex == -1 ? className : className.substring(0, className.indexOf('$'));
-			String outermostClassSuffixed = outermostClass + "$";
+			for (String className : this.classNames) {
+				classNames.add(className);
+
+				int dollarIndex = className.indexOf('$');
+				String outermostClass = dollarIndex == -1 ? className : className.substring(0, className.indexOf('$'));
+				String outermostClassSuffixed = outermostClass + "$";
+
+				Collection<String> candidates = classProvider.getClassNames();
+
+				if (candidates instanceof NavigableSet<String> sortedNames) {
+					// only the names sharing the prefix, rather than every class
+					candidates = sortedNames.subSet(outermostClassSuffixed, true, outermostClassSuffixed + Character.MAX_VALUE, false);
+				}
 
-			for (String currentClass : classProvider.getClassNames()) {
-				if (currentClass.startsWith(outermostClassSuffixed) && !currentClass.equals(className)) {
-					classNames.add(currentClass);
+				for (String currentClass : candidates) {
+					if (currentClass.startsWith(outermostClassSuffixed) && !currentClass.equals(className)) {
+						classNames.add(currentClass);
+					}
 				}
 			}
 
@@ -70,13 +91,13 @@ class VineflowerContextSource implements IContextSource {
 
 	@Override
 	public InputStream getInputStream(String resource) {
-		ClassNode node = classProvider.get(resource.substring(0, resource.lastIndexOf(".class")));
+		byte[] bytes = classProvider.getBytes(resource.substring(0, resource.lastIndexOf(".class")));
 
-		if (node == null) {
+		if (bytes == null) {
 			return null;
 		}
 
-		return new ByteArrayInputStream(AsmUtil.nodeToBytes(node));
+		return new ByteArrayInputStream(bytes);
 	}
 
 	@Override
@@ -87,7 +108,7 @@ class VineflowerContextSource implements IContextSource {
 
 			@Override
 			public void acceptClass(String qualifiedName, String fileName, String content, int[] mapping) {
-				if (qualifiedName.equals(VineflowerContextSource.this.className)) {
+				if (VineflowerContextSource.this.classNames.contains(qualifiedName)) {
 					saver.saveClassFile(null, qualifiedName, fileName, content, mapping);
 				}
 			}
@@ -106,7 +127,7 @@ class VineflowerContextSource implements IContextSource {
 	public class ClasspathSource implements IContextSource {
 		@Override
 		public String getName() {
-			return "Enigma-provided classpath context for " + VineflowerContextSource.this.className;
+			return "Enigma-provided classpath context for " + describeClasses();
 		}
 
 		@Override
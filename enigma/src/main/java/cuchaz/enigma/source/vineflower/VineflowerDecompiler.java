@@ -1,12 +1,19 @@
 package cuchaz.enigma.source.vineflower;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
 import org.jetbrains.annotations.Nullable;
 
 import cuchaz.enigma.classprovider.ClassProvider;
 import cuchaz.enigma.source.Decompiler;
 import cuchaz.enigma.source.Source;
+import cuchaz.enigma.source.SourceIndex;
 import cuchaz.enigma.source.SourceSettings;
 import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.utils.Result;
 
 public class VineflowerDecompiler implements Decompiler {
 	private final ClassProvider classProvider;
@@ -21,4 +28,28 @@ public class VineflowerDecompiler implements Decompiler {
 	public Source getSource(String className, @Nullable EntryRemapper remapper) {
 		return new VineflowerSource(new VineflowerContextSource(classProvider, className), remapper, settings);
 	}
+
+	@Override
+	public void decompileAll(Collection<String> classNames, @Nullable EntryRemapper remapper, BiConsumer<String, Result<Source, Throwable>> consumer) {
+		Map<String, SourceIndex> decompiled = new HashMap<>();
+
+		try {
+			VineflowerSource.decompileAll(new VineflowerContextSource(classProvider, classNames), remapper, settings, decompiled::put);
+		} catch (RuntimeException e) {
+			System.err.println("Failed to decompile " + classNames.size() + " classes together, decompiling them one by one");
+			e.printStackTrace();
+			decompiled.clear();
+		}
+
+		for (String className : classNames) {
+			SourceIndex index = decompiled.get(className);
+
+			if (index != null) {
+				consumer.accept(className, Result.ok(new VineflowerSource(new VineflowerContextSource(classProvider, className), remapper, settings, index)));
+			} else {
+				// not output by the shared decompiler, decompiled on its own to fail by itself
+				consumer.accept(className, Result.ok(getSource(className, remapper)));
+			}
+		}
+	}
 }
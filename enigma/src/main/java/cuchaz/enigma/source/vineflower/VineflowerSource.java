@@ -1,11 +1,17 @@
 package cuchaz.enigma.source.vineflower;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.jar.Manifest;
 
 import net.fabricmc.fernflower.api.IFabricJavadocProvider;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.java.decompiler.main.decompiler.BaseDecompiler;
 import org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger;
 import org.jetbrains.java.decompiler.main.extern.IContextSource;
@@ -14,16 +20,17 @@ import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
 import org.jetbrains.java.decompiler.main.extern.IResultSaver;
 import org.jetbrains.java.decompiler.main.extern.TextTokenVisitor;
 
+import cuchaz.enigma.source.JavadocSource;
 import cuchaz.enigma.source.Source;
 import cuchaz.enigma.source.SourceIndex;
 import cuchaz.enigma.source.SourceSettings;
 import cuchaz.enigma.translation.mapping.EntryRemapper;
 
 class VineflowerSource implements Source {
-	private final IContextSource contextSource;
+	private final VineflowerContextSource contextSource;
 	private final IContextSource librarySource;
 	private final SourceSettings settings;
-	private EntryRemapper remapper;
+	private final EntryRemapper remapper;
 	private SourceIndex index;
 
 	VineflowerSource(VineflowerContextSource contextSource, EntryRemapper remapper, SourceSettings settings) {
@@ -33,6 +40,11 @@ class VineflowerSource implements Source {
 		this.settings = settings;
 	}
 
+	VineflowerSource(VineflowerContextSource contextSource, EntryRemapper remapper, SourceSettings settings, SourceIndex index) {
+		this(contextSource, remapper, settings);
+		this.index = index;
+	}
+
 	@Override
 	public String asString() {
 		ensureDecompiled();
@@ -41,9 +53,9 @@ class VineflowerSource implements Source {
 
 	@Override
 	public Source withJavadocs(EntryRemapper remapper) {
-		this.remapper = remapper;
-		this.index = null;
-		return this;
+		// the javadocs are inserted into the decompiled source, rather than decompiling the class again with them
+		Source uncommented = this.remapper == null ? this : new VineflowerSource(contextSource, null, settings);
+		return new JavadocSource(uncommented, remapper);
 	}
 
 	@Override
@@ -52,23 +64,14 @@ class VineflowerSource implements Source {
 		return index;
 	}
 
-	private void ensureDecompiled() {
+	private synchronized void ensureDecompiled() {
 		if (index != null) {
 			return;
 		}
 
-		Map<String, Object> preferences = new HashMap<>(IFernflowerPreferences.DEFAULTS);
-		preferences.put(IFernflowerPreferences.INDENT_STRING, "\t");
-		preferences.put(IFernflowerPreferences.LOG_LEVEL, IFernflowerLogger.Severity.WARN.name());
-		preferences.put(IFernflowerPreferences.THREADS, String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() - 2)));
-		preferences.put(IFabricJavadocProvider.PROPERTY_NAME, new VineflowerJavadocProvider(remapper));
-
-		if (settings.removeImports) {
-			preferences.put(IFernflowerPreferences.REMOVE_IMPORTS, "1");
-		}
-
-		index = new SourceIndex();
-		IResultSaver saver = new ResultSaver(index);
+		Map<String, Object> preferences = createPreferences(remapper, settings, Math.max(1, Runtime.getRuntime().availableProcessors() - 2));
+		SourceIndex index = new SourceIndex();
+		IResultSaver saver = new ResultSaver((className, content) -> index.setSource(content));
 		IFernflowerLogger logger = new PrintStreamLogger(System.out);
 		BaseDecompiler decompiler = new BaseDecompiler(saver, preferences, logger);
 
@@ -86,13 +89,77 @@ class VineflowerSource implements Source {
 
 		decompiler.decompileContext();
 		tokenCollector.get().accept(index);
+		// only kept once complete, a decompilation which fails or is interrupted is tried again when asked for
+		this.index = index;
+	}
+
+	/**
+	 * Decompiles the classes of a context with a single decompiler, which loads and analyses the classes they
+	 * use once for all of them.
+	 *
+	 * @param consumer given the index of each class which was decompiled
+	 */
+	static void decompileAll(VineflowerContextSource contextSource, @Nullable EntryRemapper remapper, SourceSettings settings, BiConsumer<String, SourceIndex> consumer) {
+		// the contexts are decompiled in parallel with each other instead
+		Map<String, Object> preferences = createPreferences(remapper, settings, 1);
+		Map<String, String> contents = new ConcurrentHashMap<>();
+		IResultSaver saver = new ResultSaver(contents::put);
+		IFernflowerLogger logger = new PrintStreamLogger(System.out);
+		BaseDecompiler decompiler = new BaseDecompiler(saver, preferences, logger);
+
+		List<VineflowerTextTokenCollector> tokenCollectors = Collections.synchronizedList(new ArrayList<>());
+		TextTokenVisitor.addVisitor(next -> {
+			VineflowerTextTokenCollector tokenCollector = new VineflowerTextTokenCollector(next);
+			tokenCollectors.add(tokenCollector);
+			return tokenCollector;
+		});
+
+		decompiler.addSource(contextSource);
+		decompiler.addLibrary(contextSource.getClasspath());
+		decompiler.decompileContext();
+
+		// the tokens are collected apart from the classes they are in, and matched to them by the text they were
+		// collected from
+		Map<String, VineflowerTextTokenCollector> tokenCollectorsByContent = new HashMap<>();
+
+		for (VineflowerTextTokenCollector tokenCollector : tokenCollectors) {
+			if (tokenCollector.getContent() != null) {
+				tokenCollectorsByContent.put(tokenCollector.getContent(), tokenCollector);
+			}
+		}
+
+		contents.forEach((className, content) -> {
+			SourceIndex index = new SourceIndex(content);
+			VineflowerTextTokenCollector tokenCollector = tokenCollectorsByContent.get(content);
+
+			if (tokenCollector != null) {
+				tokenCollector.accept(index);
+			}
+
+			consumer.accept(className, index);
+		});
+	}
+
+	private static Map<String, Object> createPreferences(@Nullable EntryRemapper remapper, SourceSettings settings, int threads) {
+		Map<String, Object> preferences = new HashMap<>(IFernflowerPreferences.DEFAULTS);
+		preferences.put(IFernflowerPreferences.INDENT_STRING, "\t");
+		preferences.put(IFernflowerPreferences.LOG_LEVEL, IFernflowerLogger.Severity.WARN.name());
+		preferences.put(IFernflowerPreferences.THREADS, String.valueOf(threads));
+		preferences.put(IFabricJavadocProvider.PROPERTY_NAME, new VineflowerJavadocProvider(remapper));
+
+		if (settings.removeImports) {
+			preferences.put(IFernflowerPreferences.REMOVE_IMPORTS, "1");
+		}
+
+		return preferences;
 	}
 
-	private class ResultSaver implements IResultSaver {
-		private final SourceIndex index;
+	private static class ResultSaver implements IResultSaver {
+		// given the name and the text of each decompiled class
+		private final BiConsumer<String, String> classConsumer;
 
-		private ResultSaver(SourceIndex index) {
-			this.index = index;
+		private ResultSaver(BiConsumer<String, String> classConsumer) {
+			this.classConsumer = classConsumer;
 		}
 
 		@Override
@@ -102,7 +169,7 @@ class VineflowerSource implements Source {
 
 		@Override
 		public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
-			index.setSource(content);
+			classConsumer.accept(qualifiedName, content);
 		}
 
 		@Override
@@ -35,6 +35,10 @@ class VineflowerTextTokenCollector extends TextTokenVisitor {
 		this.content = content;
 	}
 
+	String getContent() {
+		return content;
+	}
+
 	@Override
 	public void visitClass(TextRange range, boolean declaration, String name) {
 		super.visitClass(range, declaration, name);
@@ -1,7 +1,6 @@
 package cuchaz.enigma.translation.mapping;
 
 import java.util.Collection;
-import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
 
@@ -15,6 +14,7 @@ import cuchaz.enigma.translation.Translator;
 import cuchaz.enigma.translation.mapping.tree.DeltaTrackingTree;
 import cuchaz.enigma.translation.mapping.tree.EntryTree;
 import cuchaz.enigma.translation.mapping.tree.HashEntryTree;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 import cuchaz.enigma.translation.representation.entry.Entry;
 import cuchaz.enigma.translation.representation.entry.FieldEntry;
@@ -97,18 +97,8 @@ public class EntryRemapper {
 			return;
 		}
 
-		// Find all the methods in this record class
-		List<MethodEntry> classMethods = jarIndex.getEntryIndex().getMethods().stream().filter(entry -> classEntry.equals(entry.getParent())).toList();
-
-		MethodEntry methodEntry = null;
-
-		for (MethodEntry method : classMethods) {
-			// Find the matching record component getter via matching the names. TODO: Support when the record field and method names do not match
-			if (method.getName().equals(fieldEntry.getName()) && method.getDesc().toString().equals("()" + fieldEntry.getDesc())) {
-				methodEntry = method;
-				break;
-			}
-		}
+		// Find the matching record component getter via matching the names. TODO: Support when the record field and method names do not match
+		MethodEntry methodEntry = jarIndex.getEntryIndex().getMethod(classEntry, fieldEntry.getName(), new MethodDescriptor("()" + fieldEntry.getDesc()));
 
 		if (methodEntry == null && fieldMapping != null) {
 			vc.raise(Message.UNKNOWN_RECORD_GETTER, fieldMapping.targetName());
@@ -164,4 +154,8 @@ public class EntryRemapper {
 	public MappingValidator getValidator() {
 		return validator;
 	}
+
+	public JarIndex getJarIndex() {
+		return jarIndex;
+	}
 }
@@ -2,9 +2,13 @@ package cuchaz.enigma.translation.mapping;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.jetbrains.annotations.Nullable;
 
@@ -19,6 +23,7 @@ import cuchaz.enigma.translation.VoidTranslator;
 import cuchaz.enigma.translation.representation.AccessFlags;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
 import cuchaz.enigma.translation.representation.entry.MethodEntry;
 
 public class IndexEntryResolver implements EntryResolver {
@@ -28,12 +33,28 @@ public class IndexEntryResolver implements EntryResolver {
 
 	private final IndexTreeBuilder treeBuilder;
 
+	// the index doesn't change once processed, so resolutions are computed once per class child and strategy
+	private final Map<ResolutionStrategy, ConcurrentMap<Entry<ClassEntry>, Collection<Entry<ClassEntry>>>> resolvedChildren = new EnumMap<>(ResolutionStrategy.class);
+	private final ConcurrentMap<MethodEntry, Set<MethodEntry>> equivalentMethods = new ConcurrentHashMap<>();
+
 	public IndexEntryResolver(JarIndex index) {
 		this.entryIndex = index.getEntryIndex();
 		this.inheritanceIndex = index.getInheritanceIndex();
 		this.bridgeMethodIndex = index.getBridgeMethodIndex();
 
 		this.treeBuilder = new IndexTreeBuilder(index);
+
+		for (ResolutionStrategy strategy : ResolutionStrategy.values()) {
+			this.resolvedChildren.put(strategy, new ConcurrentHashMap<>());
+		}
+	}
+
+	/**
+	 * Drops all memoized resolutions, must be called whenever the index changes.
+	 */
+	public void invalidate() {
+		resolvedChildren.values().forEach(Map::clear);
+		equivalentMethods.clear();
 	}
 
 	@Override
@@ -54,7 +75,7 @@ public class IndexEntryResolver implements EntryResolver {
 			}
 
 			if (access == null || !access.isPrivate()) {
-				Collection<Entry<ClassEntry>> resolvedChildren = resolveChildEntry(classChild, strategy);
+				Collection<Entry<ClassEntry>> resolvedChildren = resolveChildEntryCached(classChild, strategy);
 
 				if (!resolvedChildren.isEmpty()) {
 					return resolvedChildren.stream().map(resolvedChild -> (E) entry.replaceAncestor(classChild, resolvedChild)).toList();
@@ -87,6 +108,24 @@ public class IndexEntryResolver implements EntryResolver {
 		return null;
 	}
 
+	private Collection<Entry<ClassEntry>> resolveChildEntryCached(Entry<ClassEntry> entry, ResolutionStrategy strategy) {
+		// resolved entries keep the type of the resolved entry, so only plain entries can share results
+		if (entry.getClass() != MethodEntry.class && entry.getClass() != FieldEntry.class) {
+			return resolveChildEntry(entry, strategy);
+		}
+
+		ConcurrentMap<Entry<ClassEntry>, Collection<Entry<ClassEntry>>> cache = resolvedChildren.get(strategy);
+		Collection<Entry<ClassEntry>> resolved = cache.get(entry);
+
+		if (resolved == null) {
+			// not computeIfAbsent, resolving may recursively resolve other entries
+			resolved = Collections.unmodifiableSet(resolveChildEntry(entry, strategy));
+			cache.putIfAbsent(entry, resolved);
+		}
+
+		return resolved;
+	}
+
 	private Set<Entry<ClassEntry>> resolveChildEntry(Entry<ClassEntry> entry, ResolutionStrategy strategy) {
 		ClassEntry ownerClass = entry.getParent();
 
@@ -166,9 +205,16 @@ public class IndexEntryResolver implements EntryResolver {
 
 	@Override
 	public Set<MethodEntry> resolveEquivalentMethods(MethodEntry methodEntry) {
-		Set<MethodEntry> set = new HashSet<>();
-		resolveEquivalentMethods(set, methodEntry);
-		return set;
+		Set<MethodEntry> equivalent = equivalentMethods.get(methodEntry);
+
+		if (equivalent == null) {
+			Set<MethodEntry> set = new HashSet<>();
+			resolveEquivalentMethods(set, methodEntry);
+			equivalent = Collections.unmodifiableSet(set);
+			equivalentMethods.putIfAbsent(methodEntry, equivalent);
+		}
+
+		return equivalent;
 	}
 
 	private void resolveEquivalentMethods(Set<MethodEntry> methodEntries, MethodEntry methodEntry) {
@@ -29,6 +29,7 @@ import cuchaz.enigma.translation.representation.MethodDescriptor;
 import cuchaz.enigma.translation.representation.TypeDescriptor;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldDefEntry;
 import cuchaz.enigma.translation.representation.entry.FieldEntry;
 import cuchaz.enigma.translation.representation.entry.LocalVariableEntry;
 import cuchaz.enigma.translation.representation.entry.MethodEntry;
@@ -222,23 +223,13 @@ public class MappingIoConverter {
 		} else {
 			if (index == null) return; // Enigma requires source descriptors, and without an index we can't look them up
 
-			fieldEntries = index.getChildrenByClass().get(parent).stream()
-					.filter(entry -> entry instanceof FieldEntry)
-					.filter(entry -> entry.getName().equals(fieldMapping.getSrcName()))
+			List<FieldDefEntry> candidates = index.getEntryIndex().getFields(parent, fieldMapping.getSrcName());
+			fieldEntries = candidates.stream()
+					.filter(entry -> !entry.getAccess().isSynthetic())
 					.toArray(FieldEntry[]::new);
 
-			if (fieldEntries.length == 0) { // slow path for synthetics
-				fieldEntries = index.getEntryIndex().getFields().stream()
-						.filter(entry -> entry.getParent().getFullName().equals(parent.getFullName()))
-						.filter(entry -> {
-							if (entry.getName().equals(fieldMapping.getSrcName())) {
-								return true;
-							} else {
-								System.out.println("Entry name: " + entry.getName() + ", mapping name: " + fieldMapping.getSrcName());
-								return false;
-							}
-						})
-						.toArray(FieldEntry[]::new);
+			if (fieldEntries.length == 0) { // fall back to synthetics
+				fieldEntries = candidates.toArray(FieldEntry[]::new);
 			}
 
 			if (fieldEntries.length == 0) return; // No target found, invalid mapping
@@ -13,20 +13,30 @@ package cuchaz.enigma.utils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import cuchaz.enigma.classprovider.JarClassProvider;
+
 public class Utils {
 	public static String readStreamToString(InputStream in) throws IOException {
 		return new String(in.readAllBytes(), StandardCharsets.UTF_8);
@@ -50,6 +60,68 @@ public class Utils {
 		}
 	}
 
+	/**
+	 * Deletes the files used the longest time ago until the files of the cache directory take at most the given
+	 * size, along with the files left behind a day ago or earlier by writes that did not finish. The files are
+	 * ordered by their modification time, which is {@link #touch updated} when a file is used.
+	 */
+	public static void pruneCacheDirectory(Path directory, long maxSize) {
+		if (!Files.isDirectory(directory)) {
+			return;
+		}
+
+		long staleTime = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+		List<CachedFile> files = new ArrayList<>();
+		long size = 0;
+
+		try {
+			List<Path> paths;
+
+			try (Stream<Path> stream = Files.list(directory)) {
+				paths = stream.toList();
+			}
+
+			for (Path path : paths) {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+				if (!attributes.isRegularFile()) {
+					continue;
+				}
+
+				if (path.getFileName().toString().endsWith(".tmp")) {
+					// the files still being written by another instance are left alone
+					if (attributes.lastModifiedTime().toMillis() < staleTime) {
+						Files.deleteIfExists(path);
+					}
+				} else {
+					files.add(new CachedFile(path, attributes.lastModifiedTime(), attributes.size()));
+					size += attributes.size();
+				}
+			}
+
+			files.sort(Comparator.comparing(CachedFile::lastModified));
+
+			for (int i = 0; i < files.size() && size > maxSize; i++) {
+				Files.deleteIfExists(files.get(i).path());
+				size -= files.get(i).size();
+			}
+		} catch (IOException e) {
+			System.err.println("Failed to prune cache directory " + directory);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Marks a file of a cache directory as used, so that it is pruned after the files which were used before it.
+	 */
+	public static void touch(Path path) {
+		try {
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			// only makes the file more likely to be pruned
+		}
+	}
+
 	public static byte[] zipSha1(Path... paths) throws IOException {
 		if (paths.length == 0) {
 			throw new IllegalArgumentException("Must provide at least one zip");
@@ -94,6 +166,57 @@ public class Utils {
 		}
 	}
 
+	/**
+	 * Computes a checksum of the classes in the given zips from the names, CRCs and sizes in their central
+	 * directories, which is much cheaper than {@link #zipSha1} as the classes themselves are not read.
+	 */
+	public static byte[] zipCentralDirectorySha1(Path... paths) throws IOException {
+		if (paths.length == 0) {
+			throw new IllegalArgumentException("Must provide at least one zip");
+		}
+
+		MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// Algorithm guaranteed to be supported
+			throw new RuntimeException(e);
+		}
+
+		for (Path path : paths) {
+			try (ZipFile zip = new ZipFile(path.toFile())) {
+				List<? extends ZipEntry> entries = Collections.list(zip.entries());
+				entries.removeIf(entry -> !entry.getName().toLowerCase(Locale.ROOT).endsWith(".class"));
+				entries.sort(Comparator.comparing(ZipEntry::getName));
+				ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 2);
+
+				for (ZipEntry entry : entries) {
+					digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+					digest.update(buffer.clear().putLong(entry.getCrc()).putLong(entry.getSize()).array());
+				}
+			}
+		}
+
+		return digest.digest();
+	}
+
+	/**
+	 * Collects a cheap checksum of each class in the given zips from their central directories, keyed by
+	 * internal class name. If a class is present in several zips, the first one wins.
+	 */
+	public static Map<String, Long> zipClassChecksums(Path... paths) throws IOException {
+		Map<String, Long> checksums = new HashMap<>();
+
+		for (Path path : paths) {
+			try (JarClassProvider jar = new JarClassProvider(path)) {
+				jar.getClassChecksums().forEach(checksums::putIfAbsent);
+			}
+		}
+
+		return checksums;
+	}
+
 	public static void withLock(Lock l, Runnable op) {
 		try {
 			l.lock();
@@ -111,4 +234,7 @@ public class Utils {
 			l.unlock();
 		}
 	}
+
+	private record CachedFile(Path path, FileTime lastModified, long size) {
+	}
 }
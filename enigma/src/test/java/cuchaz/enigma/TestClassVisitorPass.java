@@ -0,0 +1,79 @@
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.MethodNode;
+
+import cuchaz.enigma.analysis.index.ClassVisitorPass;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.api.service.JarIndexerService;
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.utils.Utils;
+
+public class TestClassVisitorPass {
+	public static final Path JAR = Paths.get("build/test-obf/loneClass.jar");
+
+	@Test
+	public void sharedPass() throws Exception {
+		ClassProvider classProvider = new CachingClassProvider(new JarClassProvider(JAR));
+		Map<String, Long> checksums = Utils.zipClassChecksums(JAR);
+		Map<String, Integer> first = new HashMap<>();
+		Map<String, Integer> second = new HashMap<>();
+		Map<String, Integer> expected = new HashMap<>();
+
+		ClassVisitorPass pass = new ClassVisitorPass(List.of(new InstructionCounter(first), new InstructionCounter(second)));
+		JarIndex index = JarIndex.empty();
+		ClassProvider classProviderWithFrames = index.indexJar(checksums, classProvider, pass, ProgressListener.none());
+		pass.combine();
+
+		new InstructionCounter(expected).acceptJar(checksums.keySet(), classProviderWithFrames, index);
+
+		assertThat(pass.isVisited(), is(true));
+		assertThat(first, is(expected));
+		assertThat(second, is(expected));
+	}
+
+	private record InstructionCounter(Map<String, Integer> counts) implements JarIndexerService.ClassVisitorIndexer<ClassVisitor> {
+		@Override
+		public ClassVisitor createVisitor() {
+			return new ClassVisitor(Enigma.ASM_VERSION) {
+				private String className;
+
+				@Override
+				public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+					className = name;
+				}
+
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					String method = className + "." + name + descriptor;
+					return new MethodNode(Enigma.ASM_VERSION, access, name, descriptor, signature, exceptions) {
+						@Override
+						public void visitEnd() {
+							synchronized (counts) {
+								counts.put(method, instructions.size());
+							}
+						}
+					};
+				}
+			};
+		}
+
+		@Override
+		public void combine(Collection<ClassVisitor> visitors) {
+		}
+	}
+}
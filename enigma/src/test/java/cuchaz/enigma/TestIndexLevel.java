@@ -0,0 +1,89 @@
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cuchaz.enigma.analysis.index.IndexLevel;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import cuchaz.enigma.utils.Utils;
+
+public class TestIndexLevel {
+	public static final Path JAR = Paths.get("build/test-obf/inheritanceTree.jar");
+
+	@Test
+	public void hierarchy() throws Exception {
+		ClassProvider classProvider = new CachingClassProvider(new JarClassProvider(JAR));
+		Map<String, Long> checksums = Utils.zipClassChecksums(JAR);
+
+		JarIndex expected = JarIndex.empty();
+		expected.indexJar(checksums, classProvider, ProgressListener.none());
+
+		JarIndex index = JarIndex.empty(IndexLevel.HIERARCHY);
+		index.indexJar(checksums, classProvider, ProgressListener.none());
+
+		assertThat(index.getEntryIndex().getClasses(), containsInAnyOrder(expected.getEntryIndex().getClasses().toArray()));
+		assertThat(index.getEntryIndex().getMethods(), containsInAnyOrder(expected.getEntryIndex().getMethods().toArray()));
+		assertThat(index.getBridgeMethodIndex().getSpecializedToBridge(), is(expected.getBridgeMethodIndex().getSpecializedToBridge()));
+		assertThat(index.getIndexLevel(), is(IndexLevel.HIERARCHY));
+	}
+
+	@Test
+	public void completion() throws Exception {
+		ClassProvider classProvider = new CachingClassProvider(new JarClassProvider(JAR));
+		Map<String, Long> checksums = Utils.zipClassChecksums(JAR);
+
+		JarIndex expected = JarIndex.empty();
+		expected.indexJar(checksums, classProvider, ProgressListener.none());
+
+		JarIndex index = JarIndex.empty(IndexLevel.ENTRIES);
+		index.indexJar(checksums, classProvider, ProgressListener.none());
+
+		// asking for the references indexes the parts that were left out
+		for (ClassEntry classEntry : expected.getEntryIndex().getClasses()) {
+			assertThat(index.getReferenceIndex().getReferencesToClass(classEntry), containsInAnyOrder(expected.getReferenceIndex().getReferencesToClass(classEntry).toArray()));
+		}
+
+		for (MethodEntry methodEntry : expected.getEntryIndex().getMethods()) {
+			assertThat(index.getReferenceIndex().getReferencesToMethod(methodEntry), containsInAnyOrder(expected.getReferenceIndex().getReferencesToMethod(methodEntry).toArray()));
+		}
+
+		assertThat(index.getIndexLevel(), is(IndexLevel.FULL));
+		assertThat(index.getBridgeMethodIndex().getSpecializedToBridge(), is(expected.getBridgeMethodIndex().getSpecializedToBridge()));
+		assertThat(index.getPackageVisibilityIndex().getPartitions(), containsInAnyOrder(expected.getPackageVisibilityIndex().getPartitions().toArray()));
+	}
+
+	@Test
+	public void completionFromHierarchy() throws Exception {
+		ClassProvider classProvider = new CachingClassProvider(new JarClassProvider(JAR));
+		Map<String, Long> checksums = Utils.zipClassChecksums(JAR);
+
+		JarIndex expected = JarIndex.empty();
+		expected.indexJar(checksums, classProvider, ProgressListener.none());
+
+		JarIndex index = JarIndex.empty(IndexLevel.HIERARCHY);
+		index.indexJar(checksums, classProvider, ProgressListener.none());
+		index.complete(IndexLevel.FULL, ProgressListener.none());
+
+		// only the references of the methods that are not synthetic were left to index
+		for (MethodEntry methodEntry : expected.getEntryIndex().getMethods()) {
+			assertThat(index.getReferenceIndex().getReferencesToMethod(methodEntry), containsInAnyOrder(expected.getReferenceIndex().getReferencesToMethod(methodEntry).toArray()));
+			assertThat(index.getReferenceIndex().getMethodsReferencedBy(methodEntry), containsInAnyOrder(expected.getReferenceIndex().getMethodsReferencedBy(methodEntry).toArray()));
+		}
+
+		assertThat(index.getIndexLevel(), is(IndexLevel.FULL));
+		assertThat(index.getBridgeMethodIndex().getSpecializedToBridge(), is(expected.getBridgeMethodIndex().getSpecializedToBridge()));
+		assertThat(index.getPackageVisibilityIndex().getPartitions(), containsInAnyOrder(expected.getPackageVisibilityIndex().getPartitions().toArray()));
+	}
+}
@@ -0,0 +1,106 @@
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import cuchaz.enigma.analysis.index.IndexSnapshot;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import cuchaz.enigma.utils.Utils;
+
+public class TestIndexSnapshot {
+	public static final Path JAR = Paths.get("build/test-obf/translation.jar");
+
+	@Test
+	public void roundTrip() throws Exception {
+		JarClassProvider jcp = new JarClassProvider(JAR);
+		JarIndex index = JarIndex.empty();
+		index.indexJar(jcp.getClassNames(), new CachingClassProvider(jcp), ProgressListener.none());
+
+		byte[] key = IndexSnapshot.computeKey(Utils.zipSha1(JAR), List.of(), Set.of());
+		Path snapshot = Files.createTempDirectory("enigma-index-snapshot").resolve("index.idx");
+		index.writeSnapshot(snapshot, key);
+
+		JarIndex loaded = JarIndex.empty();
+		assertThat(loaded.readSnapshot(jcp.getClassNames(), snapshot, key), is(true));
+
+		assertThat(loaded.getEntryIndex().getClasses(), containsInAnyOrder(index.getEntryIndex().getClasses().toArray()));
+		assertThat(loaded.getEntryIndex().getFields(), containsInAnyOrder(index.getEntryIndex().getFields().toArray()));
+		assertThat(loaded.getEntryIndex().getMethods(), containsInAnyOrder(index.getEntryIndex().getMethods().toArray()));
+		assertThat(loaded.getBridgeMethodIndex().getBridgeToSpecialized(), is(index.getBridgeMethodIndex().getBridgeToSpecialized()));
+		assertThat(loaded.getBridgeMethodIndex().getSpecializedToBridge(), is(index.getBridgeMethodIndex().getSpecializedToBridge()));
+		assertThat(loaded.getPackageVisibilityIndex().getPartitions(), containsInAnyOrder(index.getPackageVisibilityIndex().getPartitions().toArray()));
+		assertThat(loaded.getChildrenByClass().keySet(), is(index.getChildrenByClass().keySet()));
+
+		for (ClassEntry classEntry : index.getEntryIndex().getClasses()) {
+			assertThat(loaded.getEntryIndex().getClassAccess(classEntry), is(index.getEntryIndex().getClassAccess(classEntry)));
+			assertThat(loaded.getEntryIndex().getDefinition(classEntry).getSuperClass(), is(index.getEntryIndex().getDefinition(classEntry).getSuperClass()));
+			assertThat(loaded.getInheritanceIndex().getAncestors(classEntry), is(index.getInheritanceIndex().getAncestors(classEntry)));
+			assertThat(loaded.getReferenceIndex().getReferencesToClass(classEntry), containsInAnyOrder(index.getReferenceIndex().getReferencesToClass(classEntry).toArray()));
+			assertThat(loaded.isIndexed(classEntry.getFullName()), is(true));
+		}
+
+		for (MethodEntry methodEntry : index.getEntryIndex().getMethods()) {
+			assertThat(loaded.getEntryIndex().getMethodAccess(methodEntry), is(index.getEntryIndex().getMethodAccess(methodEntry)));
+			assertThat(loaded.getReferenceIndex().getReferencesToMethod(methodEntry), containsInAnyOrder(index.getReferenceIndex().getReferencesToMethod(methodEntry).toArray()));
+			assertThat(loaded.getReferenceIndex().getMethodsReferencedBy(methodEntry), containsInAnyOrder(index.getReferenceIndex().getMethodsReferencedBy(methodEntry).toArray()));
+		}
+
+		for (FieldEntry fieldEntry : index.getEntryIndex().getFields()) {
+			assertThat(loaded.getReferenceIndex().getReferencesToField(fieldEntry), containsInAnyOrder(index.getReferenceIndex().getReferencesToField(fieldEntry).toArray()));
+		}
+	}
+
+	@Test
+	public void keyMismatch() throws Exception {
+		JarClassProvider jcp = new JarClassProvider(JAR);
+		JarIndex index = JarIndex.empty();
+		index.indexJar(jcp.getClassNames(), new CachingClassProvider(jcp), ProgressListener.none());
+
+		byte[] key = IndexSnapshot.computeKey(Utils.zipSha1(JAR), List.of(), Set.of());
+		byte[] otherKey = IndexSnapshot.computeKey(Utils.zipSha1(JAR), List.of(), Set.of("some.Plugin"));
+		Path snapshot = Files.createTempDirectory("enigma-index-snapshot").resolve("index.idx");
+		index.writeSnapshot(snapshot, key);
+
+		assertThat(JarIndex.empty().readSnapshot(jcp.getClassNames(), snapshot, otherKey), is(false));
+	}
+
+	@Test
+	public void libraryChecksums() throws Exception {
+		Path library = Paths.get("build/test-obf/loneClass.jar");
+		byte[] key = IndexSnapshot.computeKey(Utils.zipSha1(JAR), List.of(Utils.zipCentralDirectorySha1(library)), Set.of());
+
+		assertThat(IndexSnapshot.computeKey(Utils.zipSha1(JAR), List.of(Utils.zipCentralDirectorySha1(library)), Set.of()), is(key));
+		assertThat(IndexSnapshot.computeKey(Utils.zipSha1(JAR), List.of(Utils.zipCentralDirectorySha1(JAR)), Set.of()), is(not(key)));
+	}
+
+	@Test
+	public void classChecksums() throws Exception {
+		Map<String, Long> checksums = new HashMap<>(Utils.zipClassChecksums(JAR));
+		byte[] key = IndexSnapshot.computeKey(checksums, List.of(), Set.of());
+
+		assertThat(IndexSnapshot.computeKey(new HashMap<>(checksums), List.of(), Set.of()), is(key));
+
+		// any changed class must change the key
+		String className = checksums.keySet().iterator().next();
+		checksums.put(className, checksums.get(className) + 1);
+
+		assertThat(IndexSnapshot.computeKey(checksums, List.of(), Set.of()), is(not(key)));
+	}
+}
@@ -21,6 +21,7 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -38,6 +39,7 @@ import cuchaz.enigma.classprovider.JarClassProvider;
 import cuchaz.enigma.translation.mapping.EntryResolver;
 import cuchaz.enigma.translation.mapping.IndexEntryResolver;
 import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 import cuchaz.enigma.translation.representation.entry.FieldEntry;
 import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
@@ -96,6 +98,17 @@ public class TestJarIndexInheritanceTree {
 		assertThat(index.getEntryIndex().getFieldAccess(numThingsField), is(new AccessFlags(Opcodes.ACC_PRIVATE)));
 	}
 
+	@Test
+	public void classMembers() {
+		EntryIndex entryIndex = index.getEntryIndex();
+		assertThat(entryIndex.getFields(baseClass, "a"), contains(nameField));
+		assertThat(entryIndex.getFields(subClassB, "a"), contains(numThingsField));
+		assertThat(entryIndex.getFields(subClassA), is(empty()));
+		assertThat(entryIndex.getMethod(baseClass, "a", new MethodDescriptor("()Ljava/lang/String;")), is(newMethod(baseClass, "a", "()Ljava/lang/String;")));
+		assertThat(entryIndex.getMethod(subClassA, "a", new MethodDescriptor("()Ljava/lang/String;")), is(nullValue()));
+		assertThat(entryIndex.getRecordComponents(baseClass), is(empty()));
+	}
+
 	@Test
 	public void relatedMethodImplementations() {
 		Collection<MethodEntry> entries;
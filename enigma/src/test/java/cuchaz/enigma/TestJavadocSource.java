@@ -0,0 +1,115 @@
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.source.JavadocSource;
+import cuchaz.enigma.source.Source;
+import cuchaz.enigma.source.SourceIndex;
+import cuchaz.enigma.source.Token;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.HashEntryTree;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.TypeDescriptor;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.LocalVariableEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+
+public class TestJavadocSource {
+	private static final String SOURCE = """
+			class a {
+				@Deprecated
+				int b;
+
+				void c(int d) {
+					this.b = d;
+				}
+			}\n""";
+
+	private static final String COMMENTED_SOURCE = """
+			/**
+			 * Class doc.
+			 */
+			class a {
+				/**
+				 * Field doc.
+				 */
+				@Deprecated
+				int b;
+
+				/**
+				 * Method doc.
+				 *
+				 * @param e The parameter.
+				 */
+				void c(int d) {
+					this.b = d;
+				}
+			}\n""";
+
+	@Test
+	public void insertJavadocs() {
+		ClassEntry classEntry = new ClassEntry("a");
+		FieldEntry fieldEntry = new FieldEntry(classEntry, "b", new TypeDescriptor("I"));
+		MethodEntry methodEntry = new MethodEntry(classEntry, "c", new MethodDescriptor("(I)V"));
+		LocalVariableEntry parameterEntry = new LocalVariableEntry(methodEntry, 1, "d", true, null);
+
+		SourceIndex index = new SourceIndex(SOURCE);
+		index.addDeclaration(token(SOURCE, "class a", 6), classEntry);
+		index.addDeclaration(token(SOURCE, "int b", 4), fieldEntry);
+		index.addDeclaration(token(SOURCE, "void c", 5), methodEntry);
+		index.addDeclaration(token(SOURCE, "int d", 4), parameterEntry);
+		index.addReference(token(SOURCE, ".b", 1), fieldEntry, methodEntry);
+		index.addReference(token(SOURCE, "= d", 2), parameterEntry, methodEntry);
+
+		EntryTree<EntryMapping> mappings = new HashEntryTree<>();
+		mappings.insert(classEntry, new EntryMapping(null, "Class doc."));
+		mappings.insert(fieldEntry, new EntryMapping(null, "Field doc."));
+		mappings.insert(methodEntry, new EntryMapping(null, "Method doc."));
+		mappings.insert(parameterEntry, new EntryMapping("e", "The parameter."));
+
+		SourceIndex commented = new JavadocSource(new IndexedSource(index), EntryRemapper.mapped(JarIndex.empty(), mappings)).index();
+
+		assertThat(commented.getSource(), is(COMMENTED_SOURCE));
+		assertThat(index.getSource(), is(SOURCE));
+
+		for (Entry<?> declaration : index.declarations()) {
+			assertThat(text(commented, commented.getDeclarationToken(declaration)), is(index.getDeclarationToken(declaration).text));
+		}
+
+		for (Token token : commented.referenceTokens()) {
+			assertThat(text(commented, token), is(token.text));
+		}
+
+		assertThat(commented.getReferenceToken(COMMENTED_SOURCE.indexOf("= d") + 2).text, is("d"));
+	}
+
+	private static Token token(String source, String text, int offset) {
+		int start = source.indexOf(text) + offset;
+		int end = start + text.length() - offset;
+		return new Token(start, end, source.substring(start, end));
+	}
+
+	private static String text(SourceIndex index, Token token) {
+		return index.getSource().substring(token.start, token.end);
+	}
+
+	private record IndexedSource(SourceIndex index) implements Source {
+		@Override
+		public String asString() {
+			return index.getSource();
+		}
+
+		@Override
+		public Source withJavadocs(EntryRemapper remapper) {
+			return new JavadocSource(this, remapper);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import cuchaz.enigma.source.Source;
+import cuchaz.enigma.source.SourceCache;
+import cuchaz.enigma.source.SourceIndex;
+import cuchaz.enigma.source.SourceSettings;
+import cuchaz.enigma.source.Token;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.Signature;
+import cuchaz.enigma.translation.representation.entry.ClassDefEntry;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.LocalVariableEntry;
+import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
+
+public class TestSourceCache {
+	private static final String SOURCE = "class a {\n\tvoid b(int c) {\n\t\ta.b(c);\n\t}\n}\n";
+
+	@Test
+	public void roundTrip() throws Exception {
+		ClassDefEntry classEntry = new ClassDefEntry("a", Signature.createSignature(null), new AccessFlags(0), new ClassEntry("java/lang/Object"), new ClassEntry[0]);
+		MethodDefEntry methodEntry = new MethodDefEntry(classEntry, "b", new MethodDescriptor("(I)V"), Signature.createSignature(null), new AccessFlags(0));
+		LocalVariableEntry parameterEntry = new LocalVariableEntry(methodEntry, 1, "c", true, null);
+
+		SourceIndex index = new SourceIndex(SOURCE);
+		index.addDeclaration(new Token(6, 7, "a"), classEntry);
+		index.addDeclaration(new Token(16, 17, "b"), methodEntry);
+		index.addDeclaration(new Token(22, 23, "c"), parameterEntry);
+		index.addReference(new Token(29, 30, "a"), classEntry, methodEntry);
+		index.addReference(new Token(31, 32, "b"), methodEntry, methodEntry);
+		index.addReference(new Token(33, 34, "c"), parameterEntry, methodEntry);
+
+		Path directory = Files.createTempDirectory("enigma-sources");
+		SourceCache cache = new SourceCache(directory, "test", new SourceSettings(true, true));
+		byte[] key = new byte[32];
+
+		assertThat(cache.get(key), nullValue());
+
+		cache.put(key, new IndexedSource(index));
+		SourceIndex cached = cache.get(key).index();
+
+		assertThat(cached.getSource(), is(SOURCE));
+		assertThat(toList(cached.declarations()), containsInAnyOrder(toList(index.declarations()).toArray()));
+		assertThat(toList(cached.referenceTokens()), is(toList(index.referenceTokens())));
+
+		for (Entry<?> declaration : index.declarations()) {
+			assertThat(cached.getDeclarationToken(declaration), is(index.getDeclarationToken(declaration)));
+		}
+
+		for (Token token : index.referenceTokens()) {
+			assertThat(cached.getReference(token), is(index.getReference(token)));
+			assertThat(cached.getReference(token).context, is(index.getReference(token).context));
+		}
+	}
+
+	@Test
+	public void prune() throws Exception {
+		Path directory = Files.createTempDirectory("enigma-sources");
+		Path oldest = directory.resolve("a.source");
+		Path newest = directory.resolve("b.source");
+		Path unfinished = directory.resolve("c.source.tmp");
+		Files.write(oldest, new byte[100]);
+		Files.write(newest, new byte[100]);
+		Files.write(unfinished, new byte[100]);
+		Files.setLastModifiedTime(oldest, FileTime.fromMillis(1000));
+		Files.setLastModifiedTime(newest, FileTime.fromMillis(2000));
+		Files.setLastModifiedTime(unfinished, FileTime.fromMillis(1000));
+
+		SourceCache.prune(directory, 150);
+
+		assertThat(Files.exists(oldest), is(false));
+		assertThat(Files.exists(newest), is(true));
+		assertThat(Files.exists(unfinished), is(false));
+	}
+
+	private static <T> List<T> toList(Iterable<T> iterable) {
+		List<T> list = new ArrayList<>();
+		iterable.forEach(list::add);
+		return list;
+	}
+
+	private record IndexedSource(SourceIndex index) implements Source {
+		@Override
+		public String asString() {
+			return index.getSource();
+		}
+
+		@Override
+		public Source withJavadocs(EntryRemapper remapper) {
+			return this;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package cuchaz.enigma;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import cuchaz.enigma.utils.Utils;
+
+public class TestUpdateJar {
+	public static final Path JAR = Paths.get("build/test-obf/inheritanceTree.jar");
+
+	@Test
+	public void unchanged() throws Exception {
+		JarClassProvider jcp = new JarClassProvider(JAR);
+		Map<String, Long> checksums = Utils.zipClassChecksums(JAR);
+		JarIndex index = JarIndex.empty();
+		index.indexJar(checksums, new CachingClassProvider(jcp), ProgressListener.none());
+
+		assertThat(index.updateJar(checksums, new CachingClassProvider(jcp), ProgressListener.none()), is(empty()));
+	}
+
+	@Test
+	public void changedClass() throws Exception {
+		JarClassProvider jcp = new JarClassProvider(JAR);
+		ClassProvider classProvider = new CachingClassProvider(jcp);
+		Map<String, Long> checksums = Utils.zipClassChecksums(JAR);
+
+		JarIndex expected = JarIndex.empty();
+		expected.indexJar(checksums, classProvider, ProgressListener.none());
+
+		// pretend the root of the hierarchy changed, which reaches every class inheriting from it
+		Map<String, Long> changedChecksums = new HashMap<>(checksums);
+		changedChecksums.put("a", changedChecksums.get("a") + 1);
+		JarIndex index = JarIndex.empty();
+		index.indexJar(checksums, classProvider, ProgressListener.none());
+		Set<String> updated = index.updateJar(changedChecksums, classProvider, ProgressListener.none());
+
+		assertThat(updated, hasItem("a"));
+		assertSameIndex(index, expected);
+	}
+
+	@Test
+	public void removedAndAddedClass() throws Exception {
+		JarClassProvider jcp = new JarClassProvider(JAR);
+		ClassProvider classProvider = new CachingClassProvider(jcp);
+		Map<String, Long> checksums = Utils.zipClassChecksums(JAR);
+
+		JarIndex expected = JarIndex.empty();
+		expected.indexJar(checksums, classProvider, ProgressListener.none());
+
+		// removing a class and adding it back must only touch the classes related to it
+		Map<String, Long> removedChecksums = new HashMap<>(checksums);
+		removedChecksums.remove("b");
+		JarIndex index = JarIndex.empty();
+		index.indexJar(checksums, classProvider, ProgressListener.none());
+		index.updateJar(removedChecksums, classProvider, ProgressListener.none());
+
+		assertThat(index.getEntryIndex().hasClass(new ClassEntry("b")), is(false));
+
+		assertThat(index.updateJar(checksums, classProvider, ProgressListener.none()), hasItem("b"));
+		assertSameIndex(index, expected);
+	}
+
+	private static void assertSameIndex(JarIndex index, JarIndex expected) {
+		assertThat(index.getEntryIndex().getClasses(), containsInAnyOrder(expected.getEntryIndex().getClasses().toArray()));
+		assertThat(index.getEntryIndex().getFields(), containsInAnyOrder(expected.getEntryIndex().getFields().toArray()));
+		assertThat(index.getEntryIndex().getMethods(), containsInAnyOrder(expected.getEntryIndex().getMethods().toArray()));
+		assertThat(index.getBridgeMethodIndex().getSpecializedToBridge(), is(expected.getBridgeMethodIndex().getSpecializedToBridge()));
+		assertThat(index.getPackageVisibilityIndex().getPartitions(), containsInAnyOrder(expected.getPackageVisibilityIndex().getPartitions().toArray()));
+
+		for (ClassEntry classEntry : expected.getEntryIndex().getClasses()) {
+			assertThat(index.getInheritanceIndex().getParents(classEntry), containsInAnyOrder(expected.getInheritanceIndex().getParents(classEntry).toArray()));
+			assertThat(index.getInheritanceIndex().getChildren(classEntry), containsInAnyOrder(expected.getInheritanceIndex().getChildren(classEntry).toArray()));
+			assertThat(index.getReferenceIndex().getReferencesToClass(classEntry), containsInAnyOrder(expected.getReferenceIndex().getReferencesToClass(classEntry).toArray()));
+		}
+
+		for (MethodEntry methodEntry : expected.getEntryIndex().getMethods()) {
+			assertThat(index.getReferenceIndex().getReferencesToMethod(methodEntry), containsInAnyOrder(expected.getReferenceIndex().getReferencesToMethod(methodEntry).toArray()));
+			assertThat(index.getReferenceIndex().getMethodsReferencedBy(methodEntry), containsInAnyOrder(expected.getReferenceIndex().getMethodsReferencedBy(methodEntry).toArray()));
+		}
+
+		for (FieldEntry fieldEntry : expected.getEntryIndex().getFields()) {
+			assertThat(index.getReferenceIndex().getReferencesToField(fieldEntry), containsInAnyOrder(expected.getReferenceIndex().getReferencesToField(fieldEntry).toArray()));
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package cuchaz.enigma.classhandle;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import cuchaz.enigma.TestUpdateJar;
+import cuchaz.enigma.classprovider.JarClassProvider;
+
+public class TestDecompileScheduler {
+	@Test
+	public void cancelRunningDecompile() throws Exception {
+		DecompileScheduler scheduler = new DecompileScheduler();
+
+		try (JarClassProvider classProvider = new JarClassProvider(TestUpdateJar.JAR)) {
+			List<String> classNames = new ArrayList<>(classProvider.getClassNames());
+			classNames.sort(null);
+
+			CountDownLatch started = new CountDownLatch(1);
+			CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+			DecompileScheduler.Job job = scheduler.submit(() -> DecompilePriority.VISIBLE, () -> {
+				started.countDown();
+
+				try {
+					// stands in for a decompiler reading the classes it needs, until it is cancelled
+					while (!DecompileScheduler.isCancelled()) {
+						classProvider.getBytes(classNames.get(0));
+					}
+
+					interrupted.complete(Thread.currentThread().isInterrupted());
+				} catch (RuntimeException e) {
+					interrupted.completeExceptionally(e);
+				}
+			});
+
+			started.await();
+			job.cancel();
+
+			assertThat(interrupted.get(10, TimeUnit.SECONDS), is(false));
+			assertThat(job.isDone(), is(true));
+
+			// the classes are still read after the cancellation, by the next job and by any other thread
+			CompletableFuture<byte[]> next = new CompletableFuture<>();
+			scheduler.submit(() -> DecompilePriority.VISIBLE, () -> next.complete(classProvider.getBytes(classNames.get(1))));
+
+			assertThat(next.get(10, TimeUnit.SECONDS), notNullValue());
+			assertThat(classProvider.getBytes(classNames.get(1)), notNullValue());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void reportFinishedJob() throws Exception {
+		DecompileScheduler scheduler = new DecompileScheduler();
+
+		try {
+			CompletableFuture<DecompileScheduler.Job> finished = new CompletableFuture<>();
+			DecompileScheduler.Job job = scheduler.submit(() -> DecompilePriority.VISIBLE, () -> {
+			}, finished::complete);
+
+			assertThat(finished.get(10, TimeUnit.SECONDS), sameInstance(job));
+			assertThat(job.isDone(), is(true));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+}
\ No newline at end of file